@@ -0,0 +1,91 @@
+package com.bwywb.index;
+
+import java.util.List;
+
+/**
+ * 子空间大小 (点数) 直方图
+ * 第 b 个桶统计点数位于 [2^b, 2^(b+1) - 1] 的子空间，用于检查划分结果是否接近目标单元大小。
+ */
+public final class CellSizeHistogram {
+    private final int[] subspaceCounts;
+    private final long[] pointCounts;
+    private final int subspaceCount;
+    private final long pointCount;
+    private final int maxDensity;
+    private final int overfullCount;
+
+    private CellSizeHistogram(int[] subspaceCounts, long[] pointCounts, int subspaceCount, long pointCount,
+                              int maxDensity, int overfullCount) {
+        this.subspaceCounts = subspaceCounts;
+        this.pointCounts = pointCounts;
+        this.subspaceCount = subspaceCount;
+        this.pointCount = pointCount;
+        this.maxDensity = maxDensity;
+        this.overfullCount = overfullCount;
+    }
+
+    /**
+     * @param subspaces        划分结果
+     * @param densityThreshold 划分使用的密度阈值，超过阈值的子空间 (只会出现在最大深度) 计为溢出
+     */
+    public static CellSizeHistogram of(List<Subspace> subspaces, double densityThreshold) {
+        int[] subspaceCounts = new int[32];
+        long[] pointCounts = new long[32];
+        long points = 0;
+        int max = 0;
+        int overfull = 0;
+        int buckets = 0;
+        for (Subspace subspace : subspaces) {
+            int density = subspace.getDensity();
+            int b = density == 0 ? 0 : 31 - Integer.numberOfLeadingZeros(density);
+            subspaceCounts[b]++;
+            pointCounts[b] += density;
+            buckets = Math.max(buckets, b + 1);
+            points += density;
+            max = Math.max(max, density);
+            if (density > densityThreshold) {
+                overfull++;
+            }
+        }
+        int[] s = new int[buckets];
+        long[] p = new long[buckets];
+        System.arraycopy(subspaceCounts, 0, s, 0, buckets);
+        System.arraycopy(pointCounts, 0, p, 0, buckets);
+        return new CellSizeHistogram(s, p, subspaces.size(), points, max, overfull);
+    }
+
+    /** 桶数 (最后一个桶包含最大的子空间) */
+    public int bucketCount() { return subspaceCounts.length; }
+    /** 第 b 个桶的最小点数 (含) */
+    public int bucketLow(int b) { return 1 << b; }
+    /** 第 b 个桶的最大点数 (含) */
+    public int bucketHigh(int b) { return (int) ((2L << b) - 1); }
+    /** 第 b 个桶中的子空间数 */
+    public int subspaceCount(int b) { return subspaceCounts[b]; }
+    /** 第 b 个桶中的子空间所含点数之和 */
+    public long pointCount(int b) { return pointCounts[b]; }
+
+    public int getSubspaceCount() { return subspaceCount; }
+    public long getPointCount() { return pointCount; }
+    public int getMaxDensity() { return maxDensity; }
+    /** 超过密度阈值的子空间数 (达到最大深度仍无法再分) */
+    public int getOverfullCount() { return overfullCount; }
+
+    public double getMeanDensity() {
+        return subspaceCount == 0 ? 0 : (double) pointCount / subspaceCount;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("subspaces=%d points=%d mean=%.1f max=%d overfull=%d%n",
+                subspaceCount, pointCount, getMeanDensity(), maxDensity, overfullCount));
+        for (int b = 0; b < subspaceCounts.length; b++) {
+            if (subspaceCounts[b] > 0) {
+                sb.append(String.format("  [%d, %d]\t%d subspaces\t%d points%n",
+                        bucketLow(b), bucketHigh(b), subspaceCounts[b], pointCounts[b]));
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,128 @@
+package com.bwywb.index;
+
+import com.bwywb.model.POIData;
+
+/**
+ * 时空组合 Key 构造器: NUH 编码 (Subspace.getHilbertCode) + TR 编码的 L3 时间段索引
+ * 拼接为一个非负 long，可按配置选择时间优先或空间优先的拼接顺序。
+ *
+ * TR 编码中的 L1 / L2 都可由 L3 推出 (时间段边界与天边界对齐)，因此组合 Key 中只保留 L3，
+ * 需要时可通过 {@link MultiScaleTrIndex#generateTrKey(long)} 还原。
+ *
+ * 时间字段占空间编码之外的 63 - spaceBits 位，须能表示到 {@link #MAX_TIMESTAMP_MS} 为止的时间段索引，
+ * 因此空间位数不得超过 {@link #maxSpaceBits(MultiScaleTrIndex)} (30 分钟时间段时为 41 位，
+ * 即 NuhIndex 最大深度 20)。
+ */
+public class CompositeKeyBuilder {
+
+    /**
+     * 拼接顺序
+     */
+    public enum Order {
+        /** 时间段索引在高位: 同一时间段内的数据按 Hilbert 顺序连续存放 */
+        TIME_FIRST,
+        /** Hilbert 编码在高位: 同一子空间的数据按时间顺序连续存放 */
+        SPACE_FIRST
+    }
+
+    /** 时间字段须能表示的最晚时刻 (2200-01-01T00:00:00Z) */
+    public static final long MAX_TIMESTAMP_MS = 7_258_118_400_000L;
+
+    private final Order order;
+    private final int spaceBits;
+    private final int timeBits;
+    private final long spaceMask;
+    private final long timeMask;
+    private final MultiScaleTrIndex trIndex;
+
+    /**
+     * @param order     拼接顺序
+     * @param spaceBits 空间编码位数, 对 NuhIndex 为 2 * getMaxDepth()，不超过 {@link #maxSpaceBits(MultiScaleTrIndex)}
+     * @param trIndex   用于计算时间段索引的多尺度时间索引
+     */
+    public CompositeKeyBuilder(Order order, int spaceBits, MultiScaleTrIndex trIndex) {
+        int maxSpaceBits = maxSpaceBits(trIndex);
+        if (spaceBits < 1 || spaceBits > maxSpaceBits) {
+            throw new IllegalArgumentException("spaceBits must be between 1 and " + maxSpaceBits
+                    + " so that the time field can hold periods up to 2200: " + spaceBits);
+        }
+        this.order = order;
+        this.spaceBits = spaceBits;
+        this.timeBits = 63 - spaceBits;
+        this.spaceMask = (1L << spaceBits) - 1;
+        this.timeMask = (1L << timeBits) - 1;
+        this.trIndex = trIndex;
+    }
+
+    /**
+     * 使用 NuhIndex 的网格阶数确定空间编码位数
+     */
+    public CompositeKeyBuilder(Order order, NuhIndex index, MultiScaleTrIndex trIndex) {
+        this(order, checkDepth(index, trIndex), trIndex);
+    }
+
+    private static int checkDepth(NuhIndex index, MultiScaleTrIndex trIndex) {
+        if (index.getMaxDepth() > maxDepth(trIndex)) {
+            throw new IllegalArgumentException("NuhIndex maxDepth " + index.getMaxDepth() + " leaves too few time bits"
+                    + " for composite keys; use at most " + maxDepth(trIndex));
+        }
+        return 2 * index.getMaxDepth();
+    }
+
+    /**
+     * 空间编码可占的最大位数: 其余位须能容纳 {@link #MAX_TIMESTAMP_MS} 的时间段索引
+     */
+    public static int maxSpaceBits(MultiScaleTrIndex trIndex) {
+        long maxTpIndex = trIndex.tpIndex(MAX_TIMESTAMP_MS);
+        return 63 - (64 - Long.numberOfLeadingZeros(maxTpIndex));
+    }
+
+    /**
+     * 可用于组合 Key 的 NuhIndex 最大划分深度 (调优时可作为 {@link NuhIndexTuner} 的深度上限)
+     */
+    public static int maxDepth(MultiScaleTrIndex trIndex) {
+        return maxSpaceBits(trIndex) / 2;
+    }
+
+    public Order getOrder() { return order; }
+    public int getSpaceBits() { return spaceBits; }
+    public int getTimeBits() { return timeBits; }
+    public MultiScaleTrIndex getTrIndex() { return trIndex; }
+
+    /** 可表示的最大时间段索引 */
+    public long getMaxTpIndex() { return timeMask; }
+
+    /**
+     * 由 Hilbert 编码与时间段索引构造组合 Key
+     */
+    public long key(long hilbertCode, long tpIndex) {
+        if (hilbertCode < 0 || hilbertCode > spaceMask) {
+            throw new IllegalArgumentException("hilbertCode out of range: " + hilbertCode);
+        }
+        if (tpIndex < 0 || tpIndex > timeMask) {
+            throw new IllegalArgumentException("tpIndex out of range: " + tpIndex);
+        }
+        if (order == Order.TIME_FIRST) {
+            return tpIndex << spaceBits | hilbertCode;
+        } else {
+            return hilbertCode << timeBits | tpIndex;
+        }
+    }
+
+    /**
+     * 构造落在 subspace 中的数据点 data 的组合 Key
+     */
+    public long key(Subspace subspace, POIData data) {
+        return key(subspace.getHilbertCode(), trIndex.tpIndex(data.getTimestamp()));
+    }
+
+    /** 从组合 Key 中解出 Hilbert 编码 */
+    public long hilbertCode(long key) {
+        return order == Order.TIME_FIRST ? key & spaceMask : key >>> timeBits;
+    }
+
+    /** 从组合 Key 中解出时间段索引 (L3) */
+    public long tpIndex(long key) {
+        return order == Order.TIME_FIRST ? key >>> spaceBits : key & timeMask;
+    }
+}
@@ -0,0 +1,391 @@
+package com.bwywb.index;
+
+import com.bwywb.model.POIData;
+import com.github.davidmoten.hilbert.hilbert.Ranges;
+import com.github.davidmoten.hilbert.hilbert.SmallHilbertCurve;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 支持并发读写的 NUH 索引 (ConcurrentNuhIndex)
+ * 写操作委托给单个 {@link IncrementalNuhIndex}，读操作只访问不可变快照 ({@link Snapshot})。
+ * <ul>
+ *   <li>写者串行化: 每个写操作先进入待处理队列，再竞争写锁; 持锁者一次性应用队列中的全部操作
+ *       (包括其它写者提交的)，然后发布一个新快照 (组提交)。写操作在其所在批次发布后才返回，
+ *       因此返回即可见。</li>
+ *   <li>读者无锁: {@link #snapshot()} 只是一次 volatile 读，得到的快照在整个查询过程中保持一致，
+ *       不会被之后的写操作修改。</li>
+ * </ul>
+ * 快照把按编码排序的子空间切分为若干分段 (每段约 {@link #SEGMENT_SIZE} 个子空间，各带一个
+ * {@link SubspaceDirectory})。发布新快照时只重建本批次修改过的编码段所在的分段，其余分段
+ * 与上一个快照共享，代价为 O(修改的分段数 × SEGMENT_SIZE + 分段数)，而不是 O(子空间数)。
+ * Subspace 不可变，IncrementalNuhIndex 按写时复制更新，因此共享的分段不会被之后的写操作改变。
+ */
+public class ConcurrentNuhIndex {
+    /** 快照分段的目标子空间数 */
+    static final int SEGMENT_SIZE = 64;
+
+    private final NuhIndex index;
+    private final IncrementalNuhIndex writer;
+
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final ConcurrentLinkedQueue<Update> pending = new ConcurrentLinkedQueue<>();
+    private volatile Snapshot current;
+
+    public ConcurrentNuhIndex(NuhIndex index) {
+        this(new IncrementalNuhIndex(index));
+    }
+
+    /**
+     * 以一批初始数据构建索引 (与 {@link NuhIndex#generateNuhIndex(List)} 相同)
+     */
+    public ConcurrentNuhIndex(NuhIndex index, List<POIData> data) {
+        this(new IncrementalNuhIndex(index, data));
+    }
+
+    private ConcurrentNuhIndex(IncrementalNuhIndex writer) {
+        this.index = writer.getIndex();
+        this.writer = writer;
+        writer.trackChanges();
+        // 不含子空间的目录, 只用于窗口的格网换算与曲线查询
+        SubspaceDirectory grid = new SubspaceDirectory(index.getGlobalMBR(), index.getMaxDepth(), new long[0], new int[0]);
+        List<Segment> segments = Segment.split(index, writer.subspaces());
+        this.current = new Snapshot(0, grid, segments.toArray(new Segment[0]), writer.size());
+    }
+
+    public NuhIndex getIndex() { return index; }
+
+    /**
+     * 当前已发布的快照，不会阻塞
+     */
+    public Snapshot snapshot() {
+        return current;
+    }
+
+    /**
+     * 插入一个 POI，返回时该点已在最新快照中可见
+     * @throws IllegalArgumentException review_id 为空或已存在，或点不在全局 MBR 内
+     */
+    public void insert(POIData p) {
+        submit(new Update(p, null));
+    }
+
+    /**
+     * 删除 review_id 对应的 POI，返回时删除已在最新快照中可见
+     * @return 被删除的 POI，不存在时返回 null
+     */
+    public POIData delete(String reviewId) {
+        return submit(new Update(null, reviewId));
+    }
+
+    private POIData submit(Update update) {
+        pending.add(update);
+        writeLock.lock();
+        try {
+            // 操作可能已被之前的持锁者应用并发布
+            if (!update.done) {
+                List<Update> batch = new ArrayList<>();
+                Update next;
+                while ((next = pending.poll()) != null) {
+                    next.apply(writer);
+                    batch.add(next);
+                }
+                current = current.next(index, writer, writer.drainChanges());
+                for (Update u : batch) {
+                    u.done = true;
+                }
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        if (update.error != null) {
+            throw update.error;
+        }
+        return update.deleted;
+    }
+
+    /**
+     * 待处理的写操作; 除构造参数外的字段只在持有写锁时读写
+     */
+    private static final class Update {
+        private final POIData insert;
+        private final String deleteId;
+
+        private POIData deleted;
+        private RuntimeException error;
+        private boolean done;
+
+        Update(POIData insert, String deleteId) {
+            this.insert = insert;
+            this.deleteId = deleteId;
+        }
+
+        void apply(IncrementalNuhIndex writer) {
+            try {
+                if (insert != null) {
+                    writer.insert(insert);
+                } else {
+                    deleted = writer.delete(deleteId);
+                }
+            } catch (RuntimeException e) {
+                error = e;
+            }
+        }
+    }
+
+    /**
+     * 快照的一个分段: 编码连续的一组子空间及其目录 (不可变)
+     */
+    private static final class Segment implements SubspacePoints {
+        private final Subspace[] subspaces;
+        private final SubspaceDirectory directory;
+        /** 分段覆盖的细粒度编码区间 [start, end] */
+        private final long start;
+        private final long end;
+
+        Segment(NuhIndex index, List<Subspace> sortedSubspaces) {
+            this.subspaces = sortedSubspaces.toArray(new Subspace[0]);
+            this.directory = new SubspaceDirectory(index, sortedSubspaces);
+            this.start = directory.blockStarts[0];
+            this.end = directory.blockEnds[subspaces.length - 1];
+        }
+
+        /**
+         * 将按编码升序的子空间切分为大小相近、不超过 2 × SEGMENT_SIZE 的分段
+         */
+        static List<Segment> split(NuhIndex index, List<Subspace> sortedSubspaces) {
+            int n = sortedSubspaces.size();
+            int parts = n <= 2 * SEGMENT_SIZE ? (n == 0 ? 0 : 1) : (n + SEGMENT_SIZE - 1) / SEGMENT_SIZE;
+            List<Segment> segments = new ArrayList<>(parts);
+            for (int p = 0; p < parts; p++) {
+                int from = (int) ((long) n * p / parts);
+                int to = (int) ((long) n * (p + 1) / parts);
+                segments.add(new Segment(index, sortedSubspaces.subList(from, to)));
+            }
+            return segments;
+        }
+
+        @Override
+        public int pointCount(int k) { return subspaces[k].getDensity(); }
+        @Override
+        public double getX(int k, int i) { return subspaces[k].getDataSet().get(i).getX(); }
+        @Override
+        public double getY(int k, int i) { return subspaces[k].getDataSet().get(i).getY(); }
+        @Override
+        public long getTimestamp(int k, int i) { return subspaces[k].getDataSet().get(i).getTimestamp(); }
+        @Override
+        public boolean coveredBy(int k, MBR window) { return PointStore.coveredBy(subspaces[k], window); }
+    }
+
+    /**
+     * 索引的不可变快照，可被任意多个线程同时查询
+     */
+    public static final class Snapshot {
+        private final long version;
+        private final SubspaceDirectory grid;
+        private final Segment[] segments;
+        private final long[] segmentEnds;
+        private final int subspaceCount;
+        private final int size;
+
+        Snapshot(long version, SubspaceDirectory grid, Segment[] segments, int size) {
+            this.version = version;
+            this.grid = grid;
+            this.segments = segments;
+            this.segmentEnds = new long[segments.length];
+            int count = 0;
+            for (int s = 0; s < segments.length; s++) {
+                segmentEnds[s] = segments[s].end;
+                count += segments[s].subspaces.length;
+            }
+            this.subspaceCount = count;
+            this.size = size;
+        }
+
+        /**
+         * 在本快照的基础上应用一批修改, 只重建与修改的编码段相交的分段
+         *
+         * @param changes {@link IncrementalNuhIndex#drainChanges()} 的结果
+         */
+        Snapshot next(NuhIndex index, IncrementalNuhIndex writer, long[] changes) {
+            List<Segment> list = new ArrayList<>(Arrays.asList(segments));
+            long[] merged = mergeIntervals(changes);
+            for (int c = 0; c < merged.length; c += 2) {
+                rebuild(list, index, writer, merged[c], merged[c + 1]);
+            }
+            return new Snapshot(version + 1, grid, list.toArray(new Segment[0]), writer.size());
+        }
+
+        /**
+         * 用 writer 的当前状态重建与编码段 [lo, hi] 相交的分段; 不相交时并入相邻分段
+         */
+        private static void rebuild(List<Segment> list, NuhIndex index, IncrementalNuhIndex writer, long lo, long hi) {
+            int a = 0;
+            int b = list.size();
+            while (a < b) {
+                int mid = (a + b) >>> 1;
+                if (list.get(mid).end < lo) {
+                    a = mid + 1;
+                } else {
+                    b = mid;
+                }
+            }
+            b = a;
+            while (b < list.size() && list.get(b).start <= hi) {
+                b++;
+            }
+            if (a == b && !list.isEmpty()) {
+                if (a == list.size()) {
+                    a--;
+                }
+                b = a + 1;
+            }
+            long from = a < b ? Math.min(lo, list.get(a).start) : lo;
+            long to = a < b ? Math.max(hi, list.get(b - 1).end) : hi;
+            List<Subspace> subspaces = writer.subspaces(from, to);
+            if (subspaces.size() < SEGMENT_SIZE / 2 && b < list.size()) {
+                // 过小的分段与后一个分段合并, 避免分段数随删除退化
+                to = list.get(b++).end;
+                subspaces = writer.subspaces(from, to);
+            }
+            list.subList(a, b).clear();
+            list.addAll(a, Segment.split(index, subspaces));
+        }
+
+        /**
+         * 排序并合并重叠的编码段 (同一批次可能多次修改同一子空间)
+         */
+        private static long[] mergeIntervals(long[] intervals) {
+            int n = intervals.length / 2;
+            Integer[] order = new Integer[n];
+            for (int i = 0; i < n; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (x, y) -> Long.compare(intervals[2 * x], intervals[2 * y]));
+            long[] merged = new long[intervals.length];
+            int size = 0;
+            for (int i : order) {
+                long lo = intervals[2 * i];
+                long hi = intervals[2 * i + 1];
+                if (size > 0 && lo <= merged[size - 1] + 1) {
+                    merged[size - 1] = Math.max(merged[size - 1], hi);
+                } else {
+                    merged[size++] = lo;
+                    merged[size++] = hi;
+                }
+            }
+            return Arrays.copyOf(merged, size);
+        }
+
+        /** 版本号，每次发布加 1 */
+        public long version() { return version; }
+        /** 点数 */
+        public int size() { return size; }
+        /** 子空间数 */
+        public int subspaceCount() { return subspaceCount; }
+        /** 分段数 */
+        int segmentCount() { return segments.length; }
+
+        /**
+         * 按 Hilbert 编码升序的最小子空间 (只读)
+         */
+        public List<Subspace> subspaces() {
+            List<Subspace> all = new ArrayList<>(subspaceCount);
+            for (Segment segment : segments) {
+                all.addAll(Arrays.asList(segment.subspaces));
+            }
+            return Collections.unmodifiableList(all);
+        }
+
+        /**
+         * 窗口查询
+         */
+        public List<POIData> query(MBR window) {
+            return query(window, Long.MIN_VALUE, Long.MAX_VALUE);
+        }
+
+        /**
+         * 时空窗口查询, 时间区间两端均包含
+         */
+        public List<POIData> query(MBR window, long startTime, long endTime) {
+            List<POIData> result = new ArrayList<>();
+            visit(window, startTime, endTime, result);
+            return result;
+        }
+
+        /**
+         * 窗口内的点数
+         */
+        public int count(MBR window) {
+            return visit(window, Long.MIN_VALUE, Long.MAX_VALUE, null);
+        }
+
+        /**
+         * 在整个快照上做一次剪枝下降求编码区间，再按分段交给各自的目录扫描
+         * @param out 命中点的输出, 为 null 时只计数
+         */
+        private int visit(MBR window, long startTime, long endTime, List<POIData> out) {
+            long[][] corners = grid.gridCorners(window);
+            if (segments.length == 0 || corners == null) {
+                return 0;
+            }
+            Ranges cells = grid.curve().queryRecursive(corners[0], corners[1], this::classify);
+            int hits = 0;
+            int s = 0;
+            int c = 0;
+            while (c < cells.size()) {
+                s = firstSegmentEndingAtOrAfter(cells.low(c), s);
+                if (s == segments.length) {
+                    break;
+                }
+                Segment segment = segments[s];
+                if (segment.start > cells.high(c)) {
+                    c++;
+                    continue;
+                }
+                int to = c + 1;
+                while (to < cells.size() && cells.low(to) <= segment.end) {
+                    to++;
+                }
+                int[] runs = segment.directory.runs(cells, c, to);
+                hits += segment.directory.visit(runs, segment, window, startTime, endTime, out == null
+                        ? (k, i) -> { }
+                        : (k, i) -> out.add(segment.subspaces[k].getDataSet().get(i)));
+                // 跨越分段边界的编码区间还要交给下一个分段
+                c = cells.high(to - 1) > segment.end ? to - 1 : to;
+                s++;
+            }
+            return hits;
+        }
+
+        /**
+         * 曲线子块的剪枝规则同 {@link SubspaceDirectory#classify}, 先定位子块起点所在的分段
+         */
+        private SmallHilbertCurve.SubCubeFilter.Action classify(long low, long high) {
+            int s = firstSegmentEndingAtOrAfter(low, 0);
+            if (s == segments.length || segments[s].start > high) {
+                return SmallHilbertCurve.SubCubeFilter.Action.SKIP;
+            }
+            return segments[s].directory.classify(low, high);
+        }
+
+        private int firstSegmentEndingAtOrAfter(long cell, int from) {
+            int lo = from;
+            int hi = segmentEnds.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (segmentEnds[mid] < cell) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.bwywb.index;
+
+import com.github.davidmoten.hilbert.hilbert.Ranges;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 连接线 (对应原论文 Algorithm 2-4): 处理非均匀断层
+ * 不同深度的子空间按中心格网编码排序后，编码之间存在大小不一的断层 (大子空间占据很长的编码段，
+ * 空象限不对应任何子空间)。连接线沿 Hilbert 顺序依次连接各子空间，并为其分配连续的序号 0..n-1:
+ * 序号相邻的子空间在曲线上相邻，窗口查询对应的序号区间数即与窗口相交的子空间连续段数，
+ * 远少于窗口在细粒度网格上分解出的编码区间数。
+ *
+ * 序号只是某一次划分结果的内存视图, 不可持久化: 任一子空间的划分或合并都会使其后所有序号整体平移。
+ * 组合 Key 与存储始终使用稳定的 Hilbert 编码 ({@link Subspace#getHilbertCode()})，
+ * 序号 <-> Hilbert 编码 的换算见 {@link #hilbertCode(int)} / {@link #sequenceCode(Subspace)}。
+ */
+public class ConnectionLine {
+    private final Subspace[] subspaces; // 序号 -> 子空间
+    private final SubspaceDirectory directory;
+
+    /**
+     * @param index           生成子空间的 NUH 索引
+     * @param sortedSubspaces {@link NuhIndex#generateNuhIndex(List)} 的输出 (已编码并按编码升序)
+     */
+    public ConnectionLine(NuhIndex index, List<Subspace> sortedSubspaces) {
+        this.subspaces = sortedSubspaces.toArray(new Subspace[0]);
+        this.directory = new SubspaceDirectory(index, sortedSubspaces);
+    }
+
+    /** 子空间数, 序号取值 [0, size()) */
+    public int size() { return subspaces.length; }
+
+    /**
+     * 序号对应的子空间
+     */
+    public Subspace subspace(int sequenceCode) {
+        return subspaces[sequenceCode];
+    }
+
+    /**
+     * 按序号排列的子空间 (只读)
+     */
+    public List<Subspace> subspaces() {
+        return Collections.unmodifiableList(Arrays.asList(subspaces));
+    }
+
+    /**
+     * 序号对应子空间的 Hilbert 编码
+     */
+    public long hilbertCode(int sequenceCode) {
+        return directory.codes[sequenceCode];
+    }
+
+    /**
+     * 子空间的序号，不在连接线上时返回 -1
+     */
+    public int sequenceCode(Subspace subspace) {
+        int k = Arrays.binarySearch(directory.codes, subspace.getHilbertCode());
+        return k >= 0 && subspaces[k] == subspace ? k : -1;
+    }
+
+    /**
+     * 覆盖细粒度格网编码 cell 的子空间序号，cell 落在空象限时返回 -1
+     */
+    public int sequenceCodeOfCell(long cell) {
+        int k = directory.firstBlockEndingAtOrAfter(cell, 0);
+        return k < subspaces.length && directory.blockStarts[k] <= cell ? k : -1;
+    }
+
+    /**
+     * 与窗口相交的子空间序号区间 (按序号升序、互不重叠，相邻区间之间至少隔一个子空间)
+     */
+    public Ranges ranges(MBR window) {
+        Ranges result = new Ranges(0);
+        int[] runs = directory.runs(window);
+        for (int r = 0; r < runs.length; r += 2) {
+            result.add(runs[r], runs[r + 1]);
+        }
+        return result;
+    }
+
+    SubspaceDirectory directory() {
+        return directory;
+    }
+}
@@ -0,0 +1,92 @@
+package com.bwywb.index;
+
+/**
+ * 距离度量: 平面欧氏距离 (坐标单位) 或 Haversine 大圆距离 (米, x 为经度, y 为纬度)
+ */
+public enum DistanceMetric {
+    PLANAR {
+        @Override
+        public double distance(double x1, double y1, double x2, double y2) {
+            double dx = x1 - x2;
+            double dy = y1 - y2;
+            return Math.sqrt(dx * dx + dy * dy);
+        }
+
+        @Override
+        public double minDistance(double x, double y, double minX, double minY, double maxX, double maxY) {
+            double dx = x < minX ? minX - x : (x > maxX ? x - maxX : 0);
+            double dy = y < minY ? minY - y : (y > maxY ? y - maxY : 0);
+            return Math.sqrt(dx * dx + dy * dy);
+        }
+    },
+
+    HAVERSINE {
+        @Override
+        public double distance(double x1, double y1, double x2, double y2) {
+            double lat1 = Math.toRadians(y1);
+            double lat2 = Math.toRadians(y2);
+            double sinDLat = Math.sin((lat2 - lat1) / 2);
+            double sinDLon = Math.sin(Math.toRadians(x2 - x1) / 2);
+            double h = sinDLat * sinDLat + Math.cos(lat1) * Math.cos(lat2) * sinDLon * sinDLon;
+            return 2 * EARTH_RADIUS_M * Math.asin(Math.min(1.0, Math.sqrt(h)));
+        }
+
+        /**
+         * 到经纬度矩形的最小大圆距离。
+         * 经度落在矩形范围内时最近点在同一经线上; 否则最近点位于经度较近的那条经线边上:
+         * 到经线的距离沿经线单峰, 最小值在垂足 (若落在边内) 或边的端点处取得。
+         */
+        @Override
+        public double minDistance(double x, double y, double minX, double minY, double maxX, double maxY) {
+            if (x >= minX && x <= maxX) {
+                if (y >= minY && y <= maxY) {
+                    return 0;
+                }
+                return EARTH_RADIUS_M * Math.toRadians(y < minY ? minY - y : y - maxY);
+            }
+            double dMin = longitudeDelta(x, minX);
+            double dMax = longitudeDelta(x, maxX);
+            double edgeX = dMin <= dMax ? minX : maxX;
+            double dLon = Math.toRadians(Math.min(dMin, dMax));
+
+            double best = Math.min(distance(x, y, edgeX, minY), distance(x, y, edgeX, maxY));
+            if (dLon < Math.PI / 2) {
+                double lat = Math.toRadians(y);
+                double footLat = Math.toDegrees(Math.atan(Math.tan(lat) / Math.cos(dLon)));
+                if (footLat >= minY && footLat <= maxY) {
+                    double cross = Math.asin(Math.min(1.0, Math.cos(lat) * Math.sin(dLon)));
+                    best = Math.min(best, EARTH_RADIUS_M * cross);
+                }
+            }
+            return best;
+        }
+    };
+
+    /** 地球平均半径 (米) */
+    public static final double EARTH_RADIUS_M = 6371008.8;
+
+    /** 经线上 1 度对应的弧长 (米), 用于局部等距圆柱投影 */
+    public static final double METRES_PER_DEGREE = EARTH_RADIUS_M * Math.PI / 180.0;
+
+    /**
+     * 两点间距离
+     */
+    public abstract double distance(double x1, double y1, double x2, double y2);
+
+    /**
+     * 点到矩形 [minX, maxX] x [minY, maxY] 的最小距离 (点在矩形内时为 0)
+     */
+    public abstract double minDistance(double x, double y, double minX, double minY, double maxX, double maxY);
+
+    /**
+     * 点到 MBR 的最小距离
+     */
+    public double minDistance(double x, double y, MBR mbr) {
+        return minDistance(x, y, mbr.getMinX(), mbr.getMinY(), mbr.getMaxX(), mbr.getMaxY());
+    }
+
+    private static double longitudeDelta(double a, double b) {
+        double d = Math.abs(a - b) % 360.0;
+        return d > 180.0 ? 360.0 - d : d;
+    }
+}
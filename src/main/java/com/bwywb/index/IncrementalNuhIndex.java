@@ -0,0 +1,335 @@
+package com.bwywb.index;
+
+import com.bwywb.model.POIData;
+import com.bwywb.utils.HilbertCodec2D;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * 可增量维护的 NUH 索引 (IncrementalNuhIndex)
+ * 以子空间覆盖的细粒度 Hilbert 编码段起点为键，将最小子空间保存在有序映射中，
+ * 支持在线插入 / 删除单个 POI，无需整体重建:
+ * <ul>
+ *   <li>插入: 沿与 {@link MBR#quadSplit()} 相同的浮点运算下降得到点所在格网的 Hilbert 编码，
+ *       按编码定位所属子空间; 密度超过阈值时用 {@link NuhIndex#nonUniformPartition} 重新划分该子空间，
+ *       子空间编码由 {@link NuhIndex#sortAndEncode(List)} 相同的规则给出。
+ *       点落在尚无子空间覆盖的空象限时，为其创建与已有子空间不相交的最大对齐块。</li>
+ *   <li>删除: 按 review_id 定位点，子空间变空时移除; 若父节点下所有子空间的总密度不再超过阈值，
+ *       则合并为父节点对应的单个子空间，并继续向上检查。</li>
+ * </ul>
+ * 维护后的子空间集合与对当前全部点调用 {@link NuhIndex#generateNuhIndex(List)} 的结果一致
+ * (子空间内点的顺序除外)。定位为 O(log n)，划分 / 合并只涉及阈值量级的点。
+ *
+ * 子空间按写时复制更新: 已经通过 {@link #subspaces()} 交出的 Subspace 对象不会再被修改。
+ * 开启 {@link #trackChanges()} 后记录每次更新涉及的编码段，供增量维护派生结构 (如并发快照) 使用。
+ * 本类不是线程安全的。
+ */
+public class IncrementalNuhIndex {
+    private final NuhIndex index;
+    private final int maxDepth;
+    private final int M;
+
+    /** 编码段起点 -> 子空间, 子空间之间互不重叠 */
+    private final TreeMap<Long, Subspace> leaves = new TreeMap<>();
+    /** review_id -> POI */
+    private final Map<String, POIData> points = new HashMap<>();
+
+    /** 自上次 {@link #drainChanges()} 以来被修改的编码段 [lo0, hi0, lo1, hi1, ...]; null 表示不记录 */
+    private long[] changes;
+    private int changeCount;
+
+    public IncrementalNuhIndex(NuhIndex index) {
+        this.index = index;
+        this.maxDepth = index.getMaxDepth();
+        this.M = index.getGridSize();
+    }
+
+    /**
+     * 以一批初始数据构建索引 (与 {@link NuhIndex#generateNuhIndex(List)} 相同)
+     */
+    public IncrementalNuhIndex(NuhIndex index, List<POIData> data) {
+        this(index);
+        for (Subspace subspace : index.generateNuhIndex(data)) {
+            for (POIData p : subspace.getDataSet()) {
+                register(p);
+            }
+            leaves.put(blockStart(subspace), subspace);
+        }
+    }
+
+    public NuhIndex getIndex() { return index; }
+    /** 点数 */
+    public int size() { return points.size(); }
+    /** 子空间数 */
+    public int subspaceCount() { return leaves.size(); }
+
+    public POIData get(String reviewId) {
+        return points.get(reviewId);
+    }
+
+    /**
+     * 当前的最小子空间列表，按 Hilbert 编码升序，可直接用于 {@link PointStore} 或 {@link SubspaceDirectory}
+     */
+    public List<Subspace> subspaces() {
+        return new ArrayList<>(leaves.values());
+    }
+
+    /**
+     * 块起点 (编码段起点) 位于 [from, to] 内的子空间，按 Hilbert 编码升序
+     */
+    List<Subspace> subspaces(long from, long to) {
+        return new ArrayList<>(leaves.subMap(from, true, to, true).values());
+    }
+
+    /**
+     * 开始记录被修改的编码段
+     */
+    void trackChanges() {
+        if (changes == null) {
+            changes = new long[16];
+            changeCount = 0;
+        }
+    }
+
+    /**
+     * 取出并清空自上次调用以来被修改的编码段 [lo0, hi0, lo1, hi1, ...]。
+     * 每段都是对齐的四叉树块: 修改前后的子空间要么落在段内，要么与段不相交。
+     */
+    long[] drainChanges() {
+        if (changes == null) {
+            throw new IllegalStateException("Change tracking is not enabled");
+        }
+        long[] drained = Arrays.copyOf(changes, changeCount);
+        changeCount = 0;
+        return drained;
+    }
+
+    private void changed(long start, long end) {
+        if (changes == null) {
+            return;
+        }
+        if (changeCount == changes.length) {
+            changes = Arrays.copyOf(changes, changeCount * 2);
+        }
+        changes[changeCount++] = start;
+        changes[changeCount++] = end;
+    }
+
+    /**
+     * 插入一个 POI
+     * @throws IllegalArgumentException review_id 为空或已存在，或点不在全局 MBR 内
+     */
+    public void insert(POIData p) {
+        if (!index.getGlobalMBR().contains(p.getX(), p.getY())) {
+            throw new IllegalArgumentException("POI lies outside the global MBR: " + p.getReview_id());
+        }
+        long cell = cellCode(p.getX(), p.getY());
+        register(p);
+
+        Map.Entry<Long, Subspace> owner = leaves.floorEntry(cell);
+        Subspace leaf;
+        if (owner != null && cell <= blockEnd(owner.getKey(), owner.getValue().getDepth())) {
+            // 之后的划分也不超出该子空间的编码段
+            changed(owner.getKey(), blockEnd(owner.getKey(), owner.getValue().getDepth()));
+            List<POIData> data = new ArrayList<>(owner.getValue().getDensity() + 1);
+            data.addAll(owner.getValue().getDataSet());
+            data.add(p);
+            leaf = owner.getValue().withDataSet(data);
+        } else {
+            // 空象限: 取包含该格网且不与相邻子空间相交的最浅对齐块
+            int depth = uncoveredDepth(cell);
+            long start = blockStart(cell, depth);
+            changed(start, blockEnd(start, depth));
+            List<POIData> data = new ArrayList<>(1);
+            data.add(p);
+            leaf = index.encode(index.createSubspace(data, blockMBR(start, depth), depth));
+        }
+        leaves.put(blockStart(leaf), leaf);
+
+        if (leaf.getDensity() > index.getDensityThreshold() && leaf.getDepth() < maxDepth) {
+            split(leaf);
+        }
+    }
+
+    /**
+     * 删除 review_id 对应的 POI
+     * @return 被删除的 POI，不存在时返回 null
+     */
+    public POIData delete(String reviewId) {
+        POIData p = points.remove(reviewId);
+        if (p == null) {
+            return null;
+        }
+        long cell = cellCode(p.getX(), p.getY());
+        Map.Entry<Long, Subspace> owner = leaves.floorEntry(cell);
+        Subspace leaf = owner.getValue();
+        changed(owner.getKey(), blockEnd(owner.getKey(), leaf.getDepth()));
+        List<POIData> data = new ArrayList<>(leaf.getDensity());
+        for (POIData q : leaf.getDataSet()) {
+            if (q != p) {
+                data.add(q);
+            }
+        }
+        if (data.isEmpty()) {
+            leaves.remove(owner.getKey());
+        } else {
+            leaves.put(owner.getKey(), leaf.withDataSet(data));
+        }
+
+        // 自下而上合并不再超过阈值的父节点
+        for (int depth = leaf.getDepth() - 1; depth >= 0; depth--) {
+            if (!merge(blockStart(cell, depth), depth)) {
+                break;
+            }
+        }
+        return p;
+    }
+
+    private void register(POIData p) {
+        String id = p.getReview_id();
+        if (id == null) {
+            throw new IllegalArgumentException("POI review_id must not be null");
+        }
+        if (points.putIfAbsent(id, p) != null) {
+            throw new IllegalArgumentException("Duplicate POI review_id: " + id);
+        }
+    }
+
+    /**
+     * 用 {@link NuhIndex#nonUniformPartition} 重新划分超过阈值的子空间
+     */
+    private void split(Subspace leaf) {
+        leaves.remove(blockStart(leaf));
+        List<Subspace> children = new ArrayList<>();
+        index.nonUniformPartition(leaf.getDataSet(), leaf.getRange(), leaf.getDepth(), children);
+        int kept = 0;
+        for (Subspace child : index.sortAndEncode(children)) {
+            leaves.put(blockStart(child), child);
+            kept += child.getDensity();
+        }
+        if (kept < leaf.getDensity()) {
+            // 与批量划分相同，不属于任何子象限的点 (深度 0 子空间中全局 MBR 之外的点) 被丢弃
+            Set<POIData> retained = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (Subspace child : children) {
+                retained.addAll(child.getDataSet());
+            }
+            for (POIData p : leaf.getDataSet()) {
+                if (!retained.contains(p)) {
+                    points.remove(p.getReview_id());
+                }
+            }
+        }
+    }
+
+    /**
+     * 若 depth 层编码段 [start, ...] 下所有子空间的总密度不超过阈值，则合并为一个子空间
+     * @return 是否可能需要继续向上合并 (已合并或该块下已无子空间)
+     */
+    private boolean merge(long start, int depth) {
+        NavigableMap<Long, Subspace> children = leaves.subMap(start, true, blockEnd(start, depth), true);
+        double threshold = index.getDensityThreshold();
+        int total = 0;
+        for (Subspace child : children.values()) {
+            total += child.getDensity();
+            if (total > threshold) {
+                return false;
+            }
+        }
+        if (total == 0) {
+            return true;
+        }
+        changed(start, blockEnd(start, depth));
+        List<POIData> data = new ArrayList<>(total);
+        for (Iterator<Subspace> it = children.values().iterator(); it.hasNext(); ) {
+            data.addAll(it.next().getDataSet());
+            it.remove();
+        }
+        Subspace merged = index.encode(index.createSubspace(data, blockMBR(start, depth), depth));
+        leaves.put(blockStart(merged), merged);
+        return true;
+    }
+
+    /**
+     * 包含 cell 且与已有子空间不相交的最浅深度。
+     * 子空间都是对齐的四叉树块，只需检查编码上与 cell 相邻的两个子空间。
+     */
+    private int uncoveredDepth(long cell) {
+        Map.Entry<Long, Subspace> before = leaves.lowerEntry(cell);
+        Map.Entry<Long, Subspace> after = leaves.higherEntry(cell);
+        int depth = 0;
+        while (depth < maxDepth) {
+            long start = blockStart(cell, depth);
+            long end = blockEnd(start, depth);
+            boolean disjoint = (before == null || blockEnd(before.getKey(), before.getValue().getDepth()) < start)
+                    && (after == null || after.getKey() > end);
+            if (disjoint) {
+                break;
+            }
+            depth++;
+        }
+        return depth;
+    }
+
+    /**
+     * 点所在细粒度格网的 Hilbert 编码。逐层按 MBR.quadSplit() 的中点判断象限，
+     * 与批量划分对边界点的归属完全一致。
+     */
+    private long cellCode(double x, double y) {
+        MBR global = index.getGlobalMBR();
+        long gx = SubspaceDirectory.gridCoordinate(x, global.getMinX(), global.getMaxX(), maxDepth);
+        long gy = SubspaceDirectory.gridCoordinate(y, global.getMinY(), global.getMaxY(), maxDepth);
+        return HilbertCodec2D.encode(gx, gy, maxDepth);
+    }
+
+    /**
+     * depth 层编码段 (起点 start) 对应的 MBR，与批量划分中逐层 quadSplit() 得到的 MBR 相同
+     */
+    private MBR blockMBR(long start, int depth) {
+        long[] grid = HilbertCodec2D.decode(start, maxDepth);
+        MBR global = index.getGlobalMBR();
+        double minX = global.getMinX();
+        double minY = global.getMinY();
+        double maxX = global.getMaxX();
+        double maxY = global.getMaxY();
+        for (int level = 0; level < depth; level++) {
+            int bit = maxDepth - 1 - level;
+            double midX = (minX + maxX) / 2.0;
+            double midY = (minY + maxY) / 2.0;
+            if (((grid[0] >>> bit) & 1) != 0) {
+                minX = midX;
+            } else {
+                maxX = midX;
+            }
+            if (((grid[1] >>> bit) & 1) != 0) {
+                minY = midY;
+            } else {
+                maxY = midY;
+            }
+        }
+        return new MBR(minX, minY, maxX, maxY);
+    }
+
+    private long blockStart(Subspace subspace) {
+        return blockStart(subspace.getHilbertCode(), subspace.getDepth());
+    }
+
+    private long blockStart(long code, int depth) {
+        long side = (long) M >> depth;
+        return code & ~(side * side - 1);
+    }
+
+    private long blockEnd(long start, int depth) {
+        long side = (long) M >> depth;
+        return start | (side * side - 1);
+    }
+}
@@ -0,0 +1,272 @@
+package com.bwywb.index;
+
+import com.bwywb.model.POIData;
+import com.bwywb.utils.HilbertCodec2D;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * k 近邻查询 (kNN) —— 基于 NUH 子空间的最佳优先遍历
+ *
+ * 子空间是对齐的四叉树块，任一对齐块在 Hilbert 曲线上都是一段连续编码，
+ * 因此无需显式建树: 从整个网格出发，按查询点到块 MBR 的最小距离从小到大展开隐式四叉树节点，
+ * 遇到恰好被某个子空间覆盖的块时扫描该子空间的点。
+ * 一旦结果堆已满且队首的最小距离下界大于当前第 k 近距离即提前终止。
+ * 节点队列与结果堆均为原始类型数组实现，不产生装箱对象。
+ */
+public class KnnSearch {
+    private static final int DEPTH_BITS = 5;
+    private static final long DEPTH_MASK = (1L << DEPTH_BITS) - 1;
+
+    private final PointStore store;
+    private final SubspaceDirectory directory;
+    private final double cellWidth;
+    private final double cellHeight;
+    private final double epsX;
+    private final double epsY;
+
+    public KnnSearch(PointStore store) {
+        this.store = store;
+        this.directory = store.directory();
+        MBR global = directory.globalMBR();
+        this.cellWidth = global.getWidth() / directory.gridSize();
+        this.cellHeight = global.getHeight() / directory.gridSize();
+        // 块边界按格网算术得到，与 quadSplit 逐级取中点可能差若干 ulp，略微放大以保证下界有效
+        this.epsX = global.getWidth() * 1e-12;
+        this.epsY = global.getHeight() * 1e-12;
+    }
+
+    /**
+     * 查询距 (x, y) 最近的 k 个点
+     *
+     * @return 按距离升序的 POI 列表 (点数不足 k 时返回全部)
+     */
+    public List<POIData> nearest(double x, double y, int k, DistanceMetric metric) {
+        int[] rows = new int[k];
+        double[] distances = new double[k];
+        int n = nearest(x, y, k, metric, rows, distances);
+        List<POIData> result = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            result.add(store.getPoint(rows[i]));
+        }
+        return result;
+    }
+
+    /**
+     * 查询距 (x, y) 最近的 k 个点, 结果写入调用方提供的数组 (按距离升序)
+     *
+     * @param rows      输出: PointStore 行号, 长度至少为 k
+     * @param distances 输出: 对应距离, 长度至少为 k
+     * @return 实际写入的结果数
+     */
+    public int nearest(double x, double y, int k, DistanceMetric metric, int[] rows, double[] distances) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("k must be positive");
+        }
+        if (rows.length < k || distances.length < k) {
+            throw new IllegalArgumentException("output arrays must hold at least k values");
+        }
+        ResultHeap best = new ResultHeap(k);
+        NodeQueue queue = new NodeQueue();
+        long[] cell = new long[2];
+        pushBlock(queue, 0, 0, x, y, metric, cell);
+
+        while (!queue.isEmpty()) {
+            if (best.isFull() && queue.peekKey() > best.maxDistance()) {
+                break;
+            }
+            long payload = queue.pop();
+            if (payload < 0) {
+                int subspace = (int) (-payload - 1);
+                for (int row = store.rowFrom(subspace), to = store.rowTo(subspace); row < to; row++) {
+                    best.offer(row, metric.distance(x, y, store.getX(row), store.getY(row)));
+                }
+            } else {
+                int depth = (int) (payload & DEPTH_MASK);
+                long lo = (payload >>> DEPTH_BITS) << 2 * (directory.maxDepth() - depth);
+                long quarter = blockCells(depth + 1);
+                for (int c = 0; c < 4; c++) {
+                    pushBlock(queue, lo + c * quarter, depth + 1, x, y, metric, cell);
+                }
+            }
+        }
+        return best.drainAscending(rows, distances);
+    }
+
+    /**
+     * 将起点为 lo、深度为 depth 的对齐块加入队列: 空块忽略; 被单个子空间覆盖时加入该子空间; 否则加入块节点
+     */
+    private void pushBlock(NodeQueue queue, long lo, int depth, double x, double y, DistanceMetric metric,
+                           long[] cell) {
+        long hi = lo + blockCells(depth) - 1;
+        int i = directory.firstBlockEndingAtOrAfter(lo, 0);
+        if (i == directory.size() || directory.blockStarts[i] > hi) {
+            return;
+        }
+        if (directory.blockStarts[i] <= lo && directory.blockEnds[i] >= hi) {
+            Subspace subspace = store.subspace(i);
+            // 深度 0 的子空间未经划分过滤, 其中的点可能不在 MBR 内
+            double bound = subspace.getDepth() == 0 ? 0 : metric.minDistance(x, y, subspace.getRange());
+            queue.push(bound, -(i + 1L));
+            return;
+        }
+        int side = directory.gridSize() >> depth;
+        HilbertCodec2D.decode(lo, directory.maxDepth(), cell);
+        long col0 = cell[0] & ~(side - 1L);
+        long row0 = cell[1] & ~(side - 1L);
+        MBR global = directory.globalMBR();
+        double minX = global.getMinX() + col0 * cellWidth - epsX;
+        double minY = global.getMinY() + row0 * cellHeight - epsY;
+        double maxX = global.getMinX() + (col0 + side) * cellWidth + epsX;
+        double maxY = global.getMinY() + (row0 + side) * cellHeight + epsY;
+        // 入队的是块在 depth 层的序号 (lo >>> 2 * (maxDepth - depth))，而不是细网格编码 lo:
+        // 块节点的深度不超过 maxDepth - 1 ≤ 29，序号小于 2^58，左移 DEPTH_BITS 后仍为非负 long
+        long block = lo >>> 2 * (directory.maxDepth() - depth);
+        queue.push(metric.minDistance(x, y, minX, minY, maxX, maxY), block << DEPTH_BITS | depth);
+    }
+
+    private long blockCells(int depth) {
+        long side = (long) directory.gridSize() >> depth;
+        return side * side;
+    }
+
+    /**
+     * 以 double 为键、long 为值的最小堆
+     */
+    static final class NodeQueue {
+        private double[] keys = new double[64];
+        private long[] values = new long[64];
+        private int size;
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        double peekKey() {
+            return keys[0];
+        }
+
+        void push(double key, long value) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (keys[parent] <= key) {
+                    break;
+                }
+                keys[i] = keys[parent];
+                values[i] = values[parent];
+                i = parent;
+            }
+            keys[i] = key;
+            values[i] = value;
+        }
+
+        long pop() {
+            long top = values[0];
+            size--;
+            double key = keys[size];
+            long value = values[size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && keys[child + 1] < keys[child]) {
+                    child++;
+                }
+                if (key <= keys[child]) {
+                    break;
+                }
+                keys[i] = keys[child];
+                values[i] = values[child];
+                i = child;
+            }
+            keys[i] = key;
+            values[i] = value;
+            return top;
+        }
+    }
+
+    /**
+     * 容量为 k 的有界最大堆, 保存当前最近的 k 个 (距离, 行号)
+     */
+    static final class ResultHeap {
+        private final double[] distances;
+        private final int[] rows;
+        private int size;
+
+        ResultHeap(int k) {
+            this.distances = new double[k];
+            this.rows = new int[k];
+        }
+
+        boolean isFull() {
+            return size == distances.length;
+        }
+
+        double maxDistance() {
+            return distances[0];
+        }
+
+        void offer(int row, double distance) {
+            if (size < distances.length) {
+                int i = size++;
+                while (i > 0) {
+                    int parent = (i - 1) >>> 1;
+                    if (distances[parent] >= distance) {
+                        break;
+                    }
+                    distances[i] = distances[parent];
+                    rows[i] = rows[parent];
+                    i = parent;
+                }
+                distances[i] = distance;
+                rows[i] = row;
+            } else if (distance < distances[0]) {
+                siftDown(row, distance, size);
+            }
+        }
+
+        private void siftDown(int row, double distance, int n) {
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= n) {
+                    break;
+                }
+                if (child + 1 < n && distances[child + 1] > distances[child]) {
+                    child++;
+                }
+                if (distance >= distances[child]) {
+                    break;
+                }
+                distances[i] = distances[child];
+                rows[i] = rows[child];
+                i = child;
+            }
+            distances[i] = distance;
+            rows[i] = row;
+        }
+
+        /**
+         * 依次弹出最大值, 从后往前写入, 得到升序结果
+         */
+        int drainAscending(int[] outRows, double[] outDistances) {
+            int n = size;
+            for (int last = n - 1; last >= 0; last--) {
+                outRows[last] = rows[0];
+                outDistances[last] = distances[0];
+                siftDown(rows[last], distances[last], last);
+            }
+            size = 0;
+            return n;
+        }
+    }
+}
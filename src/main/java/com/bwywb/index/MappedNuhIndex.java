@@ -0,0 +1,176 @@
+package com.bwywb.index;
+
+import com.bwywb.model.POIData;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * 通过内存映射打开的 NUH 索引 (只读)
+ * 子空间表与点列直接在映射缓冲区上按偏移读取，仅子空间编码与深度在打开时读入数组以建立
+ * {@link SubspaceDirectory}; 窗口查询与 {@link PointStore} 共用 {@link SubspaceDirectory#visit}。
+ * 文件格式见 {@link NuhIndexFile}。
+ */
+public class MappedNuhIndex {
+    private static final int MIN_X = 0;
+    private static final int MIN_Y = 8;
+    private static final int MAX_X = 16;
+    private static final int MAX_Y = 24;
+    private static final int HILBERT_CODE = 32;
+    private static final int DEPTH = 40;
+    private static final int ROW = 44;
+    private static final int COL = 48;
+    private static final int DENSITY = 52;
+    private static final int ROW_FROM = 56;
+    private static final int ROW_TO = 60;
+
+    private final MBR globalMBR;
+    private final double densityThreshold;
+    private final int maxDepth;
+    private final int subspaceCount;
+    private final int pointCount;
+
+    private final ByteBuffer subspaces;
+    private final ByteBuffer xs;
+    private final ByteBuffer ys;
+    private final ByteBuffer timestamps;
+    private final ByteBuffer stringOffsets;
+    private final ByteBuffer stringHeap;
+
+    private final SubspaceDirectory directory;
+
+    private final SubspacePoints rows = new SubspacePoints() {
+        @Override
+        public int pointCount(int k) { return rowTo(k) - rowFrom(k); }
+        @Override
+        public double getX(int k, int i) { return MappedNuhIndex.this.getX(rowFrom(k) + i); }
+        @Override
+        public double getY(int k, int i) { return MappedNuhIndex.this.getY(rowFrom(k) + i); }
+        @Override
+        public long getTimestamp(int k, int i) { return MappedNuhIndex.this.getTimestamp(rowFrom(k) + i); }
+        @Override
+        public boolean coveredBy(int k, MBR window) { return MappedNuhIndex.this.coveredBy(k, window); }
+    };
+
+    MappedNuhIndex(MBR globalMBR, double densityThreshold, int maxDepth, int subspaceCount, int pointCount,
+                   ByteBuffer subspaces, ByteBuffer xs, ByteBuffer ys, ByteBuffer timestamps,
+                   ByteBuffer stringOffsets, ByteBuffer stringHeap) {
+        this.globalMBR = globalMBR;
+        this.densityThreshold = densityThreshold;
+        this.maxDepth = maxDepth;
+        this.subspaceCount = subspaceCount;
+        this.pointCount = pointCount;
+        this.subspaces = subspaces;
+        this.xs = xs;
+        this.ys = ys;
+        this.timestamps = timestamps;
+        this.stringOffsets = stringOffsets;
+        this.stringHeap = stringHeap;
+
+        long[] codes = new long[subspaceCount];
+        int[] depths = new int[subspaceCount];
+        for (int k = 0; k < subspaceCount; k++) {
+            codes[k] = getHilbertCode(k);
+            depths[k] = getDepth(k);
+        }
+        this.directory = new SubspaceDirectory(globalMBR, maxDepth, codes, depths);
+    }
+
+    // --- 索引参数 ---
+    public MBR getGlobalMBR() { return globalMBR; }
+    public double getDensityThreshold() { return densityThreshold; }
+    public int getMaxDepth() { return maxDepth; }
+    public int size() { return pointCount; }
+    public int subspaceCount() { return subspaceCount; }
+
+    // --- 子空间表 ---
+    public long getHilbertCode(int k) { return subspaces.getLong(record(k) + HILBERT_CODE); }
+    public int getDepth(int k) { return subspaces.getInt(record(k) + DEPTH); }
+    public int getRow(int k) { return subspaces.getInt(record(k) + ROW); }
+    public int getCol(int k) { return subspaces.getInt(record(k) + COL); }
+    public int getDensity(int k) { return subspaces.getInt(record(k) + DENSITY); }
+    public int rowFrom(int k) { return subspaces.getInt(record(k) + ROW_FROM); }
+    public int rowTo(int k) { return subspaces.getInt(record(k) + ROW_TO); }
+
+    public MBR getRange(int k) {
+        int r = record(k);
+        return new MBR(subspaces.getDouble(r + MIN_X), subspaces.getDouble(r + MIN_Y),
+                subspaces.getDouble(r + MAX_X), subspaces.getDouble(r + MAX_Y));
+    }
+
+    // --- 点列 ---
+    public double getX(int row) { return xs.getDouble(row << 3); }
+    public double getY(int row) { return ys.getDouble(row << 3); }
+    public long getTimestamp(int row) { return timestamps.getLong(row << 3); }
+    public String getBusinessId(int row) { return string(row * NuhIndexFile.STRINGS_PER_POINT); }
+    public String getUserId(int row) { return string(row * NuhIndexFile.STRINGS_PER_POINT + 1); }
+    public String getReviewId(int row) { return string(row * NuhIndexFile.STRINGS_PER_POINT + 2); }
+
+    /**
+     * 物化一行为 POIData (attributes 不持久化, 为空)
+     */
+    public POIData getPoint(int row) {
+        return new POIData(getBusinessId(row), getUserId(row), getReviewId(row),
+                getX(row), getY(row), getTimestamp(row), new HashMap<>());
+    }
+
+    /**
+     * 对窗口内的每一行调用 rowVisitor
+     * @return 命中的行数
+     */
+    public int visit(MBR window, IntConsumer rowVisitor) {
+        return visit(window, Long.MIN_VALUE, Long.MAX_VALUE, rowVisitor);
+    }
+
+    /**
+     * 对窗口及时间区间 [startTime, endTime] 内的每一行调用 rowVisitor
+     * @return 命中的行数
+     */
+    public int visit(MBR window, long startTime, long endTime, IntConsumer rowVisitor) {
+        return directory.visit(rows, window, startTime, endTime, (k, i) -> rowVisitor.accept(rowFrom(k) + i));
+    }
+
+    /**
+     * 窗口查询
+     */
+    public List<POIData> query(MBR window) {
+        List<POIData> result = new ArrayList<>();
+        visit(window, row -> result.add(getPoint(row)));
+        return result;
+    }
+
+    /**
+     * 窗口内的点数
+     */
+    public int count(MBR window) {
+        return visit(window, row -> { });
+    }
+
+    private boolean coveredBy(int k, MBR window) {
+        int r = record(k);
+        return subspaces.getInt(r + DEPTH) > 0
+                && subspaces.getDouble(r + MIN_X) >= window.getMinX()
+                && subspaces.getDouble(r + MAX_X) <= window.getMaxX()
+                && subspaces.getDouble(r + MIN_Y) >= window.getMinY()
+                && subspaces.getDouble(r + MAX_Y) <= window.getMaxY();
+    }
+
+    private static int record(int k) {
+        return k * NuhIndexFile.SUBSPACE_RECORD_BYTES;
+    }
+
+    private String string(int i) {
+        int from = stringOffsets.getInt(i << 2);
+        int to = stringOffsets.getInt((i + 1) << 2);
+        byte[] bytes = new byte[to - from];
+        // 在副本上定位后批量读取, 不改变共享缓冲区的位置 (查询可并发进行)
+        ByteBuffer heap = stringHeap.duplicate();
+        heap.position(from);
+        heap.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
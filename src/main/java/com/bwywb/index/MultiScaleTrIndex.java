@@ -3,33 +3,46 @@ package com.bwywb.index;
 
 import com.bwywb.model.POIData;
 
-import java.time.Instant;
-import java.time.ZoneId;
-import java.time.ZonedDateTime;
+import java.nio.ByteBuffer;
 
 /**
  * 多尺度时间索引: TR_Multi-scale = L1(Year/Month)::L2(Day)::L3(TP_min)
+ *
+ * 除字符串编码外还提供定长 8 字节的二进制 Key:
+ * <pre>
+ *   bit 63      : 0 (保证有符号 long 比较与无符号大端字节比较一致)
+ *   bit 62..49  : L1 (14 位)
+ *   bit 48..40  : L2 ( 9 位)
+ *   bit 39..0   : L3 (40 位)
+ * </pre>
+ * 二进制 Key 的数值顺序 (以及大端字节的字典序) 与时间顺序一致。
  */
 public class MultiScaleTrIndex {
     private final long TP_LENGTH_MS = 30 * 60 * 1000L; // 最小时间段 30 分钟
 
+    /** 二进制 Key 的长度 (字节) */
+    public static final int KEY_BYTES = Long.BYTES;
+
+    private static final int L3_BITS = 40;
+    private static final int L2_BITS = 9;
+    private static final int L1_BITS = 14;
+    private static final int L2_SHIFT = L3_BITS;
+    private static final int L1_SHIFT = L3_BITS + L2_BITS;
+    private static final long L3_MASK = (1L << L3_BITS) - 1;
+    private static final long L2_MASK = (1L << L2_BITS) - 1;
+    private static final long L1_MASK = (1L << L1_BITS) - 1;
+
+    private static final long MS_PER_DAY = 24 * 60 * 60 * 1000L;
+
     /**
      * 1. 编码 L1 (Year/Month)
-     * @param zdt ZonedDateTime
+     * @param year 年 (UTC)
+     * @param month 月 (1-12)
      * @return 整数编码
      */
-    private int encodeL1_YearMonth(ZonedDateTime zdt) {
+    private static int encodeL1_YearMonth(int year, int month) {
         // 简化: 假设从 1970 年开始的月份总数
-        return (zdt.getYear() - 1970) * 12 + zdt.getMonthValue();
-    }
-
-    /**
-     * 2. 编码 L2 (Day of Year)
-     * @param zdt ZonedDateTime
-     * @return 整数编码
-     */
-    private int encodeL2_Day(ZonedDateTime zdt) {
-        return zdt.getDayOfYear();
+        return (year - 1970) * 12 + month;
     }
 
     /**
@@ -43,24 +56,157 @@ public class MultiScaleTrIndex {
         return timestamp / TP_LENGTH_MS;
     }
 
+    /**
+     * 时间戳所在的最小时间段索引 (L3)
+     */
+    public long tpIndex(long timestamp) {
+        return encodeL3_TPIndex(timestamp);
+    }
+
+    public long getTpLengthMs() {
+        return TP_LENGTH_MS;
+    }
+
     /**
      * 生成多尺度 TR 编码 (Key 的时间前缀)
      * @param data POI 数据点
      * @return 层次编码串联字符串
      */
     public String generateTrCode(POIData data) {
-        // 使用 UTC 或固定时区以确保一致性
-        ZonedDateTime zdt = Instant.ofEpochMilli(data.getTimestamp())
-                .atZone(ZoneId.of("UTC"));
+        // 使用 UTC 以确保一致性, L1 / L2 由纪元日直接换算 (见 civilFields)
+        long fields = civilFields(data.getTimestamp());
 
+        StringBuilder sb = new StringBuilder(20);
         // L1
-        String codeL1 = String.format("%04d", encodeL1_YearMonth(zdt));
+        appendZeroPadded(sb, (int) (fields >>> 32), 4);
         // L2
-        String codeL2 = String.format("%03d", encodeL2_Day(zdt));
+        appendZeroPadded(sb, (int) fields, 3);
         // L3 (最细粒度)
-        String codeL3 = String.valueOf(encodeL3_TPIndex(data.getTimestamp()));
+        sb.append(encodeL3_TPIndex(data.getTimestamp()));
 
         // 串联编码 (确保 Key 的字典序与时间序一致)
-        return codeL1 + codeL2 + codeL3; 
+        return sb.toString();
+    }
+
+    /**
+     * 生成定长二进制 TR Key
+     * @param data POI 数据点
+     * @return 8 字节 Key (long 形式)
+     */
+    public long generateTrKey(POIData data) {
+        return generateTrKey(data.getTimestamp());
+    }
+
+    /**
+     * 生成定长二进制 TR Key
+     * @param timestamp Unix epoch time (毫秒, 非负)
+     * @return 8 字节 Key (long 形式)
+     */
+    public long generateTrKey(long timestamp) {
+        if (timestamp < 0) {
+            throw new IllegalArgumentException("timestamp must be non-negative: " + timestamp);
+        }
+        long fields = civilFields(timestamp);
+        long l1 = fields >>> 32;
+        long l2 = fields & 0xFFFFFFFFL;
+        long l3 = encodeL3_TPIndex(timestamp);
+        if (l1 > L1_MASK || l3 > L3_MASK) {
+            throw new IllegalArgumentException("timestamp out of range for binary TR key: " + timestamp);
+        }
+        return l1 << L1_SHIFT | l2 << L2_SHIFT | l3;
+    }
+
+    /**
+     * 将二进制 TR Key 以大端序写入 dest[offset, offset + 8)
+     */
+    public void writeTrKey(POIData data, byte[] dest, int offset) {
+        long key = generateTrKey(data.getTimestamp());
+        for (int i = KEY_BYTES - 1; i >= 0; i--) {
+            dest[offset + i] = (byte) key;
+            key >>>= 8;
+        }
+    }
+
+    /**
+     * 将二进制 TR Key 写入 buffer 的当前位置 (按 buffer 的字节序, 默认大端)
+     */
+    public void writeTrKey(POIData data, ByteBuffer buffer) {
+        buffer.putLong(generateTrKey(data.getTimestamp()));
+    }
+
+    /**
+     * 从大端字节数组中读取二进制 TR Key
+     */
+    public static long readTrKey(byte[] src, int offset) {
+        long key = 0;
+        for (int i = 0; i < KEY_BYTES; i++) {
+            key = (key << 8) | (src[offset + i] & 0xFF);
+        }
+        return key;
+    }
+
+    /** 解码 L1 (Year/Month) */
+    public static int decodeL1(long key) {
+        return (int) ((key >>> L1_SHIFT) & L1_MASK);
+    }
+
+    /** 解码 L2 (Day of Year) */
+    public static int decodeL2(long key) {
+        return (int) ((key >>> L2_SHIFT) & L2_MASK);
+    }
+
+    /** 解码 L3 (Minimal Time Period Index i) */
+    public static long decodeL3(long key) {
+        return key & L3_MASK;
+    }
+
+    /**
+     * 将二进制 TR Key 还原为 {@link #generateTrCode(POIData)} 的字符串形式
+     */
+    public static String toTrCode(long key) {
+        StringBuilder sb = new StringBuilder(20);
+        appendZeroPadded(sb, decodeL1(key), 4);
+        appendZeroPadded(sb, decodeL2(key), 3);
+        sb.append(decodeL3(key));
+        return sb.toString();
+    }
+
+    /**
+     * 由 UTC 纪元毫秒计算 L1 (高 32 位) 与 L2 (低 32 位)，不分配对象。
+     * 纪元日到公历日期的换算采用 Howard Hinnant 的 civil_from_days 算法。
+     */
+    private static long civilFields(long timestamp) {
+        long z = Math.floorDiv(timestamp, MS_PER_DAY) + 719468;
+        long era = Math.floorDiv(z, 146097);
+        long doe = z - era * 146097;                                      // [0, 146096]
+        long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365; // [0, 399]
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);               // 以 3 月 1 日为 0, [0, 365]
+        long mp = (5 * doy + 2) / 153;                                    // [0, 11]
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        int year = (int) (yoe + era * 400 + (month <= 2 ? 1 : 0));
+
+        int dayOfYear;
+        if (month <= 2) {
+            dayOfYear = (int) (doy - 306 + 1);
+        } else {
+            boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+            dayOfYear = (int) (doy + 59 + (leap ? 1 : 0) + 1);
+        }
+        return ((long) encodeL1_YearMonth(year, month) << 32) | dayOfYear;
+    }
+
+    /**
+     * 与 String.format("%0{width}d", value) 输出一致
+     */
+    private static void appendZeroPadded(StringBuilder sb, int value, int width) {
+        if (value < 0) {
+            sb.append('-');
+            width--;
+        }
+        String digits = value < 0 ? String.valueOf(-(long) value) : String.valueOf(value);
+        for (int i = digits.length(); i < width; i++) {
+            sb.append('0');
+        }
+        sb.append(digits);
     }
-}
\ No newline at end of file
+}
@@ -1,11 +1,14 @@
 package com.bwywb.index;
 
 import com.bwywb.model.POIData;
+import com.bwywb.utils.HilbertCodec2D;
 import com.bwywb.utils.NuhUtils;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.ListIterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * 非均匀 Hilbert 空间填充曲线索引 (NUH Index)
@@ -13,13 +16,32 @@ import java.util.stream.Collectors;
  */
 public class NuhIndex {
     private final double DENSITY_THRESHOLD;
-    private final int MAX_DEPTH = 15;
+    private final int MAX_DEPTH;
     private final int M;
 
+    /** 默认最大划分深度 (M = 32768) */
+    public static final int DEFAULT_MAX_DEPTH = 15;
+    /** 最大划分深度上限: 网格边长 M 须能用 int 表示 */
+    public static final int MAX_SUPPORTED_DEPTH = 30;
+
+    /** 并行构建时，点数低于该值的子树直接在当前线程顺序划分 */
+    public static final int DEFAULT_PARALLEL_CUTOFF = 1 << 14;
+
     private final MBR globalMBR;
 
     public NuhIndex(double densityThreshold, MBR globalMBR) {
+        this(densityThreshold, DEFAULT_MAX_DEPTH, globalMBR);
+    }
+
+    /**
+     * @param maxDepth 最大划分深度, 取值 [1, {@link #MAX_SUPPORTED_DEPTH}]，虚拟网格边长 M = 2^maxDepth
+     */
+    public NuhIndex(double densityThreshold, int maxDepth, MBR globalMBR) {
+        if (maxDepth < 1 || maxDepth > MAX_SUPPORTED_DEPTH) {
+            throw new IllegalArgumentException("maxDepth must be between 1 and " + MAX_SUPPORTED_DEPTH + ": " + maxDepth);
+        }
         this.DENSITY_THRESHOLD = densityThreshold;
+        this.MAX_DEPTH = maxDepth;
         this.globalMBR = globalMBR;
         this.M = 1 << MAX_DEPTH;
 
@@ -28,6 +50,12 @@ public class NuhIndex {
         }
     }
 
+    public MBR getGlobalMBR() { return globalMBR; }
+    public double getDensityThreshold() { return DENSITY_THRESHOLD; }
+    public int getMaxDepth() { return MAX_DEPTH; }
+    /** 虚拟网格边长 M = 2^MAX_DEPTH */
+    public int getGridSize() { return M; }
+
     /**
      * 1. 非均匀划分 (对应原论文 Algorithm 2-1)
      */
@@ -36,61 +64,92 @@ public class NuhIndex {
             MBR currentMBR,
             int currentDepth,
             List<Subspace> minimalSubspaces) {
+        QuadPartitioner partitioner = new QuadPartitioner(data);
+        nonUniformPartition(partitioner, 0, partitioner.size(), currentMBR, currentDepth, minimalSubspaces);
+    }
+
+    /**
+     * 在共享下标排列的 [from, to) 区间上递归划分，每层只做一次单趟四分。
+     */
+    private void nonUniformPartition(
+            QuadPartitioner partitioner,
+            int from,
+            int to,
+            MBR currentMBR,
+            int currentDepth,
+            List<Subspace> minimalSubspaces) {
 
-        int currentDensity = data.size();
+        int currentDensity = to - from;
 
         // 停止划分条件：密度低于阈值 OR 达到最大深度
         if (currentDensity <= DENSITY_THRESHOLD || currentDepth >= MAX_DEPTH) {
-
-            // 映射中心点到 Hilbert 虚拟网格坐标 (xs, ys)
-            int xs = NuhUtils.mapCoordinateToGrid(currentMBR.getCenterX(), globalMBR.getMinX(), globalMBR.getMaxX(), M);
-            int ys = NuhUtils.mapCoordinateToGrid(currentMBR.getCenterY(), globalMBR.getMinY(), globalMBR.getMaxY(), M);
-
-            // 构造最小子空间 (Row 对应 Y, Col 对应 X)
-            Subspace minimal = new Subspace(currentMBR, data, currentDepth, ys, xs);
-            minimalSubspaces.add(minimal);
+            minimalSubspaces.add(createSubspace(partitioner.slice(from, to), currentMBR, currentDepth));
             return;
         }
 
-        // 均匀四分，并递归调用
+        // 均匀四分，单趟将点分发到四个子象限，并递归调用
         MBR[] subMBRs = currentMBR.quadSplit();
+        int[] bounds = partitioner.split(from, to, currentMBR);
         int nextDepth = currentDepth + 1;
 
-        for (MBR subMBR : subMBRs) {
-            // 过滤点要素: 找出落入子 MBR 内的所有点
-            List<POIData> subData = data.stream()
-                    .filter(p -> subMBR.contains(p.getX(), p.getY()))
-                    .collect(Collectors.toList());
-
-            if (!subData.isEmpty()) {
-                nonUniformPartition(subData, subMBR, nextDepth, minimalSubspaces);
+        for (int q = 0; q < subMBRs.length; q++) {
+            if (bounds[q + 1] > bounds[q]) {
+                nonUniformPartition(partitioner, bounds[q], bounds[q + 1], subMBRs[q], nextDepth, minimalSubspaces);
             }
         }
     }
 
+    Subspace createSubspace(List<POIData> data, MBR currentMBR, int currentDepth) {
+        // 映射中心点到 Hilbert 虚拟网格坐标 (xs, ys)
+        int xs = NuhUtils.mapCoordinateToGrid(currentMBR.getCenterX(), globalMBR.getMinX(), globalMBR.getMaxX(), M);
+        int ys = NuhUtils.mapCoordinateToGrid(currentMBR.getCenterY(), globalMBR.getMinY(), globalMBR.getMaxY(), M);
+
+        // 构造最小子空间 (Row 对应 Y, Col 对应 X)
+        return new Subspace(currentMBR, data, currentDepth, ys, xs);
+    }
+
     /**
      * 2. 迭代法排序与编码 (对应原论文 1.1 节和 Algorithm 2-2)
+     * 列表中的子空间被原位替换为已编码的子空间 (Subspace 不可变)，并返回该列表。
      */
     public List<Subspace> sortAndEncode(List<Subspace> minimalSubspaces) {
 
         // 1. 计算每个最小子空间的 Hilbert 编码 (长度 d)
-        for (Subspace subspace : minimalSubspaces) {
-            int xs = subspace.getCol();
-            int ys = subspace.getRow();
-
-            // 【关键调用】使用我们自己实现的迭代法计算 Hilbert 编码 d
-            long d = NuhUtils.computeHilbertCodeIterative(xs, ys, M);
-            subspace.setHilbertCode(d);
+        for (ListIterator<Subspace> it = minimalSubspaces.listIterator(); it.hasNext(); ) {
+            it.set(encode(it.next()));
         }
 
         // 2. 按编码 d 升序排序
         minimalSubspaces.sort((s1, s2) -> Long.compare(s1.getHilbertCode(), s2.getHilbertCode()));
 
-        // TODO: (原论文 Algorithm 2-4) 连接线生成：处理非均匀断层
+        // (原论文 Algorithm 2-4) 连接线生成：处理非均匀断层，见 connect(List)
+        // 子空间本身保持稳定的 Hilbert 编码，连续序号只在连接线这一内存视图中分配
 
         return minimalSubspaces;
     }
 
+    /**
+     * 3. 连接线生成 (对应原论文 Algorithm 2-4)
+     * 沿排序结果为子空间分配连续的序号 0..n-1，并提供 序号 <-> 子空间 的查找。序号不可持久化，见 {@link ConnectionLine}
+     *
+     * @param sortedSubspaces {@link #sortAndEncode(List)} 的输出
+     */
+    public ConnectionLine connect(List<Subspace> sortedSubspaces) {
+        return new ConnectionLine(this, sortedSubspaces);
+    }
+
+    /**
+     * 计算单个子空间的 Hilbert 编码 (中心格网编码)，返回带该编码的子空间
+     */
+    Subspace encode(Subspace subspace) {
+        int xs = subspace.getCol();
+        int ys = subspace.getRow();
+
+        // 【关键调用】查表法计算 Hilbert 编码 d (阶数 = MAX_DEPTH)
+        long d = HilbertCodec2D.encode(xs, ys, MAX_DEPTH);
+        return subspace.withHilbertCode(d);
+    }
+
     /**
      * 整个非均匀 Hilbert 索引生成流程的入口
      */
@@ -106,4 +165,93 @@ public class NuhIndex {
         // 对划分结果进行 Hilbert 编码和排序
         return sortAndEncode(minimalSubspaces);
     }
-}
\ No newline at end of file
+
+    /**
+     * 并行版本的索引生成入口，使用公共 ForkJoinPool 与默认并行阈值。
+     */
+    public List<Subspace> generateNuhIndexParallel(List<POIData> data) {
+        return generateNuhIndexParallel(data, ForkJoinPool.commonPool(), DEFAULT_PARALLEL_CUTOFF);
+    }
+
+    /**
+     * 并行版本的索引生成入口：点数超过 parallelCutoff 的节点将其四个 quadSplit() 子节点
+     * 作为子任务提交到 pool，各任务返回自己的子空间列表，父任务按象限顺序拼接，无需加锁。
+     * 结果与 {@link #generateNuhIndex(List)} 完全一致。
+     *
+     * @param pool           执行划分任务的线程池
+     * @param parallelCutoff 并行阈值 (点数)，不大于该值的子树顺序执行
+     */
+    public List<Subspace> generateNuhIndexParallel(List<POIData> data, ForkJoinPool pool, int parallelCutoff) {
+        if (parallelCutoff < 1) {
+            throw new IllegalArgumentException("parallelCutoff must be positive");
+        }
+        if (data == null || data.isEmpty()) {
+            return new ArrayList<>();
+        }
+        QuadPartitioner partitioner = new QuadPartitioner(data);
+        List<Subspace> minimalSubspaces = pool.invoke(
+                new PartitionTask(partitioner, 0, partitioner.size(), globalMBR, 0, parallelCutoff));
+        return sortAndEncode(minimalSubspaces);
+    }
+
+    /**
+     * 并行划分任务，子任务之间只操作 QuadPartitioner 中互不重叠的下标区间。
+     */
+    private final class PartitionTask extends RecursiveTask<List<Subspace>> {
+        private static final long serialVersionUID = 1L;
+
+        private final QuadPartitioner partitioner;
+        private final int from;
+        private final int to;
+        private final MBR currentMBR;
+        private final int currentDepth;
+        private final int parallelCutoff;
+
+        PartitionTask(QuadPartitioner partitioner, int from, int to, MBR currentMBR, int currentDepth,
+                      int parallelCutoff) {
+            this.partitioner = partitioner;
+            this.from = from;
+            this.to = to;
+            this.currentMBR = currentMBR;
+            this.currentDepth = currentDepth;
+            this.parallelCutoff = parallelCutoff;
+        }
+
+        @Override
+        protected List<Subspace> compute() {
+            List<Subspace> result = new ArrayList<>();
+            int currentDensity = to - from;
+            if (currentDensity <= parallelCutoff
+                    || currentDensity <= DENSITY_THRESHOLD || currentDepth >= MAX_DEPTH) {
+                nonUniformPartition(partitioner, from, to, currentMBR, currentDepth, result);
+                return result;
+            }
+
+            MBR[] subMBRs = currentMBR.quadSplit();
+            int[] bounds = partitioner.split(from, to, currentMBR);
+            int nextDepth = currentDepth + 1;
+
+            List<PartitionTask> children = new ArrayList<>(subMBRs.length);
+            for (int q = 0; q < subMBRs.length; q++) {
+                if (bounds[q + 1] > bounds[q]) {
+                    children.add(new PartitionTask(partitioner, bounds[q], bounds[q + 1], subMBRs[q],
+                            nextDepth, parallelCutoff));
+                }
+            }
+            if (children.isEmpty()) {
+                // 所有点都落在子象限之外 (上边界)
+                return result;
+            }
+            // 最后一个子任务在当前线程执行，其余的 fork 出去
+            for (int i = 0; i < children.size() - 1; i++) {
+                children.get(i).fork();
+            }
+            List<Subspace> last = children.get(children.size() - 1).compute();
+            for (int i = 0; i < children.size() - 1; i++) {
+                result.addAll(children.get(i).join());
+            }
+            result.addAll(last);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package com.bwywb.index;
+
+import com.bwywb.model.POIData;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * NUH 索引的二进制文件格式 (大端序)
+ * <pre>
+ * [0, 128)   文件头
+ *            int   magic ('NUHI')          int   version
+ *            int   subspaceCount           int   pointCount
+ *            double[4] globalMBR (minX, minY, maxX, maxY)
+ *            double densityThreshold       int   maxDepth       int reserved
+ *            long  subspaceTableOffset     long  columnsOffset
+ *            long  stringHeapOffset        long  fileLength
+ *            long  bodyCrc32 ([128, fileLength) 的 CRC32)
+ *            long  headerCrc32 ([0, 104) 的 CRC32)
+ * 子空间表   每个子空间 64 字节: double minX, minY, maxX, maxY; long hilbertCode;
+ *            int depth, row, col, density, rowFrom, rowTo (按编码升序)
+ * 点列       double[n] x; double[n] y; long[n] timestamp; int[3n + 1] 字符串偏移
+ * 字符串堆   每个点依次为 business_id, user_id, review_id 的 UTF-8 字节
+ * </pre>
+ * 各段均按 8 字节对齐。POIData 的 attributes 不持久化，null 字符串按空串存储。
+ * 打开时逐段 {@link FileChannel#map} 只读映射，不反序列化任何对象，见 {@link MappedNuhIndex};
+ * 默认只校验文件头，数据体 CRC32 的校验需显式请求 (需读遍整个文件)。
+ */
+public final class NuhIndexFile {
+    public static final int MAGIC = 0x4E554849; // "NUHI"
+    public static final int VERSION = 1;
+
+    static final int HEADER_BYTES = 128;
+    static final int HEADER_CRC_OFFSET = 104;
+    static final int SUBSPACE_RECORD_BYTES = 64;
+    static final int STRINGS_PER_POINT = 3;
+
+    private NuhIndexFile() {
+        // prevent instantiation
+    }
+
+    /**
+     * 将点存储及其索引参数写入文件 (覆盖已有文件)
+     */
+    public static void write(Path path, NuhIndex index, PointStore store) throws IOException {
+        int subspaceCount = store.subspaceCount();
+        int pointCount = store.size();
+
+        byte[][] strings = new byte[pointCount * STRINGS_PER_POINT][];
+        long heapBytes = 0;
+        for (int row = 0; row < pointCount; row++) {
+            POIData p = store.getPoint(row);
+            strings[row * STRINGS_PER_POINT] = utf8(p.getBusiness_id());
+            strings[row * STRINGS_PER_POINT + 1] = utf8(p.getUser_id());
+            strings[row * STRINGS_PER_POINT + 2] = utf8(p.getReview_id());
+            for (int j = 0; j < STRINGS_PER_POINT; j++) {
+                heapBytes += strings[row * STRINGS_PER_POINT + j].length;
+            }
+        }
+        if (heapBytes > Integer.MAX_VALUE) {
+            throw new IOException("String heap exceeds 2 GB: " + heapBytes);
+        }
+
+        long subspaceTableOffset = HEADER_BYTES;
+        long columnsOffset = align(subspaceTableOffset + (long) subspaceCount * SUBSPACE_RECORD_BYTES);
+        long stringOffsetsBytes = 4L * (pointCount * (long) STRINGS_PER_POINT + 1);
+        long stringHeapOffset = align(columnsOffset + 24L * pointCount + stringOffsetsBytes);
+        long fileLength = stringHeapOffset + heapBytes;
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.position(HEADER_BYTES);
+            CRC32 bodyCrc = new CRC32();
+            // 不关闭包装流, 以免提前关闭 channel
+            DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16), bodyCrc));
+
+            for (int k = 0; k < subspaceCount; k++) {
+                Subspace s = store.subspace(k);
+                MBR range = s.getRange();
+                out.writeDouble(range.getMinX());
+                out.writeDouble(range.getMinY());
+                out.writeDouble(range.getMaxX());
+                out.writeDouble(range.getMaxY());
+                out.writeLong(s.getHilbertCode());
+                out.writeInt(s.getDepth());
+                out.writeInt(s.getRow());
+                out.writeInt(s.getCol());
+                out.writeInt(s.getDensity());
+                out.writeInt(store.rowFrom(k));
+                out.writeInt(store.rowTo(k));
+            }
+            pad(out, columnsOffset - subspaceTableOffset - (long) subspaceCount * SUBSPACE_RECORD_BYTES);
+
+            for (int row = 0; row < pointCount; row++) {
+                out.writeDouble(store.getX(row));
+            }
+            for (int row = 0; row < pointCount; row++) {
+                out.writeDouble(store.getY(row));
+            }
+            for (int row = 0; row < pointCount; row++) {
+                out.writeLong(store.getTimestamp(row));
+            }
+            int offset = 0;
+            out.writeInt(offset);
+            for (byte[] s : strings) {
+                offset += s.length;
+                out.writeInt(offset);
+            }
+            pad(out, stringHeapOffset - columnsOffset - 24L * pointCount - stringOffsetsBytes);
+            for (byte[] s : strings) {
+                out.write(s);
+            }
+            out.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putInt(VERSION).putInt(subspaceCount).putInt(pointCount);
+            MBR global = index.getGlobalMBR();
+            header.putDouble(global.getMinX()).putDouble(global.getMinY())
+                    .putDouble(global.getMaxX()).putDouble(global.getMaxY());
+            header.putDouble(index.getDensityThreshold()).putInt(index.getMaxDepth()).putInt(0);
+            header.putLong(subspaceTableOffset).putLong(columnsOffset).putLong(stringHeapOffset).putLong(fileLength);
+            header.putLong(bodyCrc.getValue());
+            header.putLong(headerCrc(header));
+            header.clear();
+            channel.write(header, 0);
+        }
+    }
+
+    /**
+     * 打开索引文件, 只校验文件头 (映射本身不读取数据体, 打开代价与文件大小无关);
+     * 需要完整性校验时使用 {@link #open(Path, boolean)} 或 {@link #verifyBody(Path)}
+     */
+    public static MappedNuhIndex open(Path path) throws IOException {
+        return open(path, false);
+    }
+
+    /**
+     * 打开索引文件
+     *
+     * @param verifyBody 是否校验数据体 CRC32 (需要顺序读一遍文件); 文件头总是校验
+     */
+    public static MappedNuhIndex open(Path path, boolean verifyBody) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                throw new IOException("Not a NUH index file (too short): " + path);
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) {
+                    throw new IOException("Unexpected end of file: " + path);
+                }
+            }
+            header.flip();
+            if (header.getInt(0) != MAGIC) {
+                throw new IOException("Not a NUH index file (bad magic): " + path);
+            }
+            if (header.getInt(4) != VERSION) {
+                throw new IOException("Unsupported NUH index file version " + header.getInt(4)
+                        + " (expected " + VERSION + "): " + path);
+            }
+            if (header.getLong(HEADER_CRC_OFFSET) != headerCrc(header)) {
+                throw new IOException("NUH index file header checksum mismatch: " + path);
+            }
+            long fileLength = header.getLong(88);
+            if (channel.size() != fileLength) {
+                throw new IOException("NUH index file length mismatch (expected " + fileLength
+                        + ", found " + channel.size() + "): " + path);
+            }
+            if (verifyBody && bodyCrc(channel, fileLength) != header.getLong(96)) {
+                throw new IOException("NUH index file body checksum mismatch: " + path);
+            }
+
+            int subspaceCount = header.getInt(8);
+            int pointCount = header.getInt(12);
+            MBR globalMBR = new MBR(header.getDouble(16), header.getDouble(24),
+                    header.getDouble(32), header.getDouble(40));
+            double densityThreshold = header.getDouble(48);
+            int maxDepth = header.getInt(56);
+            long subspaceTableOffset = header.getLong(64);
+            long columnsOffset = header.getLong(72);
+            long stringHeapOffset = header.getLong(80);
+
+            long n = pointCount;
+            MappedByteBuffer subspaces = map(channel, subspaceTableOffset, (long) subspaceCount * SUBSPACE_RECORD_BYTES);
+            MappedByteBuffer xs = map(channel, columnsOffset, 8 * n);
+            MappedByteBuffer ys = map(channel, columnsOffset + 8 * n, 8 * n);
+            MappedByteBuffer timestamps = map(channel, columnsOffset + 16 * n, 8 * n);
+            MappedByteBuffer stringOffsets = map(channel, columnsOffset + 24 * n, 4 * (STRINGS_PER_POINT * n + 1));
+            MappedByteBuffer stringHeap = map(channel, stringHeapOffset, fileLength - stringHeapOffset);
+            return new MappedNuhIndex(globalMBR, densityThreshold, maxDepth, subspaceCount, pointCount,
+                    subspaces, xs, ys, timestamps, stringOffsets, stringHeap);
+        }
+    }
+
+    /**
+     * 打开索引文件，并拒绝与给定索引参数 (全局 MBR、密度阈值、最大深度) 不一致的过期文件
+     */
+    public static MappedNuhIndex open(Path path, NuhIndex expected) throws IOException {
+        return open(path, expected, false);
+    }
+
+    /**
+     * 同 {@link #open(Path, NuhIndex)}
+     *
+     * @param verifyBody 是否校验数据体 CRC32 (需要顺序读一遍文件)
+     */
+    public static MappedNuhIndex open(Path path, NuhIndex expected, boolean verifyBody) throws IOException {
+        MappedNuhIndex mapped = open(path, verifyBody);
+        MBR a = mapped.getGlobalMBR();
+        MBR b = expected.getGlobalMBR();
+        if (a.getMinX() != b.getMinX() || a.getMinY() != b.getMinY()
+                || a.getMaxX() != b.getMaxX() || a.getMaxY() != b.getMaxY()
+                || mapped.getDensityThreshold() != expected.getDensityThreshold()
+                || mapped.getMaxDepth() != expected.getMaxDepth()) {
+            throw new IOException("NUH index file was built with different index parameters: " + path);
+        }
+        return mapped;
+    }
+
+    /**
+     * 校验数据体 CRC32 (顺序读一遍文件), 可在打开后择机 (如后台) 进行
+     *
+     * @throws IOException 文件头无效或数据体校验和不符
+     */
+    public static void verifyBody(Path path) throws IOException {
+        open(path, true);
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long offset, long size) throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Section exceeds 2 GB and cannot be mapped: " + size);
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+    }
+
+    private static long bodyCrc(FileChannel channel, long fileLength) throws IOException {
+        CRC32 crc = new CRC32();
+        long chunk = 1L << 30;
+        for (long pos = HEADER_BYTES; pos < fileLength; pos += chunk) {
+            crc.update(channel.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(chunk, fileLength - pos)));
+        }
+        return crc.getValue();
+    }
+
+    private static long headerCrc(ByteBuffer header) {
+        CRC32 crc = new CRC32();
+        crc.update(header.array(), header.arrayOffset(), HEADER_CRC_OFFSET);
+        return crc.getValue();
+    }
+
+    private static byte[] utf8(String s) {
+        return s == null ? new byte[0] : s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static long align(long offset) {
+        return (offset + 7) & ~7L;
+    }
+
+    private static void pad(OutputStream out, long bytes) throws IOException {
+        for (long i = 0; i < bytes; i++) {
+            out.write(0);
+        }
+    }
+}
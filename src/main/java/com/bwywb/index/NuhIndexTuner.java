@@ -0,0 +1,218 @@
+package com.bwywb.index;
+
+import com.bwywb.model.POIData;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * NUH 索引参数自动调优 (NuhIndexTuner)
+ * 对输入数据抽样，按目标单元大小 (每个子空间的点数) 与子空间数预算选择密度阈值和最大划分深度:
+ * <ol>
+ *   <li>密度阈值从目标单元大小开始; 若样本估计的子空间数超出预算，则增大阈值 (倍增后二分)
+ *       直到满足预算。</li>
+ *   <li>以样本按比例缩小后的阈值划分样本，取每个叶子最后一次真正把点分开的深度 + 1
+ *       的最大值作为最大深度: 稠密区域能一直细分到目标大小，而完全重复的点不会把深度推到上限。</li>
+ * </ol>
+ * 单一阈值已使子空间的空间范围随密度变化 (稀疏区域得到更大的子空间)，因此不再按区域设置不同阈值，
+ * 这也保持了 {@link IncrementalNuhIndex} 与 {@link NuhIndexFile} 所依赖的单一阈值。
+ * 索引要用于时空组合 Key 时，以 {@link CompositeKeyBuilder#maxDepth(MultiScaleTrIndex)} 作为深度上限。
+ */
+public class NuhIndexTuner {
+    /** 默认样本大小 */
+    public static final int DEFAULT_SAMPLE_SIZE = 1 << 16;
+
+    private final int targetCellSize;
+    private final int maxSubspaces;
+    private final int sampleSize;
+    private final int depthLimit;
+
+    public NuhIndexTuner(int targetCellSize, int maxSubspaces) {
+        this(targetCellSize, maxSubspaces, DEFAULT_SAMPLE_SIZE);
+    }
+
+    /**
+     * @param targetCellSize 目标单元大小 (每个子空间的点数)
+     * @param maxSubspaces   子空间数预算
+     * @param sampleSize     最小样本大小; 实际样本至少包含 2n / targetCellSize 个点，
+     *                       使缩小后的阈值不小于 2
+     */
+    public NuhIndexTuner(int targetCellSize, int maxSubspaces, int sampleSize) {
+        this(targetCellSize, maxSubspaces, sampleSize, NuhIndex.MAX_SUPPORTED_DEPTH);
+    }
+
+    /**
+     * @param depthLimit 所选最大深度的上限, 取值 [1, {@link NuhIndex#MAX_SUPPORTED_DEPTH}]
+     */
+    public NuhIndexTuner(int targetCellSize, int maxSubspaces, int sampleSize, int depthLimit) {
+        if (targetCellSize < 1 || maxSubspaces < 1 || sampleSize < 1) {
+            throw new IllegalArgumentException("targetCellSize, maxSubspaces and sampleSize must be positive");
+        }
+        if (depthLimit < 1 || depthLimit > NuhIndex.MAX_SUPPORTED_DEPTH) {
+            throw new IllegalArgumentException("depthLimit must be between 1 and " + NuhIndex.MAX_SUPPORTED_DEPTH
+                    + ": " + depthLimit);
+        }
+        this.targetCellSize = targetCellSize;
+        this.maxSubspaces = maxSubspaces;
+        this.sampleSize = sampleSize;
+        this.depthLimit = depthLimit;
+    }
+
+    /**
+     * 以子空间表的内存预算 (字节，按 {@link NuhIndexFile} 每个子空间 64 字节计) 代替子空间数预算
+     */
+    public static NuhIndexTuner withMemoryBudget(int targetCellSize, long subspaceTableBytes) {
+        long maxSubspaces = subspaceTableBytes / NuhIndexFile.SUBSPACE_RECORD_BYTES;
+        if (maxSubspaces < 1) {
+            throw new IllegalArgumentException("Memory budget is smaller than one subspace record: " + subspaceTableBytes);
+        }
+        return new NuhIndexTuner(targetCellSize, (int) Math.min(maxSubspaces, Integer.MAX_VALUE));
+    }
+
+    /**
+     * 根据样本选择参数，返回配置好的 NUH 索引 (不划分全部数据)
+     */
+    public NuhIndex tune(List<POIData> data, MBR globalMBR) {
+        return choose(data, globalMBR).index;
+    }
+
+    /**
+     * 选择参数并构建索引，同时给出子空间大小直方图
+     */
+    public Result build(List<POIData> data, MBR globalMBR) {
+        Result result = choose(data, globalMBR);
+        List<Subspace> subspaces = result.index.generateNuhIndex(data);
+        return new Result(result.index, result.sampleSize, result.estimatedSubspaceCount, subspaces,
+                CellSizeHistogram.of(subspaces, result.index.getDensityThreshold()));
+    }
+
+    private Result choose(List<POIData> data, MBR globalMBR) {
+        int n = data.size();
+        if (n == 0) {
+            return new Result(new NuhIndex(targetCellSize, Math.min(NuhIndex.DEFAULT_MAX_DEPTH, depthLimit), globalMBR),
+                    0, 0, null, null);
+        }
+        List<POIData> sample = sample(data, (int) Math.min(n, Math.max(sampleSize, 2L * n / targetCellSize)));
+        QuadPartitioner partitioner = new QuadPartitioner(sample);
+        double scale = (double) sample.size() / n;
+
+        long threshold = targetCellSize;
+        SampleStats stats = partition(partitioner, globalMBR, threshold * scale);
+        if (stats.leaves > maxSubspaces) {
+            // 倍增找到满足预算的阈值，再在 (low, high] 内二分
+            long low = threshold;
+            long high = threshold;
+            SampleStats highStats = stats;
+            while (highStats.leaves > maxSubspaces && high < n) {
+                low = high;
+                high = Math.min(2 * high, n);
+                highStats = partition(partitioner, globalMBR, high * scale);
+            }
+            while (high - low > 1) {
+                long mid = (low + high) >>> 1;
+                SampleStats midStats = partition(partitioner, globalMBR, mid * scale);
+                if (midStats.leaves > maxSubspaces) {
+                    low = mid;
+                } else {
+                    high = mid;
+                    highStats = midStats;
+                }
+            }
+            threshold = high;
+            stats = highStats;
+        }
+        int maxDepth = Math.max(1, stats.maxDepth);
+        return new Result(new NuhIndex(threshold, maxDepth, globalMBR), sample.size(),
+                (int) Math.min(stats.leaves, Integer.MAX_VALUE), null, null);
+    }
+
+    /**
+     * 等间隔抽样 (确定性)
+     */
+    private static List<POIData> sample(List<POIData> data, int size) {
+        int n = data.size();
+        if (size >= n) {
+            return data;
+        }
+        List<POIData> sample = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            sample.add(data.get((int) ((long) i * n / size)));
+        }
+        return sample;
+    }
+
+    private SampleStats partition(QuadPartitioner partitioner, MBR globalMBR, double threshold) {
+        SampleStats stats = new SampleStats();
+        partition(partitioner, 0, partitioner.size(), globalMBR, 0, -1, threshold, depthLimit, stats);
+        return stats;
+    }
+
+    /**
+     * 与 {@link NuhIndex#nonUniformPartition} 相同的划分，只统计叶子数与所需深度
+     * @param lastSeparated 最近一个把点分到两个以上子象限的祖先深度 (无则为 -1)
+     */
+    private static void partition(QuadPartitioner partitioner, int from, int to, MBR mbr, int depth,
+                                  int lastSeparated, double threshold, int depthLimit, SampleStats stats) {
+        if (to - from <= threshold || depth >= depthLimit) {
+            stats.leaves++;
+            stats.maxDepth = Math.max(stats.maxDepth, lastSeparated + 1);
+            return;
+        }
+        MBR[] subMBRs = mbr.quadSplit();
+        int[] bounds = partitioner.split(from, to, mbr);
+        int nonEmpty = 0;
+        for (int q = 0; q < subMBRs.length; q++) {
+            if (bounds[q + 1] > bounds[q]) {
+                nonEmpty++;
+            }
+        }
+        int separated = nonEmpty > 1 ? depth : lastSeparated;
+        for (int q = 0; q < subMBRs.length; q++) {
+            if (bounds[q + 1] > bounds[q]) {
+                partition(partitioner, bounds[q], bounds[q + 1], subMBRs[q], depth + 1, separated, threshold,
+                        depthLimit, stats);
+            }
+        }
+    }
+
+    private static final class SampleStats {
+        long leaves;
+        int maxDepth;
+    }
+
+    /**
+     * 调优结果
+     */
+    public static final class Result {
+        private final NuhIndex index;
+        private final int sampleSize;
+        private final int estimatedSubspaceCount;
+        private final List<Subspace> subspaces;
+        private final CellSizeHistogram histogram;
+
+        Result(NuhIndex index, int sampleSize, int estimatedSubspaceCount, List<Subspace> subspaces,
+               CellSizeHistogram histogram) {
+            this.index = index;
+            this.sampleSize = sampleSize;
+            this.estimatedSubspaceCount = estimatedSubspaceCount;
+            this.subspaces = subspaces;
+            this.histogram = histogram;
+        }
+
+        /** 按所选阈值与最大深度配置的索引 */
+        public NuhIndex getIndex() { return index; }
+        public int getSampleSize() { return sampleSize; }
+        /** 由样本估计的子空间数 */
+        public int getEstimatedSubspaceCount() { return estimatedSubspaceCount; }
+        /** {@link NuhIndex#generateNuhIndex(List)} 的输出 */
+        public List<Subspace> getSubspaces() { return subspaces; }
+        public CellSizeHistogram getHistogram() { return histogram; }
+
+        @Override
+        public String toString() {
+            return String.format("threshold=%.0f maxDepth=%d sample=%d estimatedSubspaces=%d%n%s",
+                    index.getDensityThreshold(), index.getMaxDepth(), sampleSize, estimatedSubspaceCount,
+                    histogram == null ? "" : histogram);
+        }
+    }
+}
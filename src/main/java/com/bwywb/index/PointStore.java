@@ -0,0 +1,138 @@
+package com.bwywb.index;
+
+import com.bwywb.model.POIData;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * 内存有序点存储 (PointStore)
+ * 将所有 POI 按所属子空间的 Hilbert 编码排序后存入列式原始类型数组 (x, y, timestamp)，
+ * 子空间 k 的点位于行 [offsets[k], offsets[k + 1])。
+ * 窗口查询先将窗口转换为 Hilbert 区间并二分定位相交的子空间连续段，
+ * 再仅对部分相交的子空间用 MBR.contains 逐点精化，完全被窗口覆盖的子空间直接整段输出。
+ */
+public class PointStore {
+    private final SubspaceDirectory directory;
+    private final Subspace[] subspaces;
+    private final int[] offsets;
+
+    private final double[] xs;
+    private final double[] ys;
+    private final long[] timestamps;
+    private final POIData[] points;
+
+    private final SubspacePoints rows = new SubspacePoints() {
+        @Override
+        public int pointCount(int k) { return offsets[k + 1] - offsets[k]; }
+        @Override
+        public double getX(int k, int i) { return xs[offsets[k] + i]; }
+        @Override
+        public double getY(int k, int i) { return ys[offsets[k] + i]; }
+        @Override
+        public long getTimestamp(int k, int i) { return timestamps[offsets[k] + i]; }
+        @Override
+        public boolean coveredBy(int k, MBR window) { return PointStore.coveredBy(subspaces[k], window); }
+    };
+
+    /**
+     * @param index           生成子空间的 NUH 索引
+     * @param sortedSubspaces {@link NuhIndex#generateNuhIndex(List)} 的输出 (已编码并按编码升序)
+     */
+    public PointStore(NuhIndex index, List<Subspace> sortedSubspaces) {
+        this.directory = new SubspaceDirectory(index, sortedSubspaces);
+        this.subspaces = sortedSubspaces.toArray(new Subspace[0]);
+        this.offsets = new int[subspaces.length + 1];
+        for (int k = 0; k < subspaces.length; k++) {
+            offsets[k + 1] = offsets[k] + subspaces[k].getDensity();
+        }
+
+        int n = offsets[subspaces.length];
+        this.xs = new double[n];
+        this.ys = new double[n];
+        this.timestamps = new long[n];
+        this.points = new POIData[n];
+        int row = 0;
+        for (Subspace subspace : subspaces) {
+            for (POIData p : subspace.getDataSet()) {
+                xs[row] = p.getX();
+                ys[row] = p.getY();
+                timestamps[row] = p.getTimestamp();
+                points[row] = p;
+                row++;
+            }
+        }
+    }
+
+    /**
+     * 构建索引并装载点存储
+     */
+    public static PointStore build(NuhIndex index, List<POIData> data) {
+        return new PointStore(index, index.generateNuhIndex(data));
+    }
+
+    // --- 列访问 ---
+    public int size() { return points.length; }
+    public int subspaceCount() { return subspaces.length; }
+    public double getX(int row) { return xs[row]; }
+    public double getY(int row) { return ys[row]; }
+    public long getTimestamp(int row) { return timestamps[row]; }
+    public POIData getPoint(int row) { return points[row]; }
+
+    // --- 供同包查询引擎使用 ---
+    SubspaceDirectory directory() { return directory; }
+    Subspace subspace(int k) { return subspaces[k]; }
+    int rowFrom(int k) { return offsets[k]; }
+    int rowTo(int k) { return offsets[k + 1]; }
+
+    /**
+     * 对窗口内的每一行调用 rowVisitor
+     * @return 命中的行数
+     */
+    public int visit(MBR window, IntConsumer rowVisitor) {
+        return visit(window, Long.MIN_VALUE, Long.MAX_VALUE, rowVisitor);
+    }
+
+    /**
+     * 对窗口及时间区间 [startTime, endTime] 内的每一行调用 rowVisitor
+     * @return 命中的行数
+     */
+    public int visit(MBR window, long startTime, long endTime, IntConsumer rowVisitor) {
+        return directory.visit(rows, window, startTime, endTime, (k, i) -> rowVisitor.accept(offsets[k] + i));
+    }
+
+    /**
+     * 窗口查询
+     */
+    public List<POIData> query(MBR window) {
+        return query(window, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * 时空窗口查询, 时间区间两端均包含
+     */
+    public List<POIData> query(MBR window, long startTime, long endTime) {
+        List<POIData> result = new ArrayList<>();
+        visit(window, startTime, endTime, row -> result.add(points[row]));
+        return result;
+    }
+
+    /**
+     * 窗口内的点数
+     */
+    public int count(MBR window) {
+        return visit(window, row -> { });
+    }
+
+    /**
+     * 子空间是否完全位于窗口内 (此时其中的点无需逐点判断)。
+     * 深度 0 的子空间未经划分过滤，可能包含全局 MBR 之外的点，因此总是逐点判断。
+     */
+    static boolean coveredBy(Subspace subspace, MBR window) {
+        MBR range = subspace.getRange();
+        return subspace.getDepth() > 0
+                && range.getMinX() >= window.getMinX() && range.getMaxX() <= window.getMaxX()
+                && range.getMinY() >= window.getMinY() && range.getMaxY() <= window.getMaxY();
+    }
+}
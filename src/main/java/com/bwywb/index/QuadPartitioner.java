@@ -0,0 +1,122 @@
+package com.bwywb.index;
+
+import com.bwywb.model.POIData;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 单趟四分划分引擎 (QuadPartitioner)
+ * 将点坐标一次性拷贝到原始类型数组中，之后每一层的四分只对一个共享的下标排列 (order)
+ * 中的 [from, to) 区间做一次计数 + 一次稳定分发，代替原先每个子 MBR 各扫描一遍父列表的做法。
+ * 子区间之间互不重叠，因此不同子树可以并发地在同一个实例上划分。
+ */
+final class QuadPartitioner {
+    /** 落在当前 MBR 四个子象限之外的点 (受 MBR.contains 上边界开区间影响) */
+    static final int OUTSIDE = 4;
+
+    private final POIData[] points;
+    private final double[] xs;
+    private final double[] ys;
+    private final int[] order;     // 点下标排列，每个节点对应其中的一段连续区间
+    private final int[] scratch;   // 稳定分发时使用的临时缓冲区
+    private final byte[] quadrant; // 按位置缓存的象限号，避免第二趟重复判断
+
+    QuadPartitioner(List<POIData> data) {
+        int n = data.size();
+        this.points = data.toArray(new POIData[0]);
+        this.xs = new double[n];
+        this.ys = new double[n];
+        this.order = new int[n];
+        this.scratch = new int[n];
+        this.quadrant = new byte[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = points[i].getX();
+            ys[i] = points[i].getY();
+            order[i] = i;
+        }
+    }
+
+    int size() {
+        return order.length;
+    }
+
+    /**
+     * 将 [from, to) 区间按 mbr.quadSplit() 的顺序 [左下, 右下, 左上, 右上] 稳定地重排。
+     * 判断规则与 MBR.contains 完全一致，不属于任何子象限的点被移到区间末尾。
+     *
+     * @return 长度为 6 的边界数组 b，第 q 个象限的点位于 [b[q], b[q + 1])，
+     *         象限外的点位于 [b[4], b[5])
+     */
+    int[] split(int from, int to, MBR mbr) {
+        double minX = mbr.getMinX();
+        double minY = mbr.getMinY();
+        double maxX = mbr.getMaxX();
+        double maxY = mbr.getMaxY();
+        double midX = mbr.getCenterX();
+        double midY = mbr.getCenterY();
+
+        int[] counts = new int[5];
+        for (int i = from; i < to; i++) {
+            int idx = order[i];
+            int q = quadrantOf(xs[idx], ys[idx], minX, minY, midX, midY, maxX, maxY);
+            quadrant[i] = (byte) q;
+            counts[q]++;
+        }
+
+        int[] bounds = new int[6];
+        bounds[0] = from;
+        for (int q = 0; q < 5; q++) {
+            bounds[q + 1] = bounds[q] + counts[q];
+        }
+
+        // 所有点都落在同一象限时无需移动
+        for (int q = 0; q < 5; q++) {
+            if (counts[q] == to - from) {
+                return bounds;
+            }
+        }
+
+        int[] cursor = new int[5];
+        System.arraycopy(bounds, 0, cursor, 0, 5);
+        for (int i = from; i < to; i++) {
+            scratch[cursor[quadrant[i]]++] = order[i];
+        }
+        System.arraycopy(scratch, from, order, from, to - from);
+        return bounds;
+    }
+
+    /**
+     * 物化 [from, to) 区间对应的 POI 列表 (保持原始输入中的相对顺序)
+     */
+    List<POIData> slice(int from, int to) {
+        List<POIData> list = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            list.add(points[order[i]]);
+        }
+        return list;
+    }
+
+    private static int quadrantOf(double x, double y,
+                                  double minX, double minY,
+                                  double midX, double midY,
+                                  double maxX, double maxY) {
+        int col;
+        if (x >= minX && x < midX) {
+            col = 0;
+        } else if (x >= midX && x < maxX) {
+            col = 1;
+        } else {
+            return OUTSIDE;
+        }
+        int row;
+        if (y >= minY && y < midY) {
+            row = 0;
+        } else if (y >= midY && y < maxY) {
+            row = 1;
+        } else {
+            return OUTSIDE;
+        }
+        return (row << 1) | col;
+    }
+}
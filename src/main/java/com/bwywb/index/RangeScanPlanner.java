@@ -0,0 +1,230 @@
+package com.bwywb.index;
+
+import com.github.davidmoten.hilbert.hilbert.Ranges;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 时空范围扫描规划器: 将 (MBR 窗口, 时间区间) 转换为组合 Key 的有序、合并后的区间列表，
+ * 用于对按组合 Key 排序的 KV 存储做范围扫描。
+ *
+ * 空间部分: 先用 SmallHilbertCurve.query 求出窗口在细粒度曲线上的精确区间，再通过
+ * {@link SubspaceDirectory} 二分查找与之相交的子空间，得到按编码排序的子空间连续段 (run)。
+ * 时间部分: 时间区间映射为 L3 时间段索引区间，并按 Key 的拼接顺序与空间段组合。
+ * 只在两个区间之间不存在任何有效 Key (即不存在对应的子空间编码) 时才合并，因此结果不引入额外的假阳性;
+ * 指定区间数上限时再按最小间隙合并。
+ */
+public class RangeScanPlanner {
+    private final CompositeKeyBuilder keys;
+    private final SubspaceDirectory directory;
+    private final long[] codes;
+    private final long[] pointsBefore; // pointsBefore[k]: 下标小于 k 的子空间的点数之和
+
+    /**
+     * @param index           生成子空间的 NUH 索引
+     * @param sortedSubspaces {@link NuhIndex#generateNuhIndex(List)} 的输出 (已编码并按编码升序)
+     * @param keys            组合 Key 构造器, 空间位数须为 2 * index.getMaxDepth()
+     */
+    public RangeScanPlanner(NuhIndex index, List<Subspace> sortedSubspaces, CompositeKeyBuilder keys) {
+        if (keys.getSpaceBits() != 2 * index.getMaxDepth()) {
+            throw new IllegalArgumentException("CompositeKeyBuilder space bits do not match the NuhIndex grid");
+        }
+        this.keys = keys;
+        this.directory = new SubspaceDirectory(index, sortedSubspaces);
+        this.codes = directory.codes;
+        this.pointsBefore = new long[codes.length + 1];
+        int k = 0;
+        for (Subspace subspace : sortedSubspaces) {
+            pointsBefore[k + 1] = pointsBefore[k] + subspace.getDensity();
+            k++;
+        }
+    }
+
+    /**
+     * 规划时空窗口查询的组合 Key 区间
+     *
+     * @param window    空间窗口
+     * @param startTime 起始时间 (Unix epoch time, 含)
+     * @param endTime   结束时间 (Unix epoch time, 含)
+     * @param maxRanges 返回区间数上限, 超出时按最小间隙合并 (会引入假阳性); 0 表示不限制
+     * @return 按 Key 升序、互不重叠的区间
+     */
+    public Ranges plan(MBR window, long startTime, long endTime, int maxRanges) {
+        if (startTime > endTime) {
+            throw new IllegalArgumentException("startTime must not be after endTime");
+        }
+        Ranges result = new Ranges(maxRanges);
+        int[] runs = directory.runs(window);
+        MultiScaleTrIndex trIndex = keys.getTrIndex();
+        long p0 = Math.max(0, trIndex.tpIndex(startTime));
+        long p1 = Math.min(keys.getMaxTpIndex(), trIndex.tpIndex(endTime));
+        if (runs.length == 0 || p1 < 0 || p0 > p1) {
+            return result;
+        }
+
+        Emitter emitter = new Emitter(result);
+        if (keys.getOrder() == CompositeKeyBuilder.Order.TIME_FIRST) {
+            planTimeFirst(runs, p0, p1, maxRanges, emitter);
+        } else {
+            for (int r = 0; r < runs.length; r += 2) {
+                for (int k = runs[r]; k <= runs[r + 1]; k++) {
+                    emitter.emit(k, p0, k, p1);
+                }
+            }
+        }
+        emitter.flush();
+        return result;
+    }
+
+    /**
+     * 时间优先: 每个时间段重复同一组空间 run，相邻区间之间的间隙只有 runs / 2 种
+     * (时间段内相邻 run 之间的间隙, 以及相邻时间段之间的间隙)，且同种间隙大小相同。
+     * 有区间数上限时直接按间隙从大到小决定保留哪些分隔 (同种间隙只保留前若干个时间段中的)，
+     * 与逐个合并最小间隙得到的覆盖范围相同，但不必先枚举 时间段数 × run 数 个区间。
+     */
+    private void planTimeFirst(int[] runs, long p0, long p1, int maxRanges, Emitter emitter) {
+        int runCount = runs.length / 2;
+        long periods = p1 - p0 + 1;
+        // kept[i]: 从 p0 起保留第 i 种分隔的时间段数; i < runCount - 1 为时间段内 run i 之后的间隙,
+        // i == runCount - 1 为时间段之间的间隙
+        long[] kept = new long[runCount];
+        int cross = runCount - 1;
+        // 上一时间段最后一个子空间与下一时间段第一个子空间相邻时, 时间段之间没有间隙
+        boolean crossAdjacent = runs[0] == 0 && runs[runs.length - 1] == codes.length - 1;
+        if (maxRanges == 0) {
+            Arrays.fill(kept, periods);
+        } else {
+            long[] gaps = new long[runCount];
+            Integer[] byGap = new Integer[runCount];
+            for (int i = 0; i < runCount; i++) {
+                gaps[i] = i < cross
+                        ? codes[runs[2 * i + 2]] - codes[runs[2 * i + 1]]
+                        : codes[runs[0]] + (1L << keys.getSpaceBits()) - codes[runs[runs.length - 1]];
+                byGap[i] = i;
+            }
+            Arrays.sort(byGap, (a, b) -> Long.compare(gaps[b], gaps[a]));
+            long separators = maxRanges - 1;
+            for (int i : byGap) {
+                long count = i < cross ? periods : (crossAdjacent ? 0 : periods - 1);
+                kept[i] = Math.min(count, separators);
+                separators -= kept[i];
+            }
+        }
+
+        int fromIndex = runs[0];
+        long fromP = p0;
+        for (long p = p0; p <= p1; p++) {
+            long period = p - p0;
+            for (int i = 0; i < cross; i++) {
+                if (kept[i] > period) {
+                    emitter.emit(fromIndex, fromP, runs[2 * i + 1], p);
+                    fromIndex = runs[2 * i + 2];
+                    fromP = p;
+                }
+            }
+            if (p == p1 || kept[cross] > period || crossAdjacent) {
+                emitter.emit(fromIndex, fromP, runs[runs.length - 1], p);
+                fromIndex = runs[0];
+                fromP = p + 1;
+            }
+        }
+    }
+
+    /**
+     * 规划纯空间窗口查询的子空间 Hilbert 编码区间
+     *
+     * @return 按编码升序、互不重叠的区间, 每个区间内的所有子空间编码都与窗口相交
+     */
+    public Ranges planSpatial(MBR window) {
+        return planSpatial(window, 0);
+    }
+
+    /**
+     * 规划纯空间窗口查询的子空间 Hilbert 编码区间, 区间数超过上限时合并相邻区间。
+     * 编码间隙反映的是面积而不是数据量 (稀疏的大块子空间占很长一段编码)，因此不按编码间隙合并，
+     * 而是保留夹住点数最多的 maxRanges - 1 个间隙: 在区间数不超过上限的方案中，多扫描的点数最少。
+     *
+     * @param maxRanges 返回区间数上限; 0 表示不限制
+     * @return 按编码升序、互不重叠的区间, 覆盖所有与窗口相交的子空间编码
+     */
+    public Ranges planSpatial(MBR window, int maxRanges) {
+        Ranges result = new Ranges(0);
+        int[] runs = directory.runs(window);
+        int runCount = runs.length / 2;
+        // split[i]: run i 与 run i + 1 之间保留分隔
+        boolean[] split = new boolean[Math.max(0, runCount - 1)];
+        if (maxRanges == 0 || runCount <= maxRanges) {
+            Arrays.fill(split, true);
+        } else {
+            long[] gaps = new long[split.length];
+            Integer[] byGap = new Integer[split.length];
+            for (int i = 0; i < split.length; i++) {
+                gaps[i] = pointsBefore[runs[2 * i + 2]] - pointsBefore[runs[2 * i + 1] + 1];
+                byGap[i] = i;
+            }
+            Arrays.sort(byGap, (a, b) -> Long.compare(gaps[b], gaps[a]));
+            for (int i = 0; i < maxRanges - 1; i++) {
+                split[byGap[i]] = true;
+            }
+        }
+        int from = 0;
+        for (int i = 0; i < runCount; i++) {
+            if (i == runCount - 1 || split[i]) {
+                result.add(codes[runs[2 * from]], codes[runs[2 * i + 1]]);
+                from = i + 1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 顺序接收 (子空间下标, 时间段) 表示的区间, 在区间之间没有有效 Key 时合并后写入 Ranges
+     */
+    private final class Emitter {
+        private final Ranges ranges;
+        private boolean pending;
+        private int loIndex;
+        private long loP;
+        private int hiIndex;
+        private long hiP;
+
+        Emitter(Ranges ranges) {
+            this.ranges = ranges;
+        }
+
+        void emit(int fromIndex, long fromP, int toIndex, long toP) {
+            if (pending && isSuccessor(fromIndex, fromP)) {
+                hiIndex = toIndex;
+                hiP = toP;
+                return;
+            }
+            flush();
+            pending = true;
+            loIndex = fromIndex;
+            loP = fromP;
+            hiIndex = toIndex;
+            hiP = toP;
+        }
+
+        void flush() {
+            if (pending) {
+                ranges.add(keys.key(codes[loIndex], loP), keys.key(codes[hiIndex], hiP));
+                pending = false;
+            }
+        }
+
+        /**
+         * (index, p) 是否为当前区间终点之后的下一个有效 Key
+         */
+        private boolean isSuccessor(int index, long p) {
+            if (keys.getOrder() == CompositeKeyBuilder.Order.TIME_FIRST) {
+                return (p == hiP && index == hiIndex + 1)
+                        || (p == hiP + 1 && index == 0 && hiIndex == codes.length - 1);
+            } else {
+                return (index == hiIndex && p == hiP + 1)
+                        || (index == hiIndex + 1 && p == 0 && hiP == keys.getMaxTpIndex());
+            }
+        }
+    }
+}
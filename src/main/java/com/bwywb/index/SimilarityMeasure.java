@@ -0,0 +1,137 @@
+package com.bwywb.index;
+
+/**
+ * 轨迹相似度 (距离) 度量，点间距离由 {@link DistanceMetric} 给出。
+ * 距离核直接作用于原始类型数组，不分配对象; 一旦确定结果超过 bound 即放弃计算并返回
+ * {@link Double#POSITIVE_INFINITY}，结果不超过 bound 时返回精确值。
+ */
+public enum SimilarityMeasure {
+    /**
+     * 动态时间规整: 最优对齐路径上点间距离之和。
+     * 路径经过每一行，而累计代价沿路径单调不减，因此某行的最小累计代价超过 bound 即可放弃。
+     */
+    DTW {
+        @Override
+        public double distance(double[] ax, double[] ay, int n, double[] bx, double[] by, int m,
+                               DistanceMetric metric, double bound, double[] scratch) {
+            return warp(ax, ay, n, bx, by, m, metric, bound, scratch, true);
+        }
+    },
+
+    /**
+     * 离散 Fréchet 距离: 对齐路径上点间距离最大值的最小值, 按行提前放弃的方式与 DTW 相同
+     */
+    FRECHET {
+        @Override
+        public double distance(double[] ax, double[] ay, int n, double[] bx, double[] by, int m,
+                               DistanceMetric metric, double bound, double[] scratch) {
+            return warp(ax, ay, n, bx, by, m, metric, bound, scratch, false);
+        }
+    },
+
+    /**
+     * 对称 Hausdorff 距离: 两个方向上"点到另一条轨迹的最近距离"的最大值。
+     * 某点的最近距离一旦低于当前最大值即停止扫描该点 (不影响结果)。
+     */
+    HAUSDORFF {
+        @Override
+        public double distance(double[] ax, double[] ay, int n, double[] bx, double[] by, int m,
+                               DistanceMetric metric, double bound, double[] scratch) {
+            double h = directedHausdorff(ax, ay, n, bx, by, m, metric, 0, bound);
+            if (h > bound) {
+                return Double.POSITIVE_INFINITY;
+            }
+            h = directedHausdorff(bx, by, m, ax, ay, n, metric, h, bound);
+            return h > bound ? Double.POSITIVE_INFINITY : h;
+        }
+    };
+
+    /**
+     * 两条轨迹 (点序列 a[0, n)、b[0, m), 均非空) 之间的距离
+     *
+     * @param bound   放弃阈值
+     * @param scratch 工作区, 长度至少为 {@link #scratchSize(int)}
+     * @return 距离; 超过 bound 时为 {@link Double#POSITIVE_INFINITY}
+     */
+    public abstract double distance(double[] ax, double[] ay, int n, double[] bx, double[] by, int m,
+                                    DistanceMetric metric, double bound, double[] scratch);
+
+    /**
+     * 第二条轨迹有 m 个点时所需的工作区长度
+     */
+    public static int scratchSize(int m) {
+        return 2 * m;
+    }
+
+    /**
+     * DTW / 离散 Fréchet 的滚动两行动态规划
+     */
+    private static double warp(double[] ax, double[] ay, int n, double[] bx, double[] by, int m,
+                               DistanceMetric metric, double bound, double[] scratch, boolean sum) {
+        if (n == 0 || m == 0) {
+            throw new IllegalArgumentException("Trajectories must not be empty");
+        }
+        if (scratch.length < scratchSize(m)) {
+            throw new IllegalArgumentException("scratch must hold at least " + scratchSize(m) + " values");
+        }
+        int prev = 0;
+        int cur = m;
+        for (int i = 0; i < n; i++) {
+            double rowMin = Double.POSITIVE_INFINITY;
+            for (int j = 0; j < m; j++) {
+                double d = metric.distance(ax[i], ay[i], bx[j], by[j]);
+                double best;
+                if (i == 0 && j == 0) {
+                    best = 0;
+                } else if (i == 0) {
+                    best = scratch[cur + j - 1];
+                } else if (j == 0) {
+                    best = scratch[prev];
+                } else {
+                    best = Math.min(scratch[prev + j - 1], Math.min(scratch[prev + j], scratch[cur + j - 1]));
+                }
+                double v = sum ? best + d : Math.max(best, d);
+                scratch[cur + j] = v;
+                rowMin = Math.min(rowMin, v);
+            }
+            if (rowMin > bound) {
+                return Double.POSITIVE_INFINITY;
+            }
+            int t = prev;
+            prev = cur;
+            cur = t;
+        }
+        double result = scratch[prev + m - 1];
+        return result > bound ? Double.POSITIVE_INFINITY : result;
+    }
+
+    /**
+     * 有向 Hausdorff 距离 max_a min_b d(a, b), 从已知下界 lower 开始; 超过 bound 时提前返回
+     */
+    private static double directedHausdorff(double[] ax, double[] ay, int n, double[] bx, double[] by, int m,
+                                            DistanceMetric metric, double lower, double bound) {
+        if (n == 0 || m == 0) {
+            throw new IllegalArgumentException("Trajectories must not be empty");
+        }
+        double max = lower;
+        for (int i = 0; i < n; i++) {
+            double min = Double.POSITIVE_INFINITY;
+            for (int j = 0; j < m; j++) {
+                double d = metric.distance(ax[i], ay[i], bx[j], by[j]);
+                if (d < min) {
+                    min = d;
+                    if (min <= max) {
+                        break;
+                    }
+                }
+            }
+            if (min > max) {
+                max = min;
+                if (max > bound) {
+                    return max;
+                }
+            }
+        }
+        return max;
+    }
+}
@@ -3,10 +3,13 @@ package com.bwywb.index;
 import com.bwywb.index.MBR;
 import com.bwywb.model.POIData;
 
+import java.util.Collections;
 import java.util.List;
 
 /**
  * 子空间 (Subspace): 对应非均匀划分中的一个网格单元
+ * 不可变: 要素集以只读视图暴露，Hilbert 编码在构造时确定 ({@link NuhIndex#sortAndEncode(List)}
+ * 以编码后的新对象替换未编码的子空间)，因此可以在线程之间安全共享。
  */
 public class Subspace {
     private final MBR range;                       // 空间范围
@@ -17,7 +20,7 @@ public class Subspace {
     private final int row;                         // 行号 (Y坐标, 相对于划分)
     private final int col;                         // 列号 (X坐标, 相对于划分)
 
-    private long hilbertCode;                      // 最终的 Hilbert 编码 d
+    private final long hilbertCode;                // 最终的 Hilbert 编码 d (-1 表示未编码)
 
     /**
      * 构造函数
@@ -28,13 +31,20 @@ public class Subspace {
      * @param col 列号 (在当前划分层级中的相对位置，或相对于最大网格的绝对位置)
      */
     public Subspace(MBR range, List<POIData> dataSet, int depth, int row, int col) {
+        this(range, Collections.unmodifiableList(dataSet), depth, row, col, -1); // 初始化为未编码
+    }
+
+    /**
+     * @param dataSet 只读的要素集 (调用方保证之后不再修改)
+     */
+    private Subspace(MBR range, List<POIData> dataSet, int depth, int row, int col, long hilbertCode) {
         this.range = range;
         this.dataSet = dataSet;
         this.density = dataSet.size(); // POI 点数据密度 = 包含的点数量
         this.depth = depth;
         this.row = row;
         this.col = col;
-        this.hilbertCode = -1; // 初始化为未编码
+        this.hilbertCode = hilbertCode;
     }
 
     // --- Getters ---
@@ -46,9 +56,20 @@ public class Subspace {
     public int getCol() { return col; }
     public long getHilbertCode() { return hilbertCode; }
 
-    // --- Setters (用于排序阶段) ---
-    public void setHilbertCode(long hilbertCode) {
-        this.hilbertCode = hilbertCode;
+    // --- 编码与写时复制 (同包使用) ---
+
+    /**
+     * 相同范围与要素集、带给定 Hilbert 编码的子空间
+     */
+    Subspace withHilbertCode(long hilbertCode) {
+        return new Subspace(range, dataSet, depth, row, col, hilbertCode);
+    }
+
+    /**
+     * 相同范围与编码、要素集替换为 dataSet 的子空间
+     */
+    Subspace withDataSet(List<POIData> dataSet) {
+        return new Subspace(range, Collections.unmodifiableList(dataSet), depth, row, col, hilbertCode);
     }
 
     /**
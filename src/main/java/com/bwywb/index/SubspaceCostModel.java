@@ -0,0 +1,116 @@
+package com.bwywb.index;
+
+import com.github.davidmoten.hilbert.hilbert.CostModel;
+import com.github.davidmoten.hilbert.hilbert.QueryPlan;
+
+import java.util.List;
+
+/**
+ * 以 NUH 子空间密度估计 Key 分布的扫描代价模型
+ * 每个子空间的点数视为在其覆盖的细粒度编码段内均匀分布，编码区间内的期望 Key 数由
+ * 子空间点数前缀和二分求得 (O(log n))。用于
+ * {@link com.github.davidmoten.hilbert.hilbert.SmallHilbertCurve#query(long[], long[], CostModel)}
+ * 按 seek 代价与逐 Key 扫描代价选择区间合并方案。
+ */
+public class SubspaceCostModel implements CostModel {
+    private final SubspaceDirectory directory;
+    private final double[] keysBefore; // keysBefore[i]: 前 i 个子空间的点数之和
+    private final double seekCost;
+    private final double scanCost;
+
+    /**
+     * @param index           生成子空间的 NUH 索引
+     * @param sortedSubspaces {@link NuhIndex#generateNuhIndex(List)} 的输出 (已编码并按编码升序)
+     * @param seekCost        每个扫描区间的启动代价
+     * @param scanCost        每个 Key 的扫描代价
+     */
+    public SubspaceCostModel(NuhIndex index, List<Subspace> sortedSubspaces, double seekCost, double scanCost) {
+        this(new SubspaceDirectory(index, sortedSubspaces), densitiesOf(sortedSubspaces), seekCost, scanCost);
+    }
+
+    /**
+     * 以点存储中各子空间的点数作为密度
+     */
+    public SubspaceCostModel(PointStore store, double seekCost, double scanCost) {
+        this(store.directory(), densitiesOf(store), seekCost, scanCost);
+    }
+
+    private SubspaceCostModel(SubspaceDirectory directory, int[] densities, double seekCost, double scanCost) {
+        if (seekCost < 0 || scanCost < 0) {
+            throw new IllegalArgumentException("costs must be non-negative");
+        }
+        this.directory = directory;
+        this.seekCost = seekCost;
+        this.scanCost = scanCost;
+        this.keysBefore = new double[densities.length + 1];
+        for (int i = 0; i < densities.length; i++) {
+            keysBefore[i + 1] = keysBefore[i] + densities[i];
+        }
+    }
+
+    private static int[] densitiesOf(List<Subspace> subspaces) {
+        int[] densities = new int[subspaces.size()];
+        int i = 0;
+        for (Subspace subspace : subspaces) {
+            densities[i++] = subspace.getDensity();
+        }
+        return densities;
+    }
+
+    private static int[] densitiesOf(PointStore store) {
+        int[] densities = new int[store.subspaceCount()];
+        for (int k = 0; k < densities.length; k++) {
+            densities[k] = store.rowTo(k) - store.rowFrom(k);
+        }
+        return densities;
+    }
+
+    @Override
+    public double seekCost() {
+        return seekCost;
+    }
+
+    @Override
+    public double scanCost() {
+        return scanCost;
+    }
+
+    @Override
+    public double expectedKeys(long low, long high) {
+        return keysBefore(high + 1) - keysBefore(low);
+    }
+
+    /**
+     * 细粒度编码小于 cell 的期望 Key 数
+     */
+    private double keysBefore(long cell) {
+        int i = directory.firstBlockEndingAtOrAfter(cell, 0);
+        double keys = keysBefore[i];
+        if (i < directory.size() && directory.blockStarts[i] < cell) {
+            long start = directory.blockStarts[i];
+            double blockCells = directory.blockEnds[i] - start + 1;
+            keys += (keysBefore[i + 1] - keysBefore[i]) * ((cell - start) / blockCells);
+        }
+        return keys;
+    }
+
+    /**
+     * 按本代价模型规划窗口在细粒度 Hilbert 曲线上的扫描区间
+     *
+     * @return 选定的区间及其期望假阳性 (over-coverage) 与估计代价; 窗口与全局 MBR 不相交时区间为空
+     */
+    public QueryPlan plan(MBR window) {
+        return plan(window, 0);
+    }
+
+    /**
+     * 按本代价模型规划窗口的扫描区间, 区间数不超过 maxRanges (0 表示仅按代价决定)
+     */
+    public QueryPlan plan(MBR window, int maxRanges) {
+        long[][] corners = directory.gridCorners(window);
+        if (corners == null) {
+            return QueryPlan.empty();
+        }
+        return directory.curve().query(corners[0], corners[1], this, maxRanges);
+    }
+}
@@ -0,0 +1,243 @@
+package com.bwywb.index;
+
+import com.github.davidmoten.hilbert.hilbert.HilbertCurve;
+import com.github.davidmoten.hilbert.hilbert.Ranges;
+import com.github.davidmoten.hilbert.hilbert.SmallHilbertCurve;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 已排序子空间的编码目录 (SubspaceDirectory)
+ * 子空间在虚拟网格上是对齐的四叉树块，对应细粒度 Hilbert 曲线上的一段连续编码，
+ * 且子空间的编码 (中心格网编码) 落在该段内。目录保存每个子空间的编码及其覆盖的编码段，
+ * 并将空间窗口转换为与之相交的子空间连续段 (run)。
+ */
+final class SubspaceDirectory {
+    private final MBR globalMBR;
+    private final int maxDepth;
+    private final int M;
+    private final SmallHilbertCurve curve;
+
+    final long[] codes;       // 按编码升序的子空间 Hilbert 编码
+    final long[] blockStarts; // 子空间覆盖的细粒度编码区间起点
+    final long[] blockEnds;   // 子空间覆盖的细粒度编码区间终点
+
+    SubspaceDirectory(NuhIndex index, List<Subspace> sortedSubspaces) {
+        this(index.getGlobalMBR(), index.getMaxDepth(), codesOf(sortedSubspaces), depthsOf(sortedSubspaces));
+    }
+
+    /**
+     * @param codes  按编码升序的子空间 Hilbert 编码
+     * @param depths 对应子空间的划分深度
+     */
+    SubspaceDirectory(MBR globalMBR, int maxDepth, long[] codes, int[] depths) {
+        this.globalMBR = globalMBR;
+        this.maxDepth = maxDepth;
+        this.M = 1 << maxDepth;
+        this.curve = HilbertCurve.small().bits(maxDepth).dimensions(2);
+
+        int n = codes.length;
+        this.codes = codes;
+        this.blockStarts = new long[n];
+        this.blockEnds = new long[n];
+        for (int i = 0; i < n; i++) {
+            long code = codes[i];
+            if (code < 0 || (i > 0 && code <= codes[i - 1])) {
+                throw new IllegalArgumentException("Subspaces must be encoded and sorted by sortAndEncode");
+            }
+            long side = (long) M >> depths[i];
+            long cellMask = side * side - 1;
+            blockStarts[i] = code & ~cellMask;
+            blockEnds[i] = code | cellMask;
+        }
+    }
+
+    private static long[] codesOf(List<Subspace> subspaces) {
+        long[] codes = new long[subspaces.size()];
+        int i = 0;
+        for (Subspace subspace : subspaces) {
+            codes[i++] = subspace.getHilbertCode();
+        }
+        return codes;
+    }
+
+    private static int[] depthsOf(List<Subspace> subspaces) {
+        int[] depths = new int[subspaces.size()];
+        int i = 0;
+        for (Subspace subspace : subspaces) {
+            depths[i++] = subspace.getDepth();
+        }
+        return depths;
+    }
+
+    int size() {
+        return codes.length;
+    }
+
+    MBR globalMBR() {
+        return globalMBR;
+    }
+
+    int maxDepth() {
+        return maxDepth;
+    }
+
+    int gridSize() {
+        return M;
+    }
+
+    /**
+     * 求与窗口相交的子空间连续段, 以 [from0, to0, from1, to1, ...] (子空间下标, 含) 形式返回
+     */
+    int[] runs(MBR window) {
+        long[][] corners = gridCorners(window);
+        if (codes.length == 0 || corners == null) {
+            return new int[0];
+        }
+        // 只下降到子空间粒度: 不含任何子空间的块剪掉, 落在单个子空间内的块整段输出 (二者都不改变结果),
+        // 代价与窗口边界上的子空间数成正比, 而不是与细网格上的窗口周长成正比
+        Ranges cells = curve.queryRecursive(corners[0], corners[1], this::classify);
+        return runs(cells, 0, cells.size());
+    }
+
+    /**
+     * 求与编码区间 cells[from, to) (升序、互不相交) 相交的子空间连续段, 返回形式同 {@link #runs(MBR)}
+     */
+    int[] runs(Ranges cells, int from, int to) {
+        int[] runs = new int[16];
+        int size = 0;
+        int searchFrom = 0;
+        for (int c = from; c < to; c++) {
+            long cellHigh = cells.high(c);
+            int i = firstBlockEndingAtOrAfter(cells.low(c), searchFrom);
+            int j = i;
+            while (j < codes.length && blockStarts[j] <= cellHigh) {
+                j++;
+            }
+            if (j == i) {
+                continue;
+            }
+            searchFrom = i;
+            if (size > 0 && runs[size - 1] >= i - 1) {
+                // 与上一段重叠或相邻: 扩展上一段
+                runs[size - 1] = Math.max(runs[size - 1], j - 1);
+            } else {
+                if (size == runs.length) {
+                    runs = Arrays.copyOf(runs, size * 2);
+                }
+                runs[size++] = i;
+                runs[size++] = j - 1;
+            }
+        }
+        return Arrays.copyOf(runs, size);
+    }
+
+    /**
+     * 窗口 (及时间区间 [startTime, endTime]) 扫描: 对与窗口相交的子空间，完全被窗口覆盖的整段输出，
+     * 其余用 MBR.contains 逐点精化; 时间区间为 [Long.MIN_VALUE, Long.MAX_VALUE] 时不做时间过滤
+     *
+     * @param points 按本目录的子空间下标访问点
+     * @return 命中的点数
+     */
+    int visit(SubspacePoints points, MBR window, long startTime, long endTime, SubspacePoints.Visitor visitor) {
+        return visit(runs(window), points, window, startTime, endTime, visitor);
+    }
+
+    /**
+     * 同 {@link #visit(SubspacePoints, MBR, long, long, SubspacePoints.Visitor)}, 只扫描给定的子空间连续段
+     */
+    int visit(int[] runs, SubspacePoints points, MBR window, long startTime, long endTime,
+              SubspacePoints.Visitor visitor) {
+        boolean timeFiltered = startTime != Long.MIN_VALUE || endTime != Long.MAX_VALUE;
+        int hits = 0;
+        for (int r = 0; r < runs.length; r += 2) {
+            for (int k = runs[r]; k <= runs[r + 1]; k++) {
+                boolean covered = points.coveredBy(k, window);
+                for (int i = 0, n = points.pointCount(k); i < n; i++) {
+                    if (!covered && !window.contains(points.getX(k, i), points.getY(k, i))) {
+                        continue;
+                    }
+                    if (timeFiltered) {
+                        long t = points.getTimestamp(k, i);
+                        if (t < startTime || t > endTime) {
+                            continue;
+                        }
+                    }
+                    visitor.accept(k, i);
+                    hits++;
+                }
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * 与窗口相交的曲线子块 [low, high]: 不与任何子空间相交时跳过, 完全落在某个子空间内时整段输出
+     */
+    SmallHilbertCurve.SubCubeFilter.Action classify(long low, long high) {
+        int i = firstBlockEndingAtOrAfter(low, 0);
+        if (i == codes.length || blockStarts[i] > high) {
+            return SmallHilbertCurve.SubCubeFilter.Action.SKIP;
+        }
+        if (blockStarts[i] <= low && blockEnds[i] >= high) {
+            return SmallHilbertCurve.SubCubeFilter.Action.EMIT;
+        }
+        return SmallHilbertCurve.SubCubeFilter.Action.DESCEND;
+    }
+
+    /**
+     * 窗口在细粒度网格上的两个对角格网坐标 {{x0, y0}, {x1, y1}}; 窗口与全局 MBR 不相交时返回 null。
+     * 格网坐标由 {@link #gridCoordinate} 逐层取中点得到，与子空间划分对边界点的归属一致
+     */
+    long[][] gridCorners(MBR window) {
+        if (window.getMaxX() < globalMBR.getMinX() || window.getMinX() > globalMBR.getMaxX()
+                || window.getMaxY() < globalMBR.getMinY() || window.getMinY() > globalMBR.getMaxY()) {
+            return null;
+        }
+        long x0 = gridCoordinate(window.getMinX(), globalMBR.getMinX(), globalMBR.getMaxX(), maxDepth);
+        long y0 = gridCoordinate(window.getMinY(), globalMBR.getMinY(), globalMBR.getMaxY(), maxDepth);
+        long x1 = gridCoordinate(window.getMaxX(), globalMBR.getMinX(), globalMBR.getMaxX(), maxDepth);
+        long y1 = gridCoordinate(window.getMaxY(), globalMBR.getMinY(), globalMBR.getMaxY(), maxDepth);
+        return new long[][] {{x0, y0}, {x1, y1}};
+    }
+
+    /**
+     * 坐标 v 在 [min, max] 上 depth 层细网格中的格网坐标。逐层按 MBR.quadSplit() 的中点 (min + max) / 2
+     * 判断落在哪一半 (v >= mid 归右/上半)，而不是按 (v - min) / (max - min) * 2^depth 线性映射:
+     * 全局范围不是二进制对齐时两者在分割线上可能相差一格，使分割线上的点落在窗口编码区间之外。
+     * 范围之外的坐标归到最近的边缘格。
+     */
+    static long gridCoordinate(double v, double min, double max, int depth) {
+        long g = 0;
+        for (int level = 0; level < depth; level++) {
+            double mid = (min + max) / 2.0;
+            g <<= 1;
+            if (v >= mid) {
+                g |= 1;
+                min = mid;
+            } else {
+                max = mid;
+            }
+        }
+        return g;
+    }
+
+    SmallHilbertCurve curve() {
+        return curve;
+    }
+
+    int firstBlockEndingAtOrAfter(long cell, int from) {
+        int lo = from;
+        int hi = codes.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (blockEnds[mid] < cell) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+}
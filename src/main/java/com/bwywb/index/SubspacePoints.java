@@ -0,0 +1,29 @@
+package com.bwywb.index;
+
+/**
+ * 按子空间访问点的接口 (SubspacePoints)，供 {@link SubspaceDirectory#visit} 的窗口扫描使用。
+ * 子空间以其在目录中的下标 k 编号，子空间 k 中的点以 i ∈ [0, pointCount(k)) 编号;
+ * 列式存储 ({@link PointStore})、映射文件 ({@link MappedNuhIndex}) 与并发快照
+ * ({@link ConcurrentNuhIndex.Snapshot}) 各自实现这一访问方式，共享同一扫描逻辑。
+ */
+interface SubspacePoints {
+    int pointCount(int k);
+
+    double getX(int k, int i);
+
+    double getY(int k, int i);
+
+    long getTimestamp(int k, int i);
+
+    /**
+     * 子空间 k 是否完全位于窗口内 (此时其中的点无需逐点判断)
+     */
+    boolean coveredBy(int k, MBR window);
+
+    /**
+     * 命中点的接收器
+     */
+    interface Visitor {
+        void accept(int k, int i);
+    }
+}
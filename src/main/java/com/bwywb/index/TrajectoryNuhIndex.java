@@ -0,0 +1,180 @@
+package com.bwywb.index;
+
+import com.bwywb.model.Trajectory;
+import com.bwywb.utils.HilbertCodec2D;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 轨迹的非均匀 Hilbert 索引 (Trajectory NUH Index)
+ * 与 {@link NuhIndex} 相同地对全局 MBR 做非均匀四分，但划分对象是整条轨迹:
+ * 采用 XZ-Ordering 的思路，每条轨迹驻留在能容纳它的最深节点上 ——
+ * 节点的扩展范围为单元向右、向上各延伸一个单元宽高，轨迹 MBR 的左下角落在单元内且 MBR
+ * 不超出扩展范围时即可下放到该节点，因此跨越单元边界的短轨迹不会堆积在根节点。
+ * 节点中 (驻留于其子树的) 轨迹密度指标之和超过阈值且未达到最大深度时继续四分。
+ *
+ * 每个节点按子节点的 Hilbert 顺序做先序编号得到 XZ 编码，子树对应一段连续的 XZ 编码。
+ */
+public class TrajectoryNuhIndex {
+    private final double densityThreshold;
+    private final Trajectory.DensityMetric metric;
+    private final int maxDepth;
+    private final MBR globalMBR;
+    private final long[] subtreeSizes; // subtreeSizes[l]: 深度 l 的节点所在完全子树的节点数
+
+    public TrajectoryNuhIndex(double densityThreshold, Trajectory.DensityMetric metric, MBR globalMBR) {
+        this(densityThreshold, metric, NuhIndex.DEFAULT_MAX_DEPTH, globalMBR);
+    }
+
+    /**
+     * @param densityThreshold 节点密度阈值 (按 metric 计)
+     * @param metric           轨迹密度指标
+     * @param maxDepth         最大划分深度, 取值 [1, {@link NuhIndex#MAX_SUPPORTED_DEPTH}]
+     * @param globalMBR        全局范围
+     */
+    public TrajectoryNuhIndex(double densityThreshold, Trajectory.DensityMetric metric, int maxDepth, MBR globalMBR) {
+        if (maxDepth < 1 || maxDepth > NuhIndex.MAX_SUPPORTED_DEPTH) {
+            throw new IllegalArgumentException("maxDepth must be between 1 and " + NuhIndex.MAX_SUPPORTED_DEPTH + ": " + maxDepth);
+        }
+        if (globalMBR.getWidth() == 0 || globalMBR.getHeight() == 0) {
+            throw new IllegalArgumentException("Global MBR must have non-zero width and height for coordinate mapping.");
+        }
+        this.densityThreshold = densityThreshold;
+        this.metric = metric;
+        this.maxDepth = maxDepth;
+        this.globalMBR = globalMBR;
+        this.subtreeSizes = new long[maxDepth + 1];
+        for (int l = maxDepth; l >= 0; l--) {
+            subtreeSizes[l] = l == maxDepth ? 1 : 4 * subtreeSizes[l + 1] + 1;
+        }
+    }
+
+    public double getDensityThreshold() { return densityThreshold; }
+    public Trajectory.DensityMetric getMetric() { return metric; }
+    public int getMaxDepth() { return maxDepth; }
+    public MBR getGlobalMBR() { return globalMBR; }
+
+    /**
+     * 深度 depth 的节点的子树在 XZ 编码上占据的长度
+     */
+    public long subtreeSize(int depth) {
+        return subtreeSizes[depth];
+    }
+
+    /**
+     * 构建索引, 返回按 XZ 编码升序的非空节点
+     */
+    public List<TrajectorySubspace> generateIndex(List<Trajectory> data) {
+        List<TrajectorySubspace> result = new ArrayList<>();
+        if (data == null || data.isEmpty()) {
+            return result;
+        }
+        // 每条轨迹的密度指标只计算一次
+        List<Entry> entries = new ArrayList<>(data.size());
+        for (Trajectory t : data) {
+            entries.add(new Entry(t, t.calculateSpatialDensityMetric(metric)));
+        }
+        partition(entries, globalMBR, 0, 0, 0, 0, result);
+        result.sort((a, b) -> Long.compare(a.getXzCode(), b.getXzCode()));
+        return result;
+    }
+
+    private void partition(List<Entry> data, MBR cell, int depth, long gx, long gy, long xzCode,
+                           List<TrajectorySubspace> result) {
+        if (density(data) <= densityThreshold || depth >= maxDepth) {
+            result.add(node(data, cell, depth, gx, gy, xzCode));
+            return;
+        }
+
+        MBR[] subMBRs = cell.quadSplit();
+        List<List<Entry>> children = new ArrayList<>(subMBRs.length);
+        for (int q = 0; q < subMBRs.length; q++) {
+            children.add(new ArrayList<>());
+        }
+        List<Entry> residents = new ArrayList<>();
+        for (Entry e : data) {
+            int q = childOf(e.trajectory, cell, subMBRs);
+            if (q < 0) {
+                residents.add(e);
+            } else {
+                children.get(q).add(e);
+            }
+        }
+        if (!residents.isEmpty()) {
+            result.add(node(residents, cell, depth, gx, gy, xzCode));
+        }
+        for (int q = 0; q < subMBRs.length; q++) {
+            if (!children.get(q).isEmpty()) {
+                long cx = 2 * gx + (q & 1);
+                long cy = 2 * gy + (q >> 1);
+                partition(children.get(q), subMBRs[q], depth + 1, cx, cy, childXzCode(xzCode, cx, cy, depth + 1),
+                        result);
+            }
+        }
+    }
+
+    private TrajectorySubspace node(List<Entry> data, MBR cell, int depth, long gx, long gy, long xzCode) {
+        List<Trajectory> trajectories = new ArrayList<>(data.size());
+        for (Entry e : data) {
+            trajectories.add(e.trajectory);
+        }
+        return new TrajectorySubspace(cell, trajectories, density(data), depth, hilbertCode(gx, gy, depth), xzCode);
+    }
+
+    private static double density(List<Entry> data) {
+        double density = 0;
+        for (Entry e : data) {
+            density += e.weight;
+        }
+        return density;
+    }
+
+    /**
+     * 能容纳轨迹的子节点 (quadSplit 顺序)，不能下放时返回 -1
+     */
+    private static int childOf(Trajectory t, MBR cell, MBR[] subMBRs) {
+        if (!cell.contains(t.getMinX(), t.getMinY())) {
+            return -1;
+        }
+        int col = t.getMinX() >= cell.getCenterX() ? 1 : 0;
+        int row = t.getMinY() >= cell.getCenterY() ? 1 : 0;
+        int q = (row << 1) | col;
+        return fits(t, subMBRs[q]) ? q : -1;
+    }
+
+    /**
+     * 轨迹 MBR 是否位于节点的扩展范围内
+     */
+    static boolean fits(Trajectory t, MBR cell) {
+        return t.getMaxX() <= cell.getMaxX() + cell.getWidth()
+                && t.getMaxY() <= cell.getMaxY() + cell.getHeight();
+    }
+
+    /**
+     * 深度 depth、格网坐标 (gx, gy) 的单元在细粒度 Hilbert 曲线上的编码段起点
+     */
+    long hilbertCode(long gx, long gy, int depth) {
+        int shift = maxDepth - depth;
+        return HilbertCodec2D.encode(gx << shift, gy << shift, maxDepth);
+    }
+
+    /**
+     * 子节点 (深度 childDepth、格网坐标 (cx, cy)) 的 XZ 编码:
+     * 父节点编码 + 1 + 子节点在 Hilbert 顺序中的位次 * 子树长度
+     */
+    long childXzCode(long parentXzCode, long cx, long cy, int childDepth) {
+        long rank = (hilbertCode(cx, cy, childDepth) >>> (2 * (maxDepth - childDepth))) & 3;
+        return parentXzCode + 1 + rank * subtreeSizes[childDepth];
+    }
+
+    private static final class Entry {
+        final Trajectory trajectory;
+        final double weight;
+
+        Entry(Trajectory trajectory, double weight) {
+            this.trajectory = trajectory;
+            this.weight = weight;
+        }
+    }
+}
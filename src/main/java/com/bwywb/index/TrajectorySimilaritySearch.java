@@ -0,0 +1,391 @@
+package com.bwywb.index;
+
+import com.bwywb.model.Trajectory;
+import com.bwywb.utils.HilbertCodec2D;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 轨迹相似度 Top-k 查询 (DTW / 离散 Fréchet / Hausdorff)
+ *
+ * 在 {@link TrajectoryStore} 的节点上做最佳优先搜索，逐级使用越来越紧、也越来越贵的下界:
+ * <ol>
+ *   <li>节点: 查询轨迹 MBR 超出节点扩展范围的部分 (查询轨迹上至少有一个点离节点内任一轨迹这么远)，
+ *       以及节点时间范围与查询时间区间是否重叠;</li>
+ *   <li>轨迹: 两条轨迹 MBR 对应边的差 (某条轨迹的极值点离另一条轨迹至少这么远)，
+ *       DTW / Fréchet 再加上首尾点对齐的代价;</li>
+ *   <li>Hilbert 单元签名: 每条轨迹的点在 2^signatureDepth 格网上占据的单元 (按 Hilbert 编码排序并计数)，
+ *       由单元之间的最小距离得到每个点到另一条轨迹距离的下界，DTW 按点数累加;
+ *       DTW 另外累加每个点到另一条轨迹 MBR 的距离。轨迹首次出队时计算这些下界并按新下界重新排队;</li>
+ *   <li>距离核: 以当前第 k 近距离为阈值计算，超过即放弃 ({@link SimilarityMeasure})。</li>
+ * </ol>
+ * 三种度量都满足 DTW ≥ 离散 Fréchet ≥ Hausdorff ≥ 上述下界，因此结果与逐条计算一致。
+ * 使用 {@link DistanceMetric#HAVERSINE} 时假定坐标不跨越 180° 经线。
+ */
+public class TrajectorySimilaritySearch {
+    public static final int DEFAULT_SIGNATURE_DEPTH = 8;
+    public static final int MAX_SIGNATURE_DEPTH = 16;
+
+    private static final long REFINED = 1L << 32;   // 队列中已计算签名下界的轨迹
+
+    private final DistanceMetric metric;
+    private final int signatureDepth;
+    private final TrajectorySubspace[] nodes;
+    private final int[] nodeFrom;               // 节点 i 的轨迹编号为 [nodeFrom[i], nodeFrom[i + 1])
+    private final Trajectory[] trajectories;
+    private final Signature[] signatures;
+
+    private final MBR globalMBR;
+    private final double cellWidth;
+    private final double cellHeight;
+    private final double globalAbsLat;
+
+    public TrajectorySimilaritySearch(TrajectoryStore store, DistanceMetric metric) {
+        this(store, metric, DEFAULT_SIGNATURE_DEPTH);
+    }
+
+    /**
+     * @param signatureDepth 签名格网深度 (格网边长 2^signatureDepth), 取值 [1, {@link #MAX_SIGNATURE_DEPTH}]
+     */
+    public TrajectorySimilaritySearch(TrajectoryStore store, DistanceMetric metric, int signatureDepth) {
+        if (signatureDepth < 1 || signatureDepth > MAX_SIGNATURE_DEPTH) {
+            throw new IllegalArgumentException("signatureDepth must be between 1 and " + MAX_SIGNATURE_DEPTH + ": " + signatureDepth);
+        }
+        this.metric = metric;
+        this.signatureDepth = signatureDepth;
+        this.globalMBR = store.getIndex().getGlobalMBR();
+        int side = 1 << signatureDepth;
+        // 点的单元由浮点除法得到，可能越过单元边界若干 ulp，略微缩小单元尺寸以保证下界有效
+        this.cellWidth = globalMBR.getWidth() / side * (1 - 1e-9);
+        this.cellHeight = globalMBR.getHeight() / side * (1 - 1e-9);
+        this.globalAbsLat = Math.max(Math.abs(globalMBR.getMinY()), Math.abs(globalMBR.getMaxY()));
+
+        List<TrajectorySubspace> subspaces = store.subspaces();
+        this.nodes = subspaces.toArray(new TrajectorySubspace[0]);
+        this.nodeFrom = new int[nodes.length + 1];
+        this.trajectories = new Trajectory[store.size()];
+        this.signatures = new Signature[trajectories.length];
+        int id = 0;
+        for (int i = 0; i < nodes.length; i++) {
+            nodeFrom[i] = id;
+            for (Trajectory t : nodes[i].getTrajectories()) {
+                trajectories[id] = t;
+                signatures[id] = signature(t);
+                id++;
+            }
+        }
+        nodeFrom[nodes.length] = id;
+    }
+
+    public DistanceMetric getMetric() { return metric; }
+    public int getSignatureDepth() { return signatureDepth; }
+
+    /**
+     * 与 query 最相似的 k 条轨迹
+     *
+     * @return 按距离升序的结果 (候选不足 k 条时返回全部)
+     */
+    public List<Match> nearest(Trajectory query, int k, SimilarityMeasure measure) {
+        return nearest(query, k, measure, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * 时间范围与 [startTime, endTime] 重叠的轨迹中与 query 最相似的 k 条
+     */
+    public List<Match> nearest(Trajectory query, int k, SimilarityMeasure measure, long startTime, long endTime) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("k must be positive");
+        }
+        int n = query.size();
+        if (n == 0) {
+            throw new IllegalArgumentException("Query trajectory must not be empty");
+        }
+        double[] qx = new double[n];
+        double[] qy = new double[n];
+        for (int i = 0; i < n; i++) {
+            qx[i] = query.getX(i);
+            qy[i] = query.getY(i);
+        }
+        Signature qsig = signature(query);
+        double[] tx = new double[64];
+        double[] ty = new double[64];
+        double[] scratch = new double[SimilarityMeasure.scratchSize(64)];
+
+        KnnSearch.ResultHeap best = new KnnSearch.ResultHeap(k);
+        KnnSearch.NodeQueue queue = new KnnSearch.NodeQueue();
+        for (int i = 0; i < nodes.length; i++) {
+            TrajectorySubspace node = nodes[i];
+            if (node.getMinStartTime() <= endTime && node.getMaxEndTime() >= startTime) {
+                queue.push(nodeLowerBound(query, node), -(i + 1L));
+            }
+        }
+
+        while (!queue.isEmpty()) {
+            if (best.isFull() && queue.peekKey() > best.maxDistance()) {
+                break;
+            }
+            double key = queue.peekKey();
+            long payload = queue.pop();
+            double bound = best.isFull() ? best.maxDistance() : Double.POSITIVE_INFINITY;
+            if (payload < 0) {
+                int node = (int) (-payload - 1);
+                for (int id = nodeFrom[node]; id < nodeFrom[node + 1]; id++) {
+                    Trajectory t = trajectories[id];
+                    if (t.size() == 0 || t.getStartTime() > endTime || t.getEndTime() < startTime) {
+                        continue;
+                    }
+                    double lb = Math.max(key, trajectoryLowerBound(query, t, measure));
+                    if (lb <= bound) {
+                        queue.push(lb, id);
+                    }
+                }
+                continue;
+            }
+            int id = (int) (payload & ~REFINED);
+            Trajectory t = trajectories[id];
+            if ((payload & REFINED) == 0) {
+                // 首次出队: 计算较贵的下界, 按新下界重新排队
+                boolean dtw = measure == SimilarityMeasure.DTW;
+                double lb = Math.max(key, signatureLowerBound(qsig, signatures[id], dtw));
+                if (dtw && lb <= bound) {
+                    lb = Math.max(lb, pointsToBoxLowerBound(query, t));
+                }
+                if (lb <= bound) {
+                    queue.push(lb, id | REFINED);
+                }
+                continue;
+            }
+            int m = t.size();
+            if (tx.length < m) {
+                int capacity = Math.max(m, tx.length * 2);
+                tx = new double[capacity];
+                ty = new double[capacity];
+                scratch = new double[SimilarityMeasure.scratchSize(capacity)];
+            }
+            for (int j = 0; j < m; j++) {
+                tx[j] = t.getX(j);
+                ty[j] = t.getY(j);
+            }
+            double d = measure.distance(qx, qy, n, tx, ty, m, metric, bound, scratch);
+            if (d <= bound) {
+                best.offer(id, d);
+            }
+        }
+
+        int[] ids = new int[k];
+        double[] distances = new double[k];
+        int count = best.drainAscending(ids, distances);
+        List<Match> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(new Match(trajectories[ids[i]], distances[i]));
+        }
+        return result;
+    }
+
+    /**
+     * 查询结果: 轨迹及其与查询轨迹的距离
+     */
+    public static final class Match {
+        private final Trajectory trajectory;
+        private final double distance;
+
+        Match(Trajectory trajectory, double distance) {
+            this.trajectory = trajectory;
+            this.distance = distance;
+        }
+
+        public Trajectory getTrajectory() { return trajectory; }
+        public double getDistance() { return distance; }
+
+        @Override
+        public String toString() {
+            return trajectory.getTrajectoryId() + "=" + distance;
+        }
+    }
+
+    // ---------------- 下界 ----------------
+
+    /**
+     * 查询轨迹到节点内任一轨迹的距离下界 (根节点的轨迹可能位于全局范围之外, 返回 0)
+     */
+    private double nodeLowerBound(Trajectory q, TrajectorySubspace node) {
+        if (node.getDepth() == 0) {
+            return 0;
+        }
+        MBR e = node.getEnlargedRange();
+        double absLat = Math.max(absLat(q.getMinY(), q.getMaxY()), absLat(e.getMinY(), e.getMaxY()));
+        double lb = Math.max(xGap(e.getMinX() - q.getMinX(), absLat), xGap(q.getMaxX() - e.getMaxX(), absLat));
+        return Math.max(lb, Math.max(yGap(e.getMinY() - q.getMinY()), yGap(q.getMaxY() - e.getMaxY())));
+    }
+
+    /**
+     * 由 MBR 与首尾点得到的下界
+     */
+    private double trajectoryLowerBound(Trajectory q, Trajectory t, SimilarityMeasure measure) {
+        double absLat = Math.max(absLat(q.getMinY(), q.getMaxY()), absLat(t.getMinY(), t.getMaxY()));
+        double lb = Math.max(xGap(Math.abs(q.getMinX() - t.getMinX()), absLat),
+                xGap(Math.abs(q.getMaxX() - t.getMaxX()), absLat));
+        lb = Math.max(lb, Math.max(yGap(Math.abs(q.getMinY() - t.getMinY())),
+                yGap(Math.abs(q.getMaxY() - t.getMaxY()))));
+        if (measure == SimilarityMeasure.HAUSDORFF) {
+            return lb;
+        }
+        int n = q.size();
+        int m = t.size();
+        double first = metric.distance(q.getX(0), q.getY(0), t.getX(0), t.getY(0));
+        if (n == 1 && m == 1) {
+            return Math.max(lb, first);
+        }
+        double last = metric.distance(q.getX(n - 1), q.getY(n - 1), t.getX(m - 1), t.getY(m - 1));
+        return Math.max(lb, measure == SimilarityMeasure.DTW ? first + last : Math.max(first, last));
+    }
+
+    /**
+     * DTW 下界: 每个点至少出现在对齐路径上一次, 其代价不小于它到另一条轨迹 MBR 的距离
+     */
+    private double pointsToBoxLowerBound(Trajectory q, Trajectory t) {
+        double toT = 0;
+        for (int i = 0; i < q.size(); i++) {
+            toT += metric.minDistance(q.getX(i), q.getY(i), t.getMinX(), t.getMinY(), t.getMaxX(), t.getMaxY());
+        }
+        double toQ = 0;
+        for (int j = 0; j < t.size(); j++) {
+            toQ += metric.minDistance(t.getX(j), t.getY(j), q.getMinX(), q.getMinY(), q.getMaxX(), q.getMaxY());
+        }
+        return Math.max(toT, toQ);
+    }
+
+    /**
+     * 由 Hilbert 单元签名得到的下界: sum 为 true 时按点数累加 (DTW), 否则取最大值
+     */
+    private double signatureLowerBound(Signature a, Signature b, boolean sum) {
+        if (a == null || b == null) {
+            return 0;
+        }
+        return Math.max(directed(a, b, sum), directed(b, a, sum));
+    }
+
+    private double directed(Signature a, Signature b, boolean sum) {
+        double total = 0;
+        for (int i = 0; i < a.codes.length; i++) {
+            if (Arrays.binarySearch(b.codes, a.codes[i]) >= 0) {
+                continue;
+            }
+            double min = Double.POSITIVE_INFINITY;
+            for (int j = 0; j < b.codes.length && min > 0; j++) {
+                min = Math.min(min, cellDistance(a.gx[i], a.gy[i], b.gx[j], b.gy[j]));
+            }
+            total = sum ? total + a.counts[i] * min : Math.max(total, min);
+        }
+        return total;
+    }
+
+    /**
+     * 两个签名单元中任意两点距离的下界
+     */
+    private double cellDistance(int ax, int ay, int bx, int by) {
+        double gapX = Math.max(0, Math.abs(ax - bx) - 1) * cellWidth;
+        double gapY = Math.max(0, Math.abs(ay - by) - 1) * cellHeight;
+        if (metric == DistanceMetric.HAVERSINE) {
+            return Math.max(xGap(gapX, globalAbsLat), yGap(gapY));
+        }
+        return Math.sqrt(gapX * gapX + gapY * gapY);
+    }
+
+    /**
+     * 经度 (x) 相差 dx 的两点之间距离的下界; 两点纬度绝对值均不超过 absLat
+     * HAVERSINE: h ≥ cos²(absLat) sin²(Δλ / 2)
+     */
+    private double xGap(double dx, double absLat) {
+        if (!(dx > 0)) {
+            return 0;
+        }
+        if (metric != DistanceMetric.HAVERSINE) {
+            return dx;
+        }
+        if (absLat >= 90) {
+            return 0;
+        }
+        double half = Math.toRadians(Math.min(dx, 180)) / 2;
+        return 2 * DistanceMetric.EARTH_RADIUS_M
+                * Math.asin(Math.min(1.0, Math.cos(Math.toRadians(absLat)) * Math.sin(half)));
+    }
+
+    /**
+     * 纬度 (y) 相差 dy 的两点之间距离的下界 (HAVERSINE: 经线弧长)
+     */
+    private double yGap(double dy) {
+        if (!(dy > 0)) {
+            return 0;
+        }
+        return metric == DistanceMetric.HAVERSINE ? dy * DistanceMetric.METRES_PER_DEGREE : dy;
+    }
+
+    private static double absLat(double minY, double maxY) {
+        return Math.max(Math.abs(minY), Math.abs(maxY));
+    }
+
+    // ---------------- 签名 ----------------
+
+    /**
+     * 轨迹在签名格网上占据的单元; 轨迹为空或超出全局范围时为 null (不参与剪枝)
+     */
+    private Signature signature(Trajectory t) {
+        int n = t.size();
+        if (n == 0 || !globalMBR.contains(t.getMinX(), t.getMinY()) || !globalMBR.contains(t.getMaxX(), t.getMaxY())) {
+            return null;
+        }
+        int side = 1 << signatureDepth;
+        long[] codes = new long[n];
+        for (int i = 0; i < n; i++) {
+            long gx = gridOf(t.getX(i), globalMBR.getMinX(), globalMBR.getWidth(), side);
+            long gy = gridOf(t.getY(i), globalMBR.getMinY(), globalMBR.getHeight(), side);
+            codes[i] = HilbertCodec2D.encode(gx, gy, signatureDepth);
+        }
+        Arrays.sort(codes);
+        int distinct = 0;
+        for (int i = 0; i < n; i++) {
+            if (i == 0 || codes[i] != codes[i - 1]) {
+                distinct++;
+            }
+        }
+        Signature s = new Signature(distinct);
+        long[] cell = new long[2];
+        int k = -1;
+        for (int i = 0; i < n; i++) {
+            if (i == 0 || codes[i] != codes[i - 1]) {
+                k++;
+                s.codes[k] = codes[i];
+                HilbertCodec2D.decode(codes[i], signatureDepth, cell);
+                s.gx[k] = (int) cell[0];
+                s.gy[k] = (int) cell[1];
+            }
+            s.counts[k]++;
+        }
+        return s;
+    }
+
+    private static long gridOf(double v, double min, double extent, int side) {
+        long g = (long) Math.floor((v - min) / extent * side);
+        return Math.max(0, Math.min(g, side - 1));
+    }
+
+    /**
+     * Hilbert 单元签名: 按编码升序的单元及其中的点数
+     */
+    private static final class Signature {
+        final long[] codes;
+        final int[] gx;
+        final int[] gy;
+        final int[] counts;
+
+        Signature(int size) {
+            codes = new long[size];
+            gx = new int[size];
+            gy = new int[size];
+            counts = new int[size];
+        }
+    }
+}
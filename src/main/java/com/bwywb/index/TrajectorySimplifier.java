@@ -0,0 +1,375 @@
+package com.bwywb.index;
+
+import com.bwywb.model.Trajectory;
+import com.bwywb.model.TrajectoryPoint;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 轨迹简化 (入库前去除冗余点)
+ * 保证误差上界: 每个被删除的点到其所在简化线段的距离不超过 tolerance。
+ * 距离度量为 {@link DistanceMetric#HAVERSINE} 时 tolerance 以米为单位 —— 坐标 (x 经度, y 纬度)
+ * 先按参考纬度做局部等距圆柱投影换算为米，适用于跨度在数百公里以内的轨迹;
+ * 为 {@link DistanceMetric#PLANAR} 时 tolerance 与坐标同单位。
+ *
+ * <ul>
+ *   <li>{@link #simplify}: 入库默认使用的简化，即开窗简化，O(n)</li>
+ *   <li>{@link #openingWindow} / {@link Window}: 在线的开窗简化，以"扇形 (sleeve)"维护可行方向，每点 O(1)，
+ *       适合流式输入</li>
+ *   <li>{@link #douglasPeucker}: 迭代式 Douglas-Peucker (显式栈, 无递归深度问题)，通常保留的点更少，
+ *       但只是尽力而为: 每次划分较均衡时为 O(n log n)，最远点总落在区间一端时 (如螺旋、锯齿) 退化为 O(n²)，
+ *       不宜用于长度不受控的入库轨迹</li>
+ * </ul>
+ */
+public class TrajectorySimplifier {
+    private final double tolerance;
+    private final DistanceMetric metric;
+
+    /**
+     * @param toleranceMetres 误差上界 (米), 坐标为经纬度
+     */
+    public TrajectorySimplifier(double toleranceMetres) {
+        this(toleranceMetres, DistanceMetric.HAVERSINE);
+    }
+
+    public TrajectorySimplifier(double tolerance, DistanceMetric metric) {
+        if (!(tolerance >= 0)) {
+            throw new IllegalArgumentException("tolerance must be non-negative: " + tolerance);
+        }
+        this.tolerance = tolerance;
+        this.metric = metric;
+    }
+
+    public double getTolerance() { return tolerance; }
+    public DistanceMetric getMetric() { return metric; }
+
+    /**
+     * 点的接收器 (简化结果按原顺序输出)
+     */
+    public interface PointSink {
+        void accept(double x, double y, long timestamp);
+    }
+
+    // ---------------- Ingest ----------------
+
+    /**
+     * 入库简化: 开窗简化, 时间复杂度 O(n), 误差上界同 {@link #openingWindow(Trajectory)}
+     */
+    public Trajectory simplify(Trajectory t) {
+        return openingWindow(t);
+    }
+
+    public List<TrajectoryPoint> simplify(List<TrajectoryPoint> points) {
+        return openingWindow(points);
+    }
+
+    // ---------------- Douglas-Peucker ----------------
+
+    /**
+     * Douglas-Peucker 简化 (最坏 O(n²), 见类注释)
+     */
+    public Trajectory douglasPeucker(Trajectory t) {
+        int n = t.size();
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        long[] ts = new long[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = t.getX(i);
+            ys[i] = t.getY(i);
+            ts[i] = t.getTimestamp(i);
+        }
+        boolean[] keep = douglasPeuckerMask(xs, ys, n);
+        int k = compact(keep, xs, ys, ts, n);
+        return new Trajectory(t.getTrajectoryId(), xs, ys, ts, k);
+    }
+
+    public List<TrajectoryPoint> douglasPeucker(List<TrajectoryPoint> points) {
+        int n = points.size();
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        for (int i = 0; i < n; i++) {
+            TrajectoryPoint p = points.get(i);
+            xs[i] = p.getX();
+            ys[i] = p.getY();
+        }
+        boolean[] keep = douglasPeuckerMask(xs, ys, n);
+        List<TrajectoryPoint> result = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            if (keep[i]) {
+                result.add(points.get(i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 需要保留的点 (首尾点总是保留)
+     */
+    public boolean[] douglasPeuckerMask(double[] xs, double[] ys, int n) {
+        boolean[] keep = new boolean[n];
+        if (n == 0) {
+            return keep;
+        }
+        keep[0] = true;
+        keep[n - 1] = true;
+        if (n < 3) {
+            return keep;
+        }
+        double[] px = new double[n];
+        double[] py = new double[n];
+        project(xs, ys, n, referenceLatitude(ys, n), px, py);
+
+        double tol2 = tolerance * tolerance;
+        // 待处理区间互不重叠且长度至少为 2, 栈中区间数不超过 n / 2
+        int[] stack = new int[n + 2];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = n - 1;
+        while (top > 0) {
+            int b = stack[--top];
+            int a = stack[--top];
+            int farthest = -1;
+            double max = tol2;
+            for (int i = a + 1; i < b; i++) {
+                double d = segmentDistanceSq(px[i], py[i], px[a], py[a], px[b], py[b]);
+                if (d > max) {
+                    max = d;
+                    farthest = i;
+                }
+            }
+            if (farthest < 0) {
+                continue;
+            }
+            keep[farthest] = true;
+            if (farthest - a >= 2) {
+                stack[top++] = a;
+                stack[top++] = farthest;
+            }
+            if (b - farthest >= 2) {
+                stack[top++] = farthest;
+                stack[top++] = b;
+            }
+        }
+        return keep;
+    }
+
+    // ---------------- Opening window ----------------
+
+    /**
+     * 开窗简化 (与逐点送入 {@link Window} 结果相同)
+     */
+    public Trajectory openingWindow(Trajectory t) {
+        int n = t.size();
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        long[] ts = new long[n];
+        int[] size = new int[1];
+        Window window = window((x, y, timestamp) -> {
+            int k = size[0]++;
+            xs[k] = x;
+            ys[k] = y;
+            ts[k] = timestamp;
+        });
+        for (int i = 0; i < n; i++) {
+            window.add(t.getX(i), t.getY(i), t.getTimestamp(i));
+        }
+        window.finish();
+        return new Trajectory(t.getTrajectoryId(), xs, ys, ts, size[0]);
+    }
+
+    public List<TrajectoryPoint> openingWindow(List<TrajectoryPoint> points) {
+        List<TrajectoryPoint> result = new ArrayList<>();
+        Window window = window((x, y, timestamp) -> result.add(new TrajectoryPoint(x, y, timestamp)));
+        for (TrajectoryPoint p : points) {
+            window.add(p);
+        }
+        window.finish();
+        return result;
+    }
+
+    /**
+     * 创建在线简化窗口, 保留的点依次写入 sink
+     */
+    public Window window(PointSink sink) {
+        return new Window(sink);
+    }
+
+    /**
+     * 在线开窗简化。
+     * 从锚点出发，每个距锚点超过 tolerance 的点 q 给出一段可行方向 [θq - asin(tol/|q|), θq + asin(tol/|q|)]，
+     * 扇形为这些区间的交。新点的方向落在扇形内且距锚点不近于窗口内任一距锚点超过 tolerance 的点时，窗口内所有点到
+     * "锚点—新点"线段的距离都不超过 tolerance，窗口继续张开; 否则输出上一个点并以它为新锚点。
+     * 首点立即输出, 末点在 {@link #finish()} 时输出。非线程安全。
+     */
+    public final class Window {
+        private final PointSink sink;
+        private int count;
+        private double cosLat;      // 局部投影参数 (由首点确定)
+        private double lat0;
+        private double ax, ay;      // 锚点 (投影坐标)
+        private double prevX, prevY;
+        private long prevTime;
+        private double prevPx, prevPy;
+        private boolean prevEmitted;
+        private boolean coned;
+        private double reference, lo, hi;
+        private double maxDistance;
+
+        Window(PointSink sink) {
+            this.sink = sink;
+        }
+
+        public void add(TrajectoryPoint p) {
+            add(p.getX(), p.getY(), p.getTimestamp());
+        }
+
+        public void add(double x, double y, long timestamp) {
+            if (count++ == 0) {
+                lat0 = y;
+                cosLat = Math.cos(Math.toRadians(y));
+                ax = projectX(x);
+                ay = projectY(y);
+                remember(x, y, timestamp, ax, ay, true);
+                sink.accept(x, y, timestamp);
+                return;
+            }
+            double px = projectX(x);
+            double py = projectY(y);
+            double dx = px - ax;
+            double dy = py - ay;
+            double d = Math.sqrt(dx * dx + dy * dy);
+            boolean valid = d >= maxDistance
+                    && (d <= tolerance || !coned || inCone(Math.atan2(dy, dx)));
+            if (!valid) {
+                // 上一个点成为关键点与新锚点
+                sink.accept(prevX, prevY, prevTime);
+                ax = prevPx;
+                ay = prevPy;
+                coned = false;
+                maxDistance = 0;
+                dx = px - ax;
+                dy = py - ay;
+                d = Math.sqrt(dx * dx + dy * dy);
+            }
+            if (d > tolerance) {
+                double theta = Math.atan2(dy, dx);
+                double delta = Math.asin(tolerance / d);
+                if (!coned) {
+                    reference = theta;
+                    lo = -delta;
+                    hi = delta;
+                    coned = true;
+                } else {
+                    double c = wrap(theta - reference);
+                    lo = Math.max(lo, c - delta);
+                    hi = Math.min(hi, c + delta);
+                }
+                // 距锚点不超过 tolerance 的点到任一从锚点出发的线段都不超过 tolerance，无需约束新点的距离
+                maxDistance = Math.max(maxDistance, d);
+            }
+            remember(x, y, timestamp, px, py, false);
+        }
+
+        /**
+         * 输出最后一个点 (若尚未输出)
+         */
+        public void finish() {
+            if (count > 0 && !prevEmitted) {
+                sink.accept(prevX, prevY, prevTime);
+                prevEmitted = true;
+            }
+        }
+
+        private boolean inCone(double theta) {
+            double c = wrap(theta - reference);
+            return c >= lo && c <= hi;
+        }
+
+        private void remember(double x, double y, long timestamp, double px, double py, boolean emitted) {
+            prevX = x;
+            prevY = y;
+            prevTime = timestamp;
+            prevPx = px;
+            prevPy = py;
+            prevEmitted = emitted;
+        }
+
+        private double projectX(double x) {
+            return metric == DistanceMetric.HAVERSINE ? x * cosLat * DistanceMetric.METRES_PER_DEGREE : x;
+        }
+
+        private double projectY(double y) {
+            return metric == DistanceMetric.HAVERSINE ? (y - lat0) * DistanceMetric.METRES_PER_DEGREE : y;
+        }
+    }
+
+    // ---------------- helpers ----------------
+
+    private double referenceLatitude(double[] ys, int n) {
+        double min = ys[0];
+        double max = ys[0];
+        for (int i = 1; i < n; i++) {
+            min = Math.min(min, ys[i]);
+            max = Math.max(max, ys[i]);
+        }
+        return (min + max) / 2;
+    }
+
+    /**
+     * 投影到以米为单位的局部平面 (PLANAR 时原样拷贝)
+     */
+    private void project(double[] xs, double[] ys, int n, double lat0, double[] px, double[] py) {
+        if (metric != DistanceMetric.HAVERSINE) {
+            System.arraycopy(xs, 0, px, 0, n);
+            System.arraycopy(ys, 0, py, 0, n);
+            return;
+        }
+        double kx = Math.cos(Math.toRadians(lat0)) * DistanceMetric.METRES_PER_DEGREE;
+        for (int i = 0; i < n; i++) {
+            px[i] = xs[i] * kx;
+            py[i] = (ys[i] - lat0) * DistanceMetric.METRES_PER_DEGREE;
+        }
+    }
+
+    /**
+     * 点 p 到线段 ab 的距离平方
+     */
+    static double segmentDistanceSq(double px, double py, double ax, double ay, double bx, double by) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double len2 = dx * dx + dy * dy;
+        double u = len2 == 0 ? 0 : ((px - ax) * dx + (py - ay) * dy) / len2;
+        if (u < 0) {
+            u = 0;
+        } else if (u > 1) {
+            u = 1;
+        }
+        double ex = ax + u * dx - px;
+        double ey = ay + u * dy - py;
+        return ex * ex + ey * ey;
+    }
+
+    private static double wrap(double angle) {
+        if (angle > Math.PI) {
+            return angle - 2 * Math.PI;
+        }
+        if (angle <= -Math.PI) {
+            return angle + 2 * Math.PI;
+        }
+        return angle;
+    }
+
+    private static int compact(boolean[] keep, double[] xs, double[] ys, long[] ts, int n) {
+        int k = 0;
+        for (int i = 0; i < n; i++) {
+            if (keep[i]) {
+                xs[k] = xs[i];
+                ys[k] = ys[i];
+                ts[k] = ts[i];
+                k++;
+            }
+        }
+        return k;
+    }
+}
@@ -0,0 +1,225 @@
+package com.bwywb.index;
+
+import com.bwywb.model.Trajectory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 轨迹存储 (TrajectoryStore)
+ * 保存 {@link TrajectoryNuhIndex} 的节点 (按 XZ 编码升序)，回答"与窗口及时间区间相交的轨迹"查询。
+ * 查询沿隐式四叉树下降，只进入扩展范围与窗口相交且 XZ 编码段内存在节点的子树;
+ * 候选轨迹先用 MBR 与 [startTime, endTime] 过滤 (不访问轨迹点)，精确查询再对候选轨迹
+ * 在时间区间内的线段做窗口相交判断 (线段按时间线性插值)。窗口边界均视为闭区间。
+ */
+public class TrajectoryStore {
+    private final TrajectoryNuhIndex index;
+    private final TrajectorySubspace[] subspaces;
+    private final long[] xzCodes;
+    private final int trajectoryCount;
+
+    /**
+     * @param index           生成节点的轨迹索引
+     * @param sortedSubspaces {@link TrajectoryNuhIndex#generateIndex(List)} 的输出 (按 XZ 编码升序)
+     */
+    public TrajectoryStore(TrajectoryNuhIndex index, List<TrajectorySubspace> sortedSubspaces) {
+        this.index = index;
+        this.subspaces = sortedSubspaces.toArray(new TrajectorySubspace[0]);
+        this.xzCodes = new long[subspaces.length];
+        int count = 0;
+        for (int i = 0; i < subspaces.length; i++) {
+            xzCodes[i] = subspaces[i].getXzCode();
+            if (i > 0 && xzCodes[i] <= xzCodes[i - 1]) {
+                throw new IllegalArgumentException("Subspaces must be sorted by XZ code");
+            }
+            count += subspaces[i].getTrajectories().size();
+        }
+        this.trajectoryCount = count;
+    }
+
+    /**
+     * 构建索引并装载轨迹存储
+     */
+    public static TrajectoryStore build(TrajectoryNuhIndex index, List<Trajectory> data) {
+        return new TrajectoryStore(index, index.generateIndex(data));
+    }
+
+    public int size() { return trajectoryCount; }
+    public int subspaceCount() { return subspaces.length; }
+    public TrajectoryNuhIndex getIndex() { return index; }
+
+    /**
+     * 节点 (按 XZ 编码升序) 的只读视图
+     */
+    public List<TrajectorySubspace> subspaces() {
+        return Collections.unmodifiableList(Arrays.asList(subspaces));
+    }
+
+    /**
+     * 与窗口相交的轨迹
+     */
+    public List<Trajectory> query(MBR window) {
+        return query(window, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * 在时间区间 [startTime, endTime] 内与窗口相交的轨迹
+     */
+    public List<Trajectory> query(MBR window, long startTime, long endTime) {
+        List<Trajectory> result = new ArrayList<>();
+        visit(window, startTime, endTime, t -> {
+            if (intersects(t, window, startTime, endTime)) {
+                result.add(t);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * MBR 与窗口相交且时间范围与 [startTime, endTime] 重叠的轨迹 (不访问轨迹点，可能含假阳性)
+     */
+    public List<Trajectory> candidates(MBR window, long startTime, long endTime) {
+        List<Trajectory> result = new ArrayList<>();
+        visit(window, startTime, endTime, result::add);
+        return result;
+    }
+
+    /**
+     * 对每条候选轨迹调用 visitor
+     */
+    public void visit(MBR window, long startTime, long endTime, Consumer<Trajectory> visitor) {
+        if (startTime > endTime || subspaces.length == 0) {
+            return;
+        }
+        visit(index.getGlobalMBR(), 0, 0, 0, 0, window, startTime, endTime, visitor);
+    }
+
+    private void visit(MBR cell, int depth, long gx, long gy, long xzCode,
+                       MBR window, long startTime, long endTime, Consumer<Trajectory> visitor) {
+        // 子树对应 XZ 编码段 [xzCode, xzCode + subtreeSize)
+        int k = lowerBound(xzCode);
+        if (k == xzCodes.length || xzCodes[k] >= xzCode + index.subtreeSize(depth)) {
+            return;
+        }
+        if (xzCodes[k] == xzCode) {
+            TrajectorySubspace node = subspaces[k];
+            if (node.getMinStartTime() <= endTime && node.getMaxEndTime() >= startTime) {
+                for (Trajectory t : node.getTrajectories()) {
+                    if (t.getStartTime() <= endTime && t.getEndTime() >= startTime
+                            && t.getMinX() <= window.getMaxX() && t.getMaxX() >= window.getMinX()
+                            && t.getMinY() <= window.getMaxY() && t.getMaxY() >= window.getMinY()) {
+                        visitor.accept(t);
+                    }
+                }
+            }
+        }
+        if (depth >= index.getMaxDepth()) {
+            return;
+        }
+        MBR[] subMBRs = cell.quadSplit();
+        for (int q = 0; q < subMBRs.length; q++) {
+            MBR sub = subMBRs[q];
+            // 子树中的轨迹都位于子节点的扩展范围内
+            if (sub.getMinX() > window.getMaxX() || sub.getMaxX() + sub.getWidth() < window.getMinX()
+                    || sub.getMinY() > window.getMaxY() || sub.getMaxY() + sub.getHeight() < window.getMinY()) {
+                continue;
+            }
+            long cx = 2 * gx + (q & 1);
+            long cy = 2 * gy + (q >> 1);
+            visit(sub, depth + 1, cx, cy, index.childXzCode(xzCode, cx, cy, depth + 1),
+                    window, startTime, endTime, visitor);
+        }
+    }
+
+    private int lowerBound(long code) {
+        int lo = 0;
+        int hi = xzCodes.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (xzCodes[mid] < code) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * 轨迹在时间区间 [startTime, endTime] 内的部分是否与窗口相交。
+     * 相邻点之间按时间线性插值，轨迹点须按时间升序。
+     */
+    public static boolean intersects(Trajectory t, MBR window, long startTime, long endTime) {
+        int n = t.size();
+        if (n == 0 || t.getStartTime() > endTime || t.getEndTime() < startTime) {
+            return false;
+        }
+        if (n == 1) {
+            return inside(t.getX(0), t.getY(0), window);
+        }
+        // 二分跳过结束于 startTime 之前的线段
+        int lo = 0;
+        int hi = n - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (t.getTimestamp(mid + 1) < startTime) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        for (int i = lo; i < n - 1; i++) {
+            long ta = t.getTimestamp(i);
+            long tb = t.getTimestamp(i + 1);
+            if (ta > endTime) {
+                break;
+            }
+            double u0 = 0;
+            double u1 = 1;
+            if (tb > ta) {
+                // 先与线段端点比较再相减: startTime / endTime 可为 Long.MIN_VALUE / Long.MAX_VALUE (不限时间)，
+                // 直接相减会溢出; 落在 (ta, tb) 内时差值不超过 tb - ta
+                double span = (double) tb - ta;
+                u0 = startTime <= ta ? 0 : (startTime >= tb ? 1 : (startTime - ta) / span);
+                u1 = endTime >= tb ? 1 : (endTime <= ta ? 0 : (endTime - ta) / span);
+            }
+            if (u0 <= u1 && segmentIntersects(t.getX(i), t.getY(i), t.getX(i + 1), t.getY(i + 1), u0, u1, window)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean inside(double x, double y, MBR window) {
+        return x >= window.getMinX() && x <= window.getMaxX() && y >= window.getMinY() && y <= window.getMaxY();
+    }
+
+    /**
+     * 线段 a + u (b - a), u ∈ [u0, u1] 是否与闭窗口相交 (Liang-Barsky 裁剪)
+     */
+    private static boolean segmentIntersects(double ax, double ay, double bx, double by, double u0, double u1,
+                                             MBR window) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double[] p = {-dx, dx, -dy, dy};
+        double[] q = {ax - window.getMinX(), window.getMaxX() - ax, ay - window.getMinY(), window.getMaxY() - ay};
+        for (int i = 0; i < 4; i++) {
+            if (p[i] == 0) {
+                if (q[i] < 0) {
+                    return false;
+                }
+            } else {
+                double r = q[i] / p[i];
+                if (p[i] < 0) {
+                    u0 = Math.max(u0, r);
+                } else {
+                    u1 = Math.min(u1, r);
+                }
+            }
+        }
+        return u0 <= u1;
+    }
+}
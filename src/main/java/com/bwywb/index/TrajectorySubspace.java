@@ -0,0 +1,57 @@
+package com.bwywb.index;
+
+import com.bwywb.model.Trajectory;
+
+import java.util.List;
+
+/**
+ * 轨迹子空间: 轨迹 NUH 索引中的一个四叉树节点及驻留在该节点的轨迹。
+ * 节点的扩展范围 (XZ 元素) 为其网格单元向右、向上各延伸一个单元宽高，
+ * 驻留轨迹的 MBR 左下角位于单元内且整个 MBR 位于扩展范围内 (根节点除外，根节点接收其余所有轨迹)。
+ */
+public class TrajectorySubspace {
+    private final MBR range;                        // 网格单元
+    private final List<Trajectory> trajectories;    // 驻留的轨迹
+    private final double density;                   // 驻留轨迹的密度指标之和
+    private final int depth;                        // 划分深度
+    private final long hilbertCode;                 // 单元覆盖的细粒度 Hilbert 编码段起点
+    private final long xzCode;                      // XZ 编码 (节点在 Hilbert 子节点顺序下的先序序号)
+    private final long minStartTime;                // 驻留轨迹的最早开始时间
+    private final long maxEndTime;                  // 驻留轨迹的最晚结束时间
+
+    TrajectorySubspace(MBR range, List<Trajectory> trajectories, double density, int depth,
+                       long hilbertCode, long xzCode) {
+        this.range = range;
+        this.trajectories = trajectories;
+        this.density = density;
+        this.depth = depth;
+        this.hilbertCode = hilbertCode;
+        this.xzCode = xzCode;
+        long minStart = Long.MAX_VALUE;
+        long maxEnd = Long.MIN_VALUE;
+        for (Trajectory t : trajectories) {
+            minStart = Math.min(minStart, t.getStartTime());
+            maxEnd = Math.max(maxEnd, t.getEndTime());
+        }
+        this.minStartTime = minStart;
+        this.maxEndTime = maxEnd;
+    }
+
+    // --- Getters ---
+    public MBR getRange() { return range; }
+    public List<Trajectory> getTrajectories() { return trajectories; }
+    public double getDensity() { return density; }
+    public int getDepth() { return depth; }
+    public long getHilbertCode() { return hilbertCode; }
+    public long getXzCode() { return xzCode; }
+    public long getMinStartTime() { return minStartTime; }
+    public long getMaxEndTime() { return maxEndTime; }
+
+    /**
+     * 节点的扩展范围 (XZ 元素)
+     */
+    public MBR getEnlargedRange() {
+        return new MBR(range.getMinX(), range.getMinY(),
+                range.getMaxX() + range.getWidth(), range.getMaxY() + range.getHeight());
+    }
+}
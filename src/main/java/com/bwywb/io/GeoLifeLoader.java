@@ -0,0 +1,300 @@
+package com.bwywb.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * GeoLife .plt 轨迹文件的流式读取器
+ *
+ * PLT 格式: 6 行文件头, 之后每行为
+ * {@code 纬度,经度,0,海拔(英尺),天数(自 1899-12-30),日期(yyyy-MM-dd),时间(HH:mm:ss)}。
+ * 直接在字节上解析数值与日期时间 (按 UTC)，不做逐行 String 切分或 LocalDateTime 解析，
+ * 结果写入可复用的 {@link PltColumns}。文件按固定大小的缓冲区增量读入并逐行解析 (仅当单行超过缓冲区
+ * 时扩容)，内存占用与文件大小无关。数值字段为空或格式错误的行会被拒绝 (抛出 IOException)，
+ * 不会产生 (0, 0) 处的伪定位点。
+ * 单个实例复用读缓冲区，非线程安全; {@link #loadAll} 为每个工作线程使用独立实例，按用户目录并行读取。
+ */
+public final class GeoLifeLoader {
+    public static final String EXTENSION = ".plt";
+    private static final int HEADER_LINES = 6;
+    private static final long MS_PER_DAY = 24 * 60 * 60 * 1000L;
+    private static final double[] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    /**
+     * 轨迹接收器, 在 {@link #loadAll} 中可能被多个线程并发调用;
+     * columns 仅在本次调用期间有效, 需要保留时请拷贝。
+     */
+    public interface TrajectorySink {
+        void accept(String userId, String trajectoryId, PltColumns columns);
+    }
+
+    private byte[] buffer = new byte[1 << 16];
+    private int pos;
+    private int limit;
+    private boolean eof;
+
+    /**
+     * 读取单个 .plt 文件, 先清空 out 再写入
+     */
+    public void read(Path file, PltColumns out) throws IOException {
+        out.clear();
+        pos = 0;
+        limit = 0;
+        eof = false;
+        try (InputStream in = Files.newInputStream(file)) {
+            for (int i = 0; i < HEADER_LINES && fillLine(in); i++) {
+                skipLine();
+            }
+            while (fillLine(in)) {
+                if (buffer[pos] == '\n' || buffer[pos] == '\r') {
+                    pos++;
+                    continue;
+                }
+                int lineStart = pos;
+                double lat = parseDouble(file, lineStart);
+                expect(',', file, lineStart);
+                double lon = parseDouble(file, lineStart);
+                expect(',', file, lineStart);
+                skipField();
+                expect(',', file, lineStart);
+                double altitude = parseDouble(file, lineStart);
+                expect(',', file, lineStart);
+                skipField();
+                expect(',', file, lineStart);
+                long epochDay = parseDate(file, lineStart);
+                expect(',', file, lineStart);
+                long millisOfDay = parseTime(file, lineStart);
+                skipLine();
+                out.add(lon, lat, altitude, epochDay * MS_PER_DAY + millisOfDay);
+            }
+        }
+    }
+
+    /**
+     * 并行读取 GeoLife 根目录下所有用户目录中的 .plt 文件。
+     * 用户目录下存在 Trajectory 子目录时 (官方发布结构) 读取该子目录, 否则直接读取用户目录。
+     *
+     * @param root        包含用户目录 (000, 001, ...) 的根目录
+     * @param parallelism 并行度 (工作线程数)
+     * @param sink        轨迹接收器, userId 为用户目录名, trajectoryId 为去掉扩展名的文件名
+     */
+    public static void loadAll(Path root, int parallelism, TrajectorySink sink) throws IOException {
+        List<Path> userDirs;
+        try (Stream<Path> dirs = Files.list(root)) {
+            userDirs = dirs.filter(Files::isDirectory).sorted().collect(Collectors.toList());
+        }
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.submit(() -> userDirs.parallelStream().forEach(dir -> loadUser(dir, sink))).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading " + root, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void loadUser(Path userDir, TrajectorySink sink) {
+        Path dir = Files.isDirectory(userDir.resolve("Trajectory")) ? userDir.resolve("Trajectory") : userDir;
+        String userId = userDir.getFileName().toString();
+        GeoLifeLoader loader = new GeoLifeLoader();
+        PltColumns columns = new PltColumns();
+        try {
+            List<Path> files;
+            try (Stream<Path> list = Files.list(dir)) {
+                files = list.filter(p -> p.getFileName().toString().endsWith(EXTENSION))
+                        .sorted().collect(Collectors.toList());
+            }
+            List<String> ids = new ArrayList<>(files.size());
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                ids.add(name.substring(0, name.length() - EXTENSION.length()));
+            }
+            for (int i = 0; i < files.size(); i++) {
+                loader.read(files.get(i), columns);
+                sink.accept(userId, ids.get(i), columns);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 保证从 pos 开始的一整行 (末行可无换行符) 位于缓冲区内, 必要时将未读完的部分移到缓冲区开头并继续读入
+     * @return 是否还有未解析的数据
+     */
+    private boolean fillLine(InputStream in) throws IOException {
+        int scan = pos;
+        while (true) {
+            for (; scan < limit; scan++) {
+                if (buffer[scan] == '\n') {
+                    return true;
+                }
+            }
+            if (eof) {
+                return pos < limit;
+            }
+            if (pos > 0) {
+                System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+                scan -= pos;
+                limit -= pos;
+                pos = 0;
+            } else if (limit == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            int n = in.read(buffer, limit, buffer.length - limit);
+            if (n < 0) {
+                eof = true;
+            } else {
+                limit += n;
+            }
+        }
+    }
+
+    private void skipLine() {
+        while (pos < limit && buffer[pos] != '\n') {
+            pos++;
+        }
+        if (pos < limit) {
+            pos++;
+        }
+    }
+
+    private void skipField() {
+        while (pos < limit && buffer[pos] != ',' && buffer[pos] != '\n' && buffer[pos] != '\r') {
+            pos++;
+        }
+    }
+
+    private void expect(char c, Path file, int lineStart) throws IOException {
+        if (pos >= limit || buffer[pos] != c) {
+            throw malformed(file, lineStart);
+        }
+        pos++;
+    }
+
+    /**
+     * 解析十进制小数 (可带符号)。有效数字不超过 15 位时 mantissa / 10^k 是正确舍入的,
+     * 与 Double.parseDouble 结果一致; 否则 (或含指数) 退回 Double.parseDouble。
+     * 字段为空或不含数字时视为格式错误。
+     */
+    private double parseDouble(Path file, int lineStart) throws IOException {
+        int start = pos;
+        boolean negative = false;
+        if (pos < limit && (buffer[pos] == '-' || buffer[pos] == '+')) {
+            negative = buffer[pos] == '-';
+            pos++;
+        }
+        long mantissa = 0;
+        boolean anyDigit = false;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean fraction = false;
+        while (pos < limit) {
+            byte b = buffer[pos];
+            if (b >= '0' && b <= '9') {
+                anyDigit = true;
+                if (digits > 0 || b != '0') {
+                    digits++;
+                }
+                mantissa = mantissa * 10 + (b - '0');
+                if (fraction) {
+                    fractionDigits++;
+                }
+            } else if (b == '.' && !fraction) {
+                fraction = true;
+            } else {
+                break;
+            }
+            pos++;
+        }
+        if (!anyDigit) {
+            throw malformed(file, lineStart);
+        }
+        boolean exponent = pos < limit && (buffer[pos] == 'e' || buffer[pos] == 'E');
+        if (exponent || digits > 15 || fractionDigits >= POW10.length) {
+            skipField();
+            try {
+                return Double.parseDouble(new String(buffer, start, pos - start, StandardCharsets.US_ASCII));
+            } catch (NumberFormatException e) {
+                throw malformed(file, lineStart);
+            }
+        }
+        double value = mantissa / POW10[fractionDigits];
+        return negative ? -value : value;
+    }
+
+    /**
+     * 解析 yyyy-MM-dd, 返回纪元日 (Howard Hinnant days_from_civil 算法)
+     */
+    private long parseDate(Path file, int lineStart) throws IOException {
+        int year = parseInt(file, lineStart);
+        expect('-', file, lineStart);
+        int month = parseInt(file, lineStart);
+        expect('-', file, lineStart);
+        int day = parseInt(file, lineStart);
+
+        int y = month <= 2 ? year - 1 : year;
+        int era = Math.floorDiv(y, 400);
+        int yoe = y - era * 400;
+        int doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return (long) era * 146097 + doe - 719468;
+    }
+
+    /**
+     * 解析 HH:mm:ss, 返回当日毫秒数
+     */
+    private long parseTime(Path file, int lineStart) throws IOException {
+        int hour = parseInt(file, lineStart);
+        expect(':', file, lineStart);
+        int minute = parseInt(file, lineStart);
+        expect(':', file, lineStart);
+        int second = parseInt(file, lineStart);
+        return ((hour * 60L + minute) * 60L + second) * 1000L;
+    }
+
+    private int parseInt(Path file, int lineStart) throws IOException {
+        int start = pos;
+        int value = 0;
+        while (pos < limit && buffer[pos] >= '0' && buffer[pos] <= '9') {
+            value = value * 10 + (buffer[pos] - '0');
+            pos++;
+        }
+        if (pos == start) {
+            throw malformed(file, lineStart);
+        }
+        return value;
+    }
+
+    private IOException malformed(Path file, int lineStart) {
+        int end = lineStart;
+        while (end < limit && buffer[end] != '\n' && buffer[end] != '\r') {
+            end++;
+        }
+        return new IOException("Malformed PLT line in " + file + ": "
+                + new String(buffer, lineStart, end - lineStart, StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,68 @@
+package com.bwywb.io;
+
+import com.bwywb.model.Trajectory;
+
+import java.util.Arrays;
+
+/**
+ * 可复用的轨迹列式缓冲区: 经度 (x)、纬度 (y)、海拔 (英尺) 与时间戳 (Unix epoch 毫秒, UTC)
+ * 容量按需倍增, {@link #clear()} 后复用已有数组, 不会为每个点分配对象。
+ */
+public final class PltColumns {
+    private double[] xs;
+    private double[] ys;
+    private double[] altitudes;
+    private long[] timestamps;
+    private int size;
+
+    public PltColumns() {
+        this(1024);
+    }
+
+    public PltColumns(int initialCapacity) {
+        int capacity = Math.max(1, initialCapacity);
+        xs = new double[capacity];
+        ys = new double[capacity];
+        altitudes = new double[capacity];
+        timestamps = new long[capacity];
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public void add(double x, double y, double altitude, long timestamp) {
+        if (size == xs.length) {
+            int capacity = size * 2;
+            xs = Arrays.copyOf(xs, capacity);
+            ys = Arrays.copyOf(ys, capacity);
+            altitudes = Arrays.copyOf(altitudes, capacity);
+            timestamps = Arrays.copyOf(timestamps, capacity);
+        }
+        xs[size] = x;
+        ys[size] = y;
+        altitudes[size] = altitude;
+        timestamps[size] = timestamp;
+        size++;
+    }
+
+    // --- Getters ---
+    public int size() { return size; }
+    public double getX(int i) { return xs[i]; }
+    public double getY(int i) { return ys[i]; }
+    public double getAltitude(int i) { return altitudes[i]; }
+    public long getTimestamp(int i) { return timestamps[i]; }
+
+    /** 底层数组 (有效长度为 size(), 下次 add 扩容后失效) */
+    public double[] xs() { return xs; }
+    public double[] ys() { return ys; }
+    public double[] altitudes() { return altitudes; }
+    public long[] timestamps() { return timestamps; }
+
+    /**
+     * 拷贝为列式 Trajectory 对象 (不为每个点分配对象)
+     */
+    public Trajectory toTrajectory(String trajectoryId) {
+        return new Trajectory(trajectoryId, xs, ys, timestamps, size);
+    }
+}
@@ -0,0 +1,574 @@
+package com.bwywb.io;
+
+import com.bwywb.model.Trajectory;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 轨迹压缩编解码器 (大端序)
+ * <pre>
+ * 文件头     int magic ('TRJC')  byte version
+ *            varint size  varint blockSize  byte scaleDigits  varint idLength  byte[idLength] id (UTF-8)
+ *            double minX, minY, maxX, maxY   long startTime, endTime
+ *            varint blockCount
+ * 块索引     每块 12 字节: int offset (相对块数据起点)  long firstTimestamp
+ * 块数据     byte mode
+ *            时间戳: zigzag varint t0, zigzag varint (t1 - t0), 之后为二阶差分 (delta-of-delta) 的 zigzag varint
+ *            坐标: mode 0 (定点): x、y 乘 10^scaleDigits 取整, 首点为 zigzag varint, 之后按点交替写 dx、dy 的 zigzag varint
+ *                  mode 1 (XOR): x 序列与 y 序列分别按 Gorilla 方式对 double 位模式做 XOR 压缩 (位流, 按字节补齐)
+ * </pre>
+ * 仅当块内所有坐标都能由定点值按位精确还原 (q / 10^scaleDigits 与 x 的位模式相同) 时使用定点模式，否则退回 XOR 模式，
+ * 因此编码总是无损的。GeoLife .plt 的经纬度为 6 位小数，相邻点的定点差分与时间二阶差分通常各占 1 字节。
+ * 块之间相互独立: 可通过块索引随机访问任一块，或按块顺序流式解码而不物化整条轨迹。
+ */
+public final class TrajectoryCodec {
+    public static final int MAGIC = 0x54524A43; // "TRJC"
+    public static final int VERSION = 1;
+
+    public static final int DEFAULT_BLOCK_SIZE = 256;
+    /** GeoLife .plt 经纬度的小数位数 */
+    public static final int DEFAULT_SCALE_DIGITS = 6;
+    public static final int MAX_SCALE_DIGITS = 12;
+
+    static final int BLOCK_INDEX_BYTES = 12;
+    private static final int MODE_FIXED = 0;
+    private static final int MODE_XOR = 1;
+
+    private final int blockSize;
+    private final int scaleDigits;
+    private final double scale;
+
+    public TrajectoryCodec() {
+        this(DEFAULT_BLOCK_SIZE, DEFAULT_SCALE_DIGITS);
+    }
+
+    /**
+     * @param blockSize   每块点数
+     * @param scaleDigits 定点坐标的小数位数, 取值 [0, {@link #MAX_SCALE_DIGITS}]
+     */
+    public TrajectoryCodec(int blockSize, int scaleDigits) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("blockSize must be positive: " + blockSize);
+        }
+        if (scaleDigits < 0 || scaleDigits > MAX_SCALE_DIGITS) {
+            throw new IllegalArgumentException("scaleDigits must be between 0 and " + MAX_SCALE_DIGITS + ": " + scaleDigits);
+        }
+        this.blockSize = blockSize;
+        this.scaleDigits = scaleDigits;
+        this.scale = Math.pow(10, scaleDigits);
+    }
+
+    public int getBlockSize() { return blockSize; }
+    public int getScaleDigits() { return scaleDigits; }
+
+    /**
+     * 编码整条轨迹
+     */
+    public byte[] encode(Trajectory t) {
+        int n = t.size();
+        int blockCount = (n + blockSize - 1) / blockSize;
+
+        ByteSink blocks = new ByteSink(Math.max(16, n * 4));
+        int[] offsets = new int[blockCount];
+        long[] firstTimestamps = new long[blockCount];
+        for (int b = 0; b < blockCount; b++) {
+            int from = b * blockSize;
+            int to = Math.min(n, from + blockSize);
+            offsets[b] = blocks.size();
+            firstTimestamps[b] = t.getTimestamp(from);
+            encodeBlock(t, from, to, blocks);
+        }
+
+        byte[] id = t.getTrajectoryId() == null ? new byte[0] : t.getTrajectoryId().getBytes(StandardCharsets.UTF_8);
+        ByteSink out = new ByteSink(64 + id.length + blockCount * BLOCK_INDEX_BYTES + blocks.size());
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeVarLong(n);
+        out.writeVarLong(blockSize);
+        out.writeByte(scaleDigits);
+        out.writeVarLong(id.length);
+        out.write(id, 0, id.length);
+        out.writeLong(Double.doubleToRawLongBits(t.getMinX()));
+        out.writeLong(Double.doubleToRawLongBits(t.getMinY()));
+        out.writeLong(Double.doubleToRawLongBits(t.getMaxX()));
+        out.writeLong(Double.doubleToRawLongBits(t.getMaxY()));
+        out.writeLong(t.getStartTime());
+        out.writeLong(t.getEndTime());
+        out.writeVarLong(blockCount);
+        for (int b = 0; b < blockCount; b++) {
+            out.writeInt(offsets[b]);
+            out.writeLong(firstTimestamps[b]);
+        }
+        out.write(blocks.buffer(), 0, blocks.size());
+        return out.toByteArray();
+    }
+
+    private void encodeBlock(Trajectory t, int from, int to, ByteSink out) {
+        boolean fixed = true;
+        for (int i = from; i < to && fixed; i++) {
+            fixed = exact(t.getX(i)) && exact(t.getY(i));
+        }
+        out.writeByte(fixed ? MODE_FIXED : MODE_XOR);
+
+        // 时间戳: 首值, 一阶差分, 之后为二阶差分
+        long prev = t.getTimestamp(from);
+        long prevDelta = 0;
+        out.writeZigZag(prev);
+        for (int i = from + 1; i < to; i++) {
+            long ts = t.getTimestamp(i);
+            long delta = ts - prev;
+            out.writeZigZag(i == from + 1 ? delta : delta - prevDelta);
+            prevDelta = delta;
+            prev = ts;
+        }
+
+        if (fixed) {
+            long px = 0;
+            long py = 0;
+            for (int i = from; i < to; i++) {
+                long qx = Math.round(t.getX(i) * scale);
+                long qy = Math.round(t.getY(i) * scale);
+                out.writeZigZag(qx - px);
+                out.writeZigZag(qy - py);
+                px = qx;
+                py = qy;
+            }
+        } else {
+            BitSink bits = new BitSink(out);
+            XorEncoder xe = new XorEncoder(bits);
+            for (int i = from; i < to; i++) {
+                xe.write(Double.doubleToRawLongBits(t.getX(i)));
+            }
+            XorEncoder ye = new XorEncoder(bits);
+            for (int i = from; i < to; i++) {
+                ye.write(Double.doubleToRawLongBits(t.getY(i)));
+            }
+            bits.flush();
+        }
+    }
+
+    /**
+     * 坐标能否由 scaleDigits 位小数的定点值精确还原。按位模式比较: -0.0 == 0.0 成立，
+     * 但定点值 0 解码为 +0.0，因此 -0.0 须走 XOR 模式
+     */
+    private boolean exact(double v) {
+        double s = v * scale;
+        return Math.abs(s) < (1L << 52)
+                && Double.doubleToRawLongBits(Math.round(s) / scale) == Double.doubleToRawLongBits(v);
+    }
+
+    /**
+     * 解码整条轨迹
+     */
+    public static Trajectory decode(byte[] data) {
+        return open(data).toTrajectory();
+    }
+
+    public static Reader open(byte[] data) {
+        return new Reader(ByteBuffer.wrap(data));
+    }
+
+    /**
+     * 打开编码数据 (例如只读映射的文件段); 从 buffer 的当前位置开始读取, 不修改其位置
+     */
+    public static Reader open(ByteBuffer buffer) {
+        return new Reader(buffer.slice());
+    }
+
+    /**
+     * 按块流式解码时的接收器; 数组在回调之间复用, 有效长度为 count
+     */
+    public interface BlockVisitor {
+        void accept(int block, double[] xs, double[] ys, long[] timestamps, int count);
+    }
+
+    /**
+     * 编码数据的读取器: 文件头中的 MBR 与时间范围无需解码即可使用，块可随机访问。非线程安全。
+     */
+    public static final class Reader {
+        private final ByteBuffer buf;
+        private final String trajectoryId;
+        private final int size;
+        private final int blockSize;
+        private final double scale;
+        private final double minX, minY, maxX, maxY;
+        private final long startTime, endTime;
+        private final int blockCount;
+        private final int indexStart;
+        private final int dataStart;
+
+        private int pos;
+
+        Reader(ByteBuffer buf) {
+            this.buf = buf;
+            if (buf.getInt(0) != MAGIC) {
+                throw new IllegalArgumentException("Not an encoded trajectory (bad magic)");
+            }
+            if (buf.get(4) != VERSION) {
+                throw new IllegalArgumentException("Unsupported trajectory codec version: " + buf.get(4));
+            }
+            pos = 5;
+            this.size = (int) readVarLong();
+            this.blockSize = (int) readVarLong();
+            this.scale = Math.pow(10, buf.get(pos++));
+            int idLength = (int) readVarLong();
+            byte[] id = new byte[idLength];
+            for (int i = 0; i < idLength; i++) {
+                id[i] = buf.get(pos++);
+            }
+            this.trajectoryId = new String(id, StandardCharsets.UTF_8);
+            this.minX = Double.longBitsToDouble(buf.getLong(pos));
+            this.minY = Double.longBitsToDouble(buf.getLong(pos + 8));
+            this.maxX = Double.longBitsToDouble(buf.getLong(pos + 16));
+            this.maxY = Double.longBitsToDouble(buf.getLong(pos + 24));
+            this.startTime = buf.getLong(pos + 32);
+            this.endTime = buf.getLong(pos + 40);
+            pos += 48;
+            this.blockCount = (int) readVarLong();
+            this.indexStart = pos;
+            this.dataStart = indexStart + blockCount * BLOCK_INDEX_BYTES;
+        }
+
+        public String getTrajectoryId() { return trajectoryId; }
+        /** 点数 */
+        public int size() { return size; }
+        public int blockCount() { return blockCount; }
+        /** 每块点数 (最后一块可能更少) */
+        public int blockSize() { return blockSize; }
+        public double getMinX() { return minX; }
+        public double getMinY() { return minY; }
+        public double getMaxX() { return maxX; }
+        public double getMaxY() { return maxY; }
+        public long getStartTime() { return startTime; }
+        public long getEndTime() { return endTime; }
+
+        /** 第 block 块第一个点的时间戳 */
+        public long firstTimestamp(int block) {
+            return buf.getLong(indexStart + block * BLOCK_INDEX_BYTES + 4);
+        }
+
+        /**
+         * 包含时间戳 timestamp 的块: 最后一个首时间戳不大于 timestamp 的块 (轨迹点须按时间升序);
+         * timestamp 早于第一个点时返回 0
+         */
+        public int blockOf(long timestamp) {
+            int lo = 0;
+            int hi = blockCount - 1;
+            while (lo < hi) {
+                int mid = (lo + hi + 1) >>> 1;
+                if (firstTimestamp(mid) <= timestamp) {
+                    lo = mid;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            return lo;
+        }
+
+        /**
+         * 解码第 block 块到给定数组 (长度至少为 blockSize())
+         * @return 该块的点数
+         */
+        public int readBlock(int block, double[] xs, double[] ys, long[] timestamps) {
+            if (block < 0 || block >= blockCount) {
+                throw new IndexOutOfBoundsException("block " + block + ", blockCount " + blockCount);
+            }
+            int count = Math.min(blockSize, size - block * blockSize);
+            if (xs.length < count || ys.length < count || timestamps.length < count) {
+                throw new IllegalArgumentException("Arrays must hold at least " + count + " points");
+            }
+            pos = dataStart + buf.getInt(indexStart + block * BLOCK_INDEX_BYTES);
+            int mode = buf.get(pos++);
+
+            long prev = readZigZag();
+            timestamps[0] = prev;
+            long delta = 0;
+            for (int i = 1; i < count; i++) {
+                long d = readZigZag();
+                delta = i == 1 ? d : delta + d;
+                prev += delta;
+                timestamps[i] = prev;
+            }
+
+            if (mode == MODE_FIXED) {
+                long qx = 0;
+                long qy = 0;
+                for (int i = 0; i < count; i++) {
+                    qx += readZigZag();
+                    qy += readZigZag();
+                    xs[i] = qx / scale;
+                    ys[i] = qy / scale;
+                }
+            } else if (mode == MODE_XOR) {
+                BitSource bits = new BitSource(this);
+                XorDecoder xd = new XorDecoder(bits);
+                for (int i = 0; i < count; i++) {
+                    xs[i] = Double.longBitsToDouble(xd.read());
+                }
+                XorDecoder yd = new XorDecoder(bits);
+                for (int i = 0; i < count; i++) {
+                    ys[i] = Double.longBitsToDouble(yd.read());
+                }
+            } else {
+                throw new IllegalArgumentException("Unknown block mode: " + mode);
+            }
+            return count;
+        }
+
+        /**
+         * 按块顺序流式解码, 只分配一组长度为 blockSize() 的数组
+         */
+        public void forEachBlock(BlockVisitor visitor) {
+            int capacity = Math.min(blockSize, size);
+            double[] xs = new double[capacity];
+            double[] ys = new double[capacity];
+            long[] ts = new long[capacity];
+            for (int b = 0; b < blockCount; b++) {
+                int count = readBlock(b, xs, ys, ts);
+                visitor.accept(b, xs, ys, ts, count);
+            }
+        }
+
+        /**
+         * 解码为列式 Trajectory
+         */
+        public Trajectory toTrajectory() {
+            double[] xs = new double[size];
+            double[] ys = new double[size];
+            long[] ts = new long[size];
+            double[] bx = new double[Math.min(blockSize, size)];
+            double[] by = new double[bx.length];
+            long[] bt = new long[bx.length];
+            for (int b = 0; b < blockCount; b++) {
+                int count = readBlock(b, bx, by, bt);
+                int offset = b * blockSize;
+                System.arraycopy(bx, 0, xs, offset, count);
+                System.arraycopy(by, 0, ys, offset, count);
+                System.arraycopy(bt, 0, ts, offset, count);
+            }
+            return new Trajectory(trajectoryId, xs, ys, ts, size);
+        }
+
+        int readByte() {
+            return buf.get(pos++) & 0xFF;
+        }
+
+        private long readVarLong() {
+            long value = 0;
+            int shift = 0;
+            while (true) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+                shift += 7;
+            }
+        }
+
+        private long readZigZag() {
+            long v = readVarLong();
+            return (v >>> 1) ^ -(v & 1);
+        }
+    }
+
+    /**
+     * 可增长的字节缓冲区
+     */
+    private static final class ByteSink {
+        private byte[] buf;
+        private int size;
+
+        ByteSink(int capacity) {
+            buf = new byte[capacity];
+        }
+
+        int size() { return size; }
+        byte[] buffer() { return buf; }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, size);
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, size + extra));
+            }
+        }
+
+        void writeByte(int b) {
+            ensure(1);
+            buf[size++] = (byte) b;
+        }
+
+        void write(byte[] b, int off, int len) {
+            ensure(len);
+            System.arraycopy(b, off, buf, size, len);
+            size += len;
+        }
+
+        void writeInt(int v) {
+            ensure(4);
+            for (int i = 3; i >= 0; i--) {
+                buf[size++] = (byte) (v >>> (8 * i));
+            }
+        }
+
+        void writeLong(long v) {
+            ensure(8);
+            for (int i = 7; i >= 0; i--) {
+                buf[size++] = (byte) (v >>> (8 * i));
+            }
+        }
+
+        void writeVarLong(long v) {
+            ensure(10);
+            while ((v & ~0x7FL) != 0) {
+                buf[size++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[size++] = (byte) v;
+        }
+
+        void writeZigZag(long v) {
+            writeVarLong((v << 1) ^ (v >> 63));
+        }
+    }
+
+    /**
+     * 高位在前的位流写入器, flush 时按字节补齐
+     */
+    private static final class BitSink {
+        private final ByteSink out;
+        private long acc;
+        private int bits;
+
+        BitSink(ByteSink out) {
+            this.out = out;
+        }
+
+        void write(long value, int n) {
+            // 分两次写入, 保证累加器不溢出
+            if (n > 32) {
+                write(value >>> 32, n - 32);
+                n = 32;
+            }
+            acc = (acc << n) | (value & ((1L << n) - 1));
+            bits += n;
+            while (bits >= 8) {
+                bits -= 8;
+                out.writeByte((int) (acc >>> bits));
+            }
+        }
+
+        void flush() {
+            if (bits > 0) {
+                out.writeByte((int) (acc << (8 - bits)));
+                bits = 0;
+            }
+            acc = 0;
+        }
+    }
+
+    private static final class BitSource {
+        private final Reader in;
+        private long acc;
+        private int bits;
+
+        BitSource(Reader in) {
+            this.in = in;
+        }
+
+        long read(int n) {
+            if (n > 32) {
+                long high = read(n - 32);
+                return (high << 32) | read(32);
+            }
+            while (bits < n) {
+                acc = (acc << 8) | in.readByte();
+                bits += 8;
+            }
+            bits -= n;
+            return (acc >>> bits) & ((1L << n) - 1);
+        }
+    }
+
+    /**
+     * Gorilla 风格的 XOR 压缩: 与上一个值相同写 '0'; 否则写 '1', 若非零位落在上一个窗口内写 '0' 和窗口内的位,
+     * 否则写 '1'、5 位前导零个数、6 位有效位长度 - 1 与有效位
+     */
+    private static final class XorEncoder {
+        private final BitSink out;
+        private boolean first = true;
+        private long prev;
+        private int prevLeading = -1;
+        private int prevTrailing;
+
+        XorEncoder(BitSink out) {
+            this.out = out;
+        }
+
+        void write(long value) {
+            if (first) {
+                out.write(value, 64);
+                first = false;
+                prev = value;
+                return;
+            }
+            long xor = value ^ prev;
+            prev = value;
+            if (xor == 0) {
+                out.write(0, 1);
+                return;
+            }
+            out.write(1, 1);
+            int leading = Math.min(31, Long.numberOfLeadingZeros(xor));
+            int trailing = Long.numberOfTrailingZeros(xor);
+            if (prevLeading >= 0 && leading >= prevLeading && trailing >= prevTrailing) {
+                out.write(0, 1);
+                out.write(xor >>> prevTrailing, 64 - prevLeading - prevTrailing);
+            } else {
+                int meaningful = 64 - leading - trailing;
+                out.write(1, 1);
+                out.write(leading, 5);
+                out.write(meaningful - 1, 6);
+                out.write(xor >>> trailing, meaningful);
+                prevLeading = leading;
+                prevTrailing = trailing;
+            }
+        }
+    }
+
+    private static final class XorDecoder {
+        private final BitSource in;
+        private boolean first = true;
+        private long prev;
+        private int prevLeading;
+        private int prevTrailing;
+
+        XorDecoder(BitSource in) {
+            this.in = in;
+        }
+
+        long read() {
+            if (first) {
+                first = false;
+                prev = in.read(64);
+                return prev;
+            }
+            if (in.read(1) == 0) {
+                return prev;
+            }
+            if (in.read(1) != 0) {
+                prevLeading = (int) in.read(5);
+                int meaningful = (int) in.read(6) + 1;
+                prevTrailing = 64 - prevLeading - meaningful;
+            }
+            long xor = in.read(64 - prevLeading - prevTrailing) << prevTrailing;
+            prev ^= xor;
+            return prev;
+        }
+    }
+}
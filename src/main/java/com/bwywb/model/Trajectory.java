@@ -1,33 +1,147 @@
 package com.bwywb.model;
 
+import java.util.AbstractList;
 import java.util.List;
+import java.util.RandomAccess;
 
+/**
+ * 轨迹 (列式存储)
+ * 坐标与时间戳保存在原始类型数组中，不为每个点分配对象; 时间跨度不超过 int 范围 (约 24.8 天) 时
+ * 时间戳按相对起点 (第一个点) 的 int 偏移存储。MBR 与时间范围在构造时一趟计算。
+ * {@link #getPoints()} 返回按需创建 TrajectoryPoint 的只读视图，顺序遍历时可用 {@link #view()} 复用单个对象。
+ */
 public class Trajectory {
     private final String trajectoryId;
-    private final List<TrajectoryPoint> points;
-    
+
+    private final double[] xs;
+    private final double[] ys;
+    private final long baseTime;        // 第一个点的时间戳
+    private final int[] timeOffsets;    // 相对 baseTime 的偏移; 跨度超出 int 时为 null
+    private final long[] timestamps;    // 仅在 timeOffsets 为 null 时使用
+
     // 轨迹的最小外包矩形 (MBR) 和时间范围 [ts, te]
     private final double minX, minY, maxX, maxY;
     private final long startTime, endTime;
 
     // 构造函数... (Constructor)
     public Trajectory(String trajectoryId, List<TrajectoryPoint> points) {
+        this(trajectoryId, columnsOf(points));
+    }
+
+    /**
+     * 由列数据构造 (拷贝前 size 个元素)
+     */
+    public Trajectory(String trajectoryId, double[] xs, double[] ys, long[] timestamps, int size) {
+        this(trajectoryId, copyOf(xs, ys, timestamps, size));
+    }
+
+    private Trajectory(String trajectoryId, Columns columns) {
         this.trajectoryId = trajectoryId;
-        this.points = points;
+        this.xs = columns.xs;
+        this.ys = columns.ys;
+        int n = xs.length;
+        long[] ts = columns.timestamps;
+
+        // 一趟计算轨迹的 MBR 和时间范围
+        double x0 = 0.0, y0 = 0.0, x1 = 0.0, y1 = 0.0;
+        long t0 = 0L, t1 = 0L;
+        if (n > 0) {
+            x0 = x1 = xs[0];
+            y0 = y1 = ys[0];
+            t0 = t1 = ts[0];
+            for (int i = 1; i < n; i++) {
+                double x = xs[i];
+                double y = ys[i];
+                long t = ts[i];
+                if (x < x0) x0 = x; else if (x > x1) x1 = x;
+                if (y < y0) y0 = y; else if (y > y1) y1 = y;
+                if (t < t0) t0 = t; else if (t > t1) t1 = t;
+            }
+        }
+        minX = x0;
+        minY = y0;
+        maxX = x1;
+        maxY = y1;
+        startTime = t0;
+        endTime = t1;
+
+        this.baseTime = n > 0 ? ts[0] : 0L;
+        if (n > 0 && t0 - baseTime >= Integer.MIN_VALUE && t1 - baseTime <= Integer.MAX_VALUE
+                && t1 - t0 >= 0) {
+            int[] offsets = new int[n];
+            for (int i = 0; i < n; i++) {
+                offsets[i] = (int) (ts[i] - baseTime);
+            }
+            this.timeOffsets = offsets;
+            this.timestamps = null;
+        } else {
+            this.timeOffsets = null;
+            this.timestamps = ts;
+        }
+    }
 
-        // 计算轨迹的 MBR 和时间范围
-        minX = points.stream().mapToDouble(TrajectoryPoint::getX).min().orElse(0.0);
-        minY = points.stream().mapToDouble(TrajectoryPoint::getY).min().orElse(0.0);
-        maxX = points.stream().mapToDouble(TrajectoryPoint::getX).max().orElse(0.0);
-        maxY = points.stream().mapToDouble(TrajectoryPoint::getY).max().orElse(0.0);
-        startTime = points.stream().mapToLong(TrajectoryPoint::getTimestamp).min().orElse(0L);
-        endTime = points.stream().mapToLong(TrajectoryPoint::getTimestamp).max().orElse(0L);
+    private static Columns columnsOf(List<TrajectoryPoint> points) {
+        int n = points.size();
+        Columns c = new Columns(n);
+        int i = 0;
+        for (TrajectoryPoint p : points) {
+            c.xs[i] = p.getX();
+            c.ys[i] = p.getY();
+            c.timestamps[i] = p.getTimestamp();
+            i++;
+        }
+        return c;
+    }
+
+    private static Columns copyOf(double[] xs, double[] ys, long[] timestamps, int size) {
+        if (size < 0 || xs.length < size || ys.length < size || timestamps.length < size) {
+            throw new IllegalArgumentException("Column arrays must hold at least size elements: " + size);
+        }
+        Columns c = new Columns(size);
+        System.arraycopy(xs, 0, c.xs, 0, size);
+        System.arraycopy(ys, 0, c.ys, 0, size);
+        System.arraycopy(timestamps, 0, c.timestamps, 0, size);
+        return c;
+    }
+
+    private static final class Columns {
+        final double[] xs;
+        final double[] ys;
+        final long[] timestamps;
+
+        Columns(int n) {
+            xs = new double[n];
+            ys = new double[n];
+            timestamps = new long[n];
+        }
     }
 
-    
     // Getters and helper methods (e.g., to compute MBR, length, etc.)
     public String getTrajectoryId() { return trajectoryId; }
-    public List<TrajectoryPoint> getPoints() { return points; }
+
+    /**
+     * 轨迹点的只读视图，每次 get 创建一个 TrajectoryPoint: 元素之间按值相等 (TrajectoryPoint.equals)
+     * 而不是同一对象; set / add / remove 抛出 UnsupportedOperationException
+     */
+    public List<TrajectoryPoint> getPoints() {
+        return new PointList();
+    }
+
+    // --- 列访问 ---
+    /** 点数 */
+    public int size() { return xs.length; }
+    public double getX(int i) { return xs[i]; }
+    public double getY(int i) { return ys[i]; }
+    public long getTimestamp(int i) {
+        return timeOffsets != null ? baseTime + timeOffsets[i] : timestamps[i];
+    }
+
+    /**
+     * 可复用的点视图 (flyweight)，初始位于第 0 个点
+     */
+    public PointView view() {
+        return new PointView();
+    }
 
     // Getters for MBR and time range
     public double getMinX() { return minX; }
@@ -37,9 +151,84 @@ public class Trajectory {
     public long getStartTime() { return startTime; }
     public long getEndTime() { return endTime; }
 
+    /**
+     * 非均匀划分使用的轨迹密度指标
+     */
+    public enum DensityMetric {
+        /** 轨迹点数 */
+        POINT_COUNT,
+        /** 轨迹折线长度 (坐标单位) */
+        LENGTH,
+        /** 轨迹 MBR 面积 (坐标单位的平方) */
+        AREA
+    }
+
     // 用于非均匀划分的轨迹密度指标 (Metric for Non-uniform Partition)
     public double calculateSpatialDensityMetric() {
-        // TODO: 实现轨迹长度、点数或面积作为密度指标的计算
-        return points.size(); // 简单示例：使用点数
+        return calculateSpatialDensityMetric(DensityMetric.POINT_COUNT);
+    }
+
+    public double calculateSpatialDensityMetric(DensityMetric metric) {
+        switch (metric) {
+            case POINT_COUNT:
+                return size();
+            case LENGTH:
+                return getLength();
+            case AREA:
+                return (maxX - minX) * (maxY - minY);
+            default:
+                throw new IllegalArgumentException("Unknown density metric: " + metric);
+        }
+    }
+
+    /**
+     * 轨迹折线长度 (相邻点之间平面距离之和, 坐标单位)
+     */
+    public double getLength() {
+        double length = 0;
+        for (int i = 1; i < xs.length; i++) {
+            double dx = xs[i] - xs[i - 1];
+            double dy = ys[i] - ys[i - 1];
+            length += Math.sqrt(dx * dx + dy * dy);
+        }
+        return length;
+    }
+
+    /**
+     * 轨迹点的可移动视图，读取的是所属轨迹的列数据
+     */
+    public final class PointView {
+        private int index;
+
+        /** 移动到第 i 个点 */
+        public PointView at(int i) {
+            if (i < 0 || i >= xs.length) {
+                throw new IndexOutOfBoundsException("index " + i + ", size " + xs.length);
+            }
+            index = i;
+            return this;
+        }
+
+        public int index() { return index; }
+        public double getX() { return xs[index]; }
+        public double getY() { return ys[index]; }
+        public long getTimestamp() { return Trajectory.this.getTimestamp(index); }
+
+        /** 拷贝为独立的 TrajectoryPoint */
+        public TrajectoryPoint toPoint() {
+            return new TrajectoryPoint(getX(), getY(), getTimestamp());
+        }
+    }
+
+    private final class PointList extends AbstractList<TrajectoryPoint> implements RandomAccess {
+        @Override
+        public TrajectoryPoint get(int i) {
+            return new TrajectoryPoint(xs[i], ys[i], getTimestamp(i));
+        }
+
+        @Override
+        public int size() {
+            return xs.length;
+        }
     }
-}
\ No newline at end of file
+}
@@ -18,4 +18,34 @@ public class TrajectoryPoint {
     public double getY() { return y; }
     public long getTimestamp() { return timestamp; }
 
-}
\ No newline at end of file
+    /**
+     * 值相等: 坐标与时间戳都相同 (坐标按 Double.compare 比较)。
+     * Trajectory.getPoints() 的每次 get 都会创建新对象, indexOf / contains 依赖此方法
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof TrajectoryPoint)) {
+            return false;
+        }
+        TrajectoryPoint other = (TrajectoryPoint) obj;
+        return Double.compare(x, other.x) == 0
+                && Double.compare(y, other.y) == 0
+                && timestamp == other.timestamp;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Double.hashCode(x);
+        result = 31 * result + Double.hashCode(y);
+        result = 31 * result + Long.hashCode(timestamp);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "TrajectoryPoint(" + x + ", " + y + ", " + timestamp + ")";
+    }
+}
@@ -0,0 +1,133 @@
+package com.bwywb.utils;
+
+/**
+ * 查表法 2D Hilbert 编码/解码器 (HilbertCodec2D)
+ * 基于 4 状态 (交换 × 取反) 的有限状态机，每步同时处理 x、y 各 4 位 (即编码中的 8 位)，
+ * 编码结果与 {@code SmallHilbertCurve.index(x, y)} (2 维) 完全一致。
+ * 状态转移表在类加载时由单步规则生成，编码/解码过程中不分配对象、不做浮点运算。
+ */
+public final class HilbertCodec2D {
+
+    /** 支持的最大阶数 (编码长度 2 * 31 = 62 位) */
+    public static final int MAX_BITS = 31;
+
+    private static final int CHUNK_BITS = 4;
+    private static final int CHUNK_MASK = (1 << CHUNK_BITS) - 1;
+
+    // 编码表: 下标 = state << 8 | xNibble << 4 | yNibble, 值 = nextState << 8 | code(8 位)
+    private static final char[] ENCODE = new char[4 << 8];
+    // 解码表: 下标 = state << 8 | code(8 位), 值 = nextState << 8 | xNibble << 4 | yNibble
+    private static final char[] DECODE = new char[4 << 8];
+
+    static {
+        for (int state = 0; state < 4; state++) {
+            for (int xn = 0; xn <= CHUNK_MASK; xn++) {
+                for (int yn = 0; yn <= CHUNK_MASK; yn++) {
+                    int s = state;
+                    int code = 0;
+                    for (int bit = CHUNK_BITS - 1; bit >= 0; bit--) {
+                        int bx = (xn >> bit) & 1;
+                        int by = (yn >> bit) & 1;
+                        // 当前状态的坐标变换: 先取反, 再交换
+                        if ((s & 2) != 0) {
+                            bx ^= 1;
+                            by ^= 1;
+                        }
+                        if ((s & 1) != 0) {
+                            int t = bx;
+                            bx = by;
+                            by = t;
+                        }
+                        code = (code << 2) | ((3 * bx) ^ by);
+                        // 下一层旋转: 下半部分交换坐标，右下象限同时取反
+                        if (by == 0) {
+                            if (bx == 1) {
+                                s ^= 2;
+                            }
+                            s ^= 1;
+                        }
+                    }
+                    ENCODE[state << 8 | xn << 4 | yn] = (char) (s << 8 | code);
+                    DECODE[state << 8 | code] = (char) (s << 8 | xn << 4 | yn);
+                }
+            }
+        }
+    }
+
+    private HilbertCodec2D() {
+        // prevent instantiation
+    }
+
+    /**
+     * 计算 2D Hilbert 编码
+     *
+     * @param x    x 坐标, 取值 [0, 2<sup>bits</sup>-1]
+     * @param y    y 坐标, 取值 [0, 2<sup>bits</sup>-1]
+     * @param bits 阶数 (每维位数), 取值 [1, 31]
+     * @return Hilbert 编码, 取值 [0, 2<sup>2*bits</sup>-1]
+     */
+    public static long encode(long x, long y, int bits) {
+        checkBits(bits);
+        int state = startState(bits);
+        long code = 0;
+        for (int shift = topShift(bits); shift >= 0; shift -= CHUNK_BITS) {
+            int xn = (int) (x >>> shift) & CHUNK_MASK;
+            int yn = (int) (y >>> shift) & CHUNK_MASK;
+            int e = ENCODE[state << 8 | xn << 4 | yn];
+            code = (code << 8) | (e & 0xFF);
+            state = e >>> 8;
+        }
+        return code;
+    }
+
+    /**
+     * 将 Hilbert 编码解码为 2D 坐标
+     *
+     * @param code  Hilbert 编码
+     * @param bits  阶数 (每维位数)
+     * @param point 长度至少为 2 的输出数组, point[0] = x, point[1] = y
+     */
+    public static void decode(long code, int bits, long[] point) {
+        checkBits(bits);
+        int state = startState(bits);
+        long x = 0;
+        long y = 0;
+        for (int shift = topShift(bits); shift >= 0; shift -= CHUNK_BITS) {
+            int d = DECODE[state << 8 | (int) (code >>> (2 * shift)) & 0xFF];
+            x = (x << CHUNK_BITS) | ((d >>> 4) & CHUNK_MASK);
+            y = (y << CHUNK_BITS) | (d & CHUNK_MASK);
+            state = d >>> 8;
+        }
+        point[0] = x;
+        point[1] = y;
+    }
+
+    /**
+     * 将 Hilbert 编码解码为 2D 坐标
+     *
+     * @return 新数组 [x, y]
+     */
+    public static long[] decode(long code, int bits) {
+        long[] point = new long[2];
+        decode(code, bits, point);
+        return point;
+    }
+
+    /**
+     * 高位补 0 到 4 的整数倍: 补出的 (0, 0) 位编码恒为 0，但每一位都会交换一次坐标，
+     * 因此补位数为奇数时从"已交换"状态出发，使真正的最高位处于与 SmallHilbertCurve 相同的状态。
+     */
+    private static int startState(int bits) {
+        return (CHUNK_BITS - bits % CHUNK_BITS) % CHUNK_BITS & 1;
+    }
+
+    private static int topShift(int bits) {
+        return (bits - 1) / CHUNK_BITS * CHUNK_BITS;
+    }
+
+    private static void checkBits(int bits) {
+        if (bits < 1 || bits > MAX_BITS) {
+            throw new IllegalArgumentException("bits must be between 1 and " + MAX_BITS);
+        }
+    }
+}
@@ -3,8 +3,13 @@ package com.github.davidmoten.hilbert.hilbert;
 import com.github.davidmoten.guavamini.Preconditions;
 import com.github.davidmoten.guavamini.annotations.VisibleForTesting;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Spliterator;
 import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 final class Box {
 
@@ -58,6 +63,64 @@ final class Box {
         }
     }
 
+    /**
+     * Returns a spliterator over the cells of the box. The same array is passed
+     * for every cell visited by one spliterator (or one worker of a parallel
+     * stream) so it must not be retained.
+     */
+    Spliterator<long[]> cellSpliterator() {
+        return new BoxSpliterator(new long[][] {mins(a, b)}, new long[][] {maxes(a, b)});
+    }
+
+    /**
+     * Returns a spliterator over the perimeter cells of the box, visiting the
+     * same cells as {@link #visitPerimeter(Consumer)}. The perimeter is split into
+     * disjoint faces which are split further as required. The same array is passed
+     * for every cell visited by one spliterator so it must not be retained.
+     */
+    Spliterator<long[]> perimeterSpliterator() {
+        long[] mins = mins(a, b);
+        long[] maxes = maxes(a, b);
+        List<long[]> faceMins = new ArrayList<>();
+        List<long[]> faceMaxes = new ArrayList<>();
+        for (int specialIndex = dimensions() - 1; specialIndex >= 0; specialIndex--) {
+            addFace(mins, maxes, specialIndex, mins[specialIndex], faceMins, faceMaxes);
+            if (mins[specialIndex] != maxes[specialIndex]) {
+                addFace(mins, maxes, specialIndex, maxes[specialIndex], faceMins, faceMaxes);
+            } else {
+                break;
+            }
+        }
+        return new BoxSpliterator(faceMins.toArray(new long[0][]), faceMaxes.toArray(new long[0][]));
+    }
+
+    // the face where ordinate specialIndex is fixed, ordinates to its left take all
+    // values and ordinates to its right only interior values (see visitPerimeter)
+    private static void addFace(long[] mins, long[] maxes, int specialIndex, long value,
+            List<long[]> faceMins, List<long[]> faceMaxes) {
+        long[] lo = Arrays.copyOf(mins, mins.length);
+        long[] hi = Arrays.copyOf(maxes, maxes.length);
+        lo[specialIndex] = value;
+        hi[specialIndex] = value;
+        for (int i = specialIndex + 1; i < lo.length; i++) {
+            if (mins[i] >= maxes[i] - 1) {
+                return;
+            }
+            lo[i] = mins[i] + 1;
+            hi[i] = maxes[i] - 1;
+        }
+        faceMins.add(lo);
+        faceMaxes.add(hi);
+    }
+
+    Stream<long[]> cells(boolean parallel) {
+        return StreamSupport.stream(cellSpliterator(), parallel);
+    }
+
+    Stream<long[]> perimeter(boolean parallel) {
+        return StreamSupport.stream(perimeterSpliterator(), parallel);
+    }
+
     @VisibleForTesting
     static void visitPerimeter(long[] mins, long[] maxes, long[] x, int specialIndex,
             Consumer<? super long[]> visitor) {
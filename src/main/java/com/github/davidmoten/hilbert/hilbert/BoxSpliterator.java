@@ -0,0 +1,181 @@
+package com.github.davidmoten.hilbert.hilbert;
+
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Visits every cell of a sequence of boxes. Splitting hands over whole boxes
+ * while more than one remains and otherwise halves the last box (or its part
+ * not yet visited), so visitation can run as a parallel stream or in a
+ * fork/join pool.
+ *
+ * <p>
+ * Each spliterator reuses a single cursor array which is passed to the action
+ * for every cell. Actions must not retain or modify it.
+ */
+// NotThreadSafe
+final class BoxSpliterator implements Spliterator<long[]> {
+
+    // boxes[index, fence) belong to this spliterator; the arrays are shared with
+    // spliterators split off earlier but each box is owned by exactly one of them
+    private final long[][] mins;
+    private final long[][] maxes;
+    private int index;
+    private int fence;
+
+    private final long[] cursor;
+    private boolean started;
+
+    /**
+     * @param mins  minimum corner of each box
+     * @param maxes maximum corner of each box (inclusive)
+     */
+    BoxSpliterator(long[][] mins, long[][] maxes) {
+        this(copy(mins), copy(maxes), 0, mins.length);
+    }
+
+    private BoxSpliterator(long[][] mins, long[][] maxes, int index, int fence) {
+        this.mins = mins;
+        this.maxes = maxes;
+        this.index = index;
+        this.fence = fence;
+        this.cursor = new long[mins.length == 0 ? 0 : mins[0].length];
+    }
+
+    private static long[][] copy(long[][] boxes) {
+        long[][] c = new long[boxes.length][];
+        for (int i = 0; i < boxes.length; i++) {
+            c[i] = Arrays.copyOf(boxes[i], boxes[i].length);
+        }
+        return c;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super long[]> action) {
+        while (index < fence) {
+            if (!started) {
+                System.arraycopy(mins[index], 0, cursor, 0, cursor.length);
+                started = true;
+                action.accept(cursor);
+                return true;
+            } else if (Box.equals(cursor, maxes[index])) {
+                index++;
+                started = false;
+            } else {
+                Box.addOne(cursor, mins[index], maxes[index]);
+                action.accept(cursor);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super long[]> action) {
+        while (index < fence) {
+            long[] min = mins[index];
+            long[] max = maxes[index];
+            if (!started) {
+                System.arraycopy(min, 0, cursor, 0, cursor.length);
+                action.accept(cursor);
+            }
+            while (!Box.equals(cursor, max)) {
+                Box.addOne(cursor, min, max);
+                action.accept(cursor);
+            }
+            index++;
+            started = false;
+        }
+    }
+
+    @Override
+    public Spliterator<long[]> trySplit() {
+        int from = started ? index + 1 : index;
+        if (fence - from >= (started ? 1 : 2)) {
+            // hand over the upper half of the boxes not yet started
+            int mid = (from + fence) >>> 1;
+            BoxSpliterator split = new BoxSpliterator(mins, maxes, mid, fence);
+            fence = mid;
+            return split;
+        } else if (!started && fence - index == 1) {
+            // halve the only box along its widest dimension
+            long[] min = mins[index];
+            long[] max = maxes[index];
+            int widest = 0;
+            for (int i = 1; i < min.length; i++) {
+                if (max[i] - min[i] > max[widest] - min[widest]) {
+                    widest = i;
+                }
+            }
+            if (max[widest] == min[widest]) {
+                return null;
+            }
+            long middle = min[widest] + (max[widest] - min[widest]) / 2;
+            long[] upperMin = Arrays.copyOf(min, min.length);
+            upperMin[widest] = middle + 1;
+            long[] upperMax = Arrays.copyOf(max, max.length);
+            max[widest] = middle;
+            return new BoxSpliterator(new long[][] {upperMin}, new long[][] {upperMax}, 0, 1);
+        } else if (started && fence - index == 1) {
+            // the cells after the cursor's slice of the first (slowest) ordinate form a box
+            long[] max = maxes[index];
+            long remaining = max[0] - cursor[0];
+            if (remaining <= 0) {
+                return null;
+            }
+            long middle = cursor[0] + (remaining + 1) / 2;
+            long[] upperMin = Arrays.copyOf(mins[index], cursor.length);
+            upperMin[0] = middle;
+            long[] upperMax = Arrays.copyOf(max, max.length);
+            max[0] = middle - 1;
+            return new BoxSpliterator(new long[][] {upperMin}, new long[][] {upperMax}, 0, 1);
+        } else {
+            return null;
+        }
+    }
+
+    @Override
+    public long estimateSize() {
+        long size = 0;
+        for (int i = index; i < fence; i++) {
+            size = saturatedAdd(size, cells(mins[i], maxes[i]));
+        }
+        if (started) {
+            size -= rank(cursor, mins[index], maxes[index]) + 1;
+        }
+        return size;
+    }
+
+    @Override
+    public int characteristics() {
+        return NONNULL | SIZED | SUBSIZED;
+    }
+
+    private static long cells(long[] min, long[] max) {
+        long n = 1;
+        for (int i = 0; i < min.length; i++) {
+            long extent = max[i] - min[i] + 1;
+            if (n > Long.MAX_VALUE / extent) {
+                return Long.MAX_VALUE;
+            }
+            n *= extent;
+        }
+        return n;
+    }
+
+    // position of x within the box in visiting order (last ordinate fastest)
+    private static long rank(long[] x, long[] min, long[] max) {
+        long r = 0;
+        for (int i = 0; i < x.length; i++) {
+            r = r * (max[i] - min[i] + 1) + (x[i] - min[i]);
+        }
+        return r;
+    }
+
+    private static long saturatedAdd(long a, long b) {
+        long c = a + b;
+        return c < 0 ? Long.MAX_VALUE : c;
+    }
+
+}
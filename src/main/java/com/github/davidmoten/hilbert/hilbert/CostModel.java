@@ -0,0 +1,68 @@
+package com.github.davidmoten.hilbert.hilbert;
+
+import com.github.davidmoten.guavamini.Preconditions;
+
+/**
+ * Estimates the cost of scanning a set of index ranges against a store sorted
+ * by Hilbert index. Every range costs one seek and every stored key within a
+ * range costs one key scan. Used by
+ * {@link SmallHilbertCurve#query(long[], long[], CostModel)} to decide which
+ * gaps between exact ranges are cheaper to scan through than to seek over.
+ */
+public interface CostModel {
+
+    /**
+     * Returns the cost of starting a new range scan.
+     *
+     * @return seek cost
+     */
+    double seekCost();
+
+    /**
+     * Returns the cost of reading one key during a range scan.
+     *
+     * @return per key scan cost
+     */
+    double scanCost();
+
+    /**
+     * Returns the expected number of stored keys with Hilbert index between
+     * {@code low} and {@code high} inclusive.
+     *
+     * @param low  low index (inclusive)
+     * @param high high index (inclusive)
+     * @return expected number of keys
+     */
+    double expectedKeys(long low, long high);
+
+    /**
+     * Returns a cost model for keys spread uniformly along the curve.
+     *
+     * @param seekCost     cost of starting a new range scan
+     * @param scanCost     cost of reading one key
+     * @param keysPerIndex expected number of stored keys per Hilbert index
+     * @return cost model
+     */
+    static CostModel uniform(double seekCost, double scanCost, double keysPerIndex) {
+        Preconditions.checkArgument(seekCost >= 0 && scanCost >= 0 && keysPerIndex >= 0,
+                "costs and density must be non-negative");
+        return new CostModel() {
+
+            @Override
+            public double seekCost() {
+                return seekCost;
+            }
+
+            @Override
+            public double scanCost() {
+                return scanCost;
+            }
+
+            @Override
+            public double expectedKeys(long low, long high) {
+                return keysPerIndex * ((double) high - low + 1);
+            }
+        };
+    }
+
+}
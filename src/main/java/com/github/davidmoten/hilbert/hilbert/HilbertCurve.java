@@ -47,6 +47,10 @@ public final class HilbertCurve {
         return new SmallHilbertCurve.Builder();
     }
 
+    public static MediumHilbertCurve.Builder medium() {
+        return new MediumHilbertCurve.Builder();
+    }
+
     /**
      * Builds a {@link HilbertCurve} instance.
      */
@@ -78,7 +82,33 @@ public final class HilbertCurve {
      */
     public BigInteger index(long... point) {
         Preconditions.checkArgument(point.length == dimensions);
-        return toIndex(transposedIndex(bits, point));
+        long[] x = transposedIndex(bits, point);
+        if (length <= 63) {
+            return BigInteger.valueOf(word(x, bits, 0));
+        } else if (length <= 128) {
+            return toBigInteger(word(x, bits, 1), word(x, bits, 0));
+        } else {
+            return toIndex(x);
+        }
+    }
+
+    /**
+     * Converts a point to its Hilbert curve index as a {@code long} without
+     * creating a {@link BigInteger}. Only available when
+     * {@code bits * dimensions} is at most 63.
+     * 
+     * @param point
+     *            an array of {@code long}. Each ordinate can be between 0 and
+     *            2<sup>bits</sup>-1.
+     * @return index in the range 0 to 2<sup>bits * dimensions</sup> - 1
+     * @throws IllegalArgumentException
+     *             if length of point array is not equal to the number of
+     *             dimensions or the index does not fit in a {@code long}
+     */
+    public long indexLong(long... point) {
+        Preconditions.checkArgument(length <= 63, "bits * dimensions must be 63 or less");
+        Preconditions.checkArgument(point.length == dimensions);
+        return word(transposedIndex(bits, point), bits, 0);
     }
 
     /**
@@ -95,21 +125,43 @@ public final class HilbertCurve {
      *             if index is negative
      */
     public long[] point(BigInteger index) {
-        Preconditions.checkNotNull(index);
-        Preconditions.checkArgument(index.signum() != -1, "index cannot be negative");
-        return transposedIndexToPoint(bits, transpose(index));
+        long[] x = new long[dimensions];
+        point(index, x);
+        return x;
     }
 
     public void point(BigInteger index, long[] x) {
         Preconditions.checkNotNull(index);
         Preconditions.checkArgument(index.signum() != -1, "index cannot be negative");
         Util.zero(x);
-        transpose(index, x);
+        int bitLength = index.bitLength();
+        if (bitLength <= 63) {
+            transpose(bits, 0, index.longValue(), x);
+        } else if (bitLength <= 128) {
+            transpose(bits, index.shiftRight(64).longValue(), index.longValue(), x);
+        } else {
+            transpose(index, x);
+        }
         transposedIndexToPoint(bits, x);
     }
 
+    /**
+     * Converts a {@code long} index to a point written into {@code x} without
+     * creating a {@link BigInteger}.
+     * 
+     * @param i
+     *            index along the Hilbert Curve from 0
+     * @param x
+     *            destination for the point, length must equal the number of
+     *            dimensions
+     * @throws IllegalArgumentException
+     *             if index is negative
+     */
     public void point(long i, long[] x) {
-        point(BigInteger.valueOf(i), x);
+        Preconditions.checkArgument(i >= 0, "index cannot be negative");
+        Util.zero(x);
+        transpose(bits, 0, i, x);
+        transposedIndexToPoint(bits, x);
     }
 
     /**
@@ -124,7 +176,9 @@ public final class HilbertCurve {
      *             if index is negative
      */
     public long[] point(long index) {
-        return point(BigInteger.valueOf(index));
+        long[] x = new long[dimensions];
+        point(index, x);
+        return x;
     }
 
     /**
@@ -165,6 +219,74 @@ public final class HilbertCurve {
         }
     }
 
+    // transposes the index given as its high and low 64 bits, x must be zeroed
+    static void transpose(int bits, long high, long low, long[] x) {
+        // bit idx of the index is bit idx / n of x[length - idx - 1 (mod n)]
+        int n = x.length;
+        int length = bits * n;
+        int dim = n - 1;
+        long mask = 1;
+        for (int idx = 0; idx < length && idx < 128; idx++) {
+            long word = idx < 64 ? low : high;
+            if ((word & (1L << (idx & 63))) != 0) {
+                x[dim] |= mask;
+            }
+            if (dim == 0) {
+                dim = n - 1;
+                mask <<= 1;
+            } else {
+                dim--;
+            }
+        }
+    }
+
+    /**
+     * Returns the bits {@code [64 * word, 64 * word + 64)} of the index whose
+     * transposed form is given, i.e. the interleaving of {@link #toIndex(long...)}
+     * one {@code long} at a time.
+     * 
+     * @param transposedIndex
+     *            transposed index
+     * @param bits
+     *            depth of the Hilbert curve
+     * @param word
+     *            0 for the low 64 bits, 1 for the next 64 bits and so on
+     * @return the requested bits of the index
+     */
+    static long word(long[] transposedIndex, int bits, int word) {
+        int n = transposedIndex.length;
+        int from = 64 * word;
+        int to = from + 64;
+        long w = 0;
+        int bIndex = bits * n - 1;
+        long mask = 1L << (bits - 1);
+        for (int i = 0; i < bits; i++) {
+            if (bIndex - n + 1 >= to) {
+                // no bit of this level falls in the word
+                bIndex -= n;
+            } else {
+                for (int j = 0; j < n; j++) {
+                    if (bIndex >= from && bIndex < to && (transposedIndex[j] & mask) != 0) {
+                        w |= 1L << (bIndex - from);
+                    }
+                    bIndex--;
+                }
+            }
+            mask >>>= 1;
+        }
+        return w;
+    }
+
+    // the non-negative BigInteger with the given high and low 64 bits
+    static BigInteger toBigInteger(long high, long low) {
+        byte[] b = new byte[16];
+        for (int i = 0; i < 8; i++) {
+            b[7 - i] = (byte) (high >>> (8 * i));
+            b[15 - i] = (byte) (low >>> (8 * i));
+        }
+        return new BigInteger(1, b);
+    }
+
     /**
      * <p>
      * Given the axes (coordinates) of a point in N-Dimensional space, find the
@@ -185,9 +307,22 @@ public final class HilbertCurve {
      */
     @VisibleForTesting
     static long[] transposedIndex(int bits, long... point) {
+        return transposedIndexInPlace(bits, Arrays.copyOf(point, point.length));
+    }
+
+    /**
+     * As {@link #transposedIndex(int, long...)} but mutates and returns the
+     * supplied array rather than working on a copy (to avoid allocation).
+     * 
+     * @param bits
+     *            depth of the Hilbert curve
+     * @param x
+     *            point in N-space, replaced by its transposed index
+     * @return x
+     */
+    static long[] transposedIndexInPlace(int bits, long[] x) {
         final long M = 1L << (bits - 1);
-        final int n = point.length; // n: Number of dimensions
-        final long[] x = Arrays.copyOf(point, n);
+        final int n = x.length; // n: Number of dimensions
         long p, q, t;
         int i;
         // Inverse undo
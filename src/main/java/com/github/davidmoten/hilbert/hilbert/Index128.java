@@ -0,0 +1,206 @@
+package com.github.davidmoten.hilbert.hilbert;
+
+import com.github.davidmoten.guavamini.Preconditions;
+
+import java.io.Serializable;
+import java.math.BigInteger;
+
+/**
+ * An immutable unsigned 128-bit Hilbert index held as two {@code long}s. Used by
+ * {@link MediumHilbertCurve} for curves where {@code bits * dimensions} is
+ * between 64 and 128.
+ *
+ * <p>
+ * Ordering is numeric (unsigned) and agrees with the unsigned lexicographic
+ * ordering of {@link #toBytes()}, so indexes can be used directly as keys of a
+ * byte-ordered store.
+ */
+public final class Index128 implements Comparable<Index128>, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final int BYTES = 16;
+
+    public static final Index128 ZERO = new Index128(0, 0);
+
+    private final long mostSignificantBits;
+    private final long leastSignificantBits;
+
+    private Index128(long mostSignificantBits, long leastSignificantBits) {
+        this.mostSignificantBits = mostSignificantBits;
+        this.leastSignificantBits = leastSignificantBits;
+    }
+
+    /**
+     * Returns the index with the given high and low 64 bits (both treated as
+     * unsigned).
+     *
+     * @param mostSignificantBits  bits 64 to 127
+     * @param leastSignificantBits bits 0 to 63
+     * @return index
+     */
+    public static Index128 of(long mostSignificantBits, long leastSignificantBits) {
+        if (mostSignificantBits == 0 && leastSignificantBits == 0) {
+            return ZERO;
+        }
+        return new Index128(mostSignificantBits, leastSignificantBits);
+    }
+
+    /**
+     * Returns the index with the given non-negative value.
+     *
+     * @param value non-negative value
+     * @return index
+     */
+    public static Index128 of(long value) {
+        Preconditions.checkArgument(value >= 0, "value cannot be negative");
+        return of(0, value);
+    }
+
+    /**
+     * Returns the index with the given value.
+     *
+     * @param value value between 0 and 2<sup>128</sup>-1
+     * @return index
+     * @throws IllegalArgumentException if value is negative or does not fit in
+     *                                  128 bits
+     */
+    public static Index128 of(BigInteger value) {
+        Preconditions.checkNotNull(value);
+        Preconditions.checkArgument(value.signum() >= 0 && value.bitLength() <= 128,
+                "value must be between 0 and 2^128 - 1");
+        return of(value.shiftRight(64).longValue(), value.longValue());
+    }
+
+    /**
+     * Reads an index written by {@link #writeTo(byte[], int)}.
+     *
+     * @param bytes  source
+     * @param offset position of the first (most significant) byte
+     * @return index
+     */
+    public static Index128 readFrom(byte[] bytes, int offset) {
+        return of(readLong(bytes, offset), readLong(bytes, offset + 8));
+    }
+
+    public long mostSignificantBits() {
+        return mostSignificantBits;
+    }
+
+    public long leastSignificantBits() {
+        return leastSignificantBits;
+    }
+
+    /**
+     * Returns this index plus one.
+     *
+     * @return next index
+     * @throws ArithmeticException if this is the maximum 128-bit value
+     */
+    public Index128 next() {
+        if (leastSignificantBits == -1L) {
+            if (mostSignificantBits == -1L) {
+                throw new ArithmeticException("128-bit index overflow");
+            }
+            return of(mostSignificantBits + 1, 0);
+        }
+        return of(mostSignificantBits, leastSignificantBits + 1);
+    }
+
+    /**
+     * Returns this index minus one.
+     *
+     * @return previous index
+     * @throws ArithmeticException if this is zero
+     */
+    public Index128 previous() {
+        if (leastSignificantBits == 0) {
+            if (mostSignificantBits == 0) {
+                throw new ArithmeticException("128-bit index underflow");
+            }
+            return of(mostSignificantBits - 1, -1L);
+        }
+        return of(mostSignificantBits, leastSignificantBits - 1);
+    }
+
+    public BigInteger toBigInteger() {
+        return HilbertCurve.toBigInteger(mostSignificantBits, leastSignificantBits);
+    }
+
+    /**
+     * Returns the 16 byte big-endian representation of this index.
+     *
+     * @return bytes
+     */
+    public byte[] toBytes() {
+        byte[] b = new byte[BYTES];
+        writeTo(b, 0);
+        return b;
+    }
+
+    /**
+     * Writes the 16 byte big-endian representation of this index.
+     *
+     * @param bytes  destination
+     * @param offset position of the first (most significant) byte
+     */
+    public void writeTo(byte[] bytes, int offset) {
+        writeLong(bytes, offset, mostSignificantBits);
+        writeLong(bytes, offset + 8, leastSignificantBits);
+    }
+
+    @Override
+    public int compareTo(Index128 o) {
+        return compare(mostSignificantBits, leastSignificantBits, o.mostSignificantBits,
+                o.leastSignificantBits);
+    }
+
+    /**
+     * Compares two unsigned 128-bit values given as high and low words.
+     */
+    static int compare(long aHigh, long aLow, long bHigh, long bLow) {
+        int c = Long.compareUnsigned(aHigh, bHigh);
+        return c != 0 ? c : Long.compareUnsigned(aLow, bLow);
+    }
+
+    @Override
+    public int hashCode() {
+        long h = mostSignificantBits * 31 + leastSignificantBits;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (!(obj instanceof Index128))
+            return false;
+        Index128 other = (Index128) obj;
+        return mostSignificantBits == other.mostSignificantBits
+                && leastSignificantBits == other.leastSignificantBits;
+    }
+
+    @Override
+    public String toString() {
+        if (mostSignificantBits == 0 && leastSignificantBits >= 0) {
+            return Long.toString(leastSignificantBits);
+        }
+        return toBigInteger().toString();
+    }
+
+    private static void writeLong(byte[] bytes, int offset, long value) {
+        for (int i = 7; i >= 0; i--) {
+            bytes[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    private static long readLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (bytes[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+}
@@ -0,0 +1,298 @@
+package com.github.davidmoten.hilbert.hilbert;
+
+import com.github.davidmoten.guavamini.Preconditions;
+
+import java.io.Serializable;
+
+/**
+ * Converts between 128-bit Hilbert indexes ({@link Index128}) and N-dimensional
+ * points, for curves where {@code bits * dimensions} is at most 128. Fills the
+ * gap between {@link SmallHilbertCurve} (at most 63 bits, {@code long} indexes)
+ * and {@link HilbertCurve} ({@code BigInteger} indexes), e.g. 4 dimensions of 24
+ * bits or 3 dimensions of 32 bits, without allocating a {@code BigInteger} per
+ * conversion.
+ */
+public final class MediumHilbertCurve implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int DEFAULT_BUFFER_SIZE = 1024;
+
+    private final int bits;
+    private final int dimensions;
+    private final int length;
+
+    private MediumHilbertCurve(int bits, int dimensions) {
+        this.bits = bits;
+        this.dimensions = dimensions;
+        this.length = bits * dimensions;
+    }
+
+    public int bits() {
+        return bits;
+    }
+
+    public int dimensions() {
+        return dimensions;
+    }
+
+    /**
+     * Converts a point to its Hilbert curve index.
+     *
+     * @param point an array of {@code long}. Each coordinate can be between 0 and
+     *              2<sup>bits</sup>-1.
+     * @return index in the range 0 to 2<sup>bits * dimensions</sup> - 1
+     * @throws IllegalArgumentException if length of point array is not equal to the
+     *                                  number of dimensions.
+     */
+    public Index128 index(long... point) {
+        Preconditions.checkArgument(point.length == dimensions);
+        long[] x = HilbertCurve.transposedIndex(bits, point);
+        return Index128.of(HilbertCurve.word(x, bits, 1), HilbertCurve.word(x, bits, 0));
+    }
+
+    /**
+     * Converts a batch of points stored interleaved to their Hilbert curve
+     * indexes without allocating per point. Index {@code i} is written as its high
+     * 64 bits to {@code indexes[2 * i]} and its low 64 bits to
+     * {@code indexes[2 * i + 1]}.
+     *
+     * @param points  interleaved ordinates, {@code dimensions} values per point
+     * @param indexes destination for the indexes, two values per point
+     * @param count   number of points to convert
+     * @throws IllegalArgumentException if an array is too short for count points
+     */
+    public void index(long[] points, long[] indexes, int count) {
+        Preconditions.checkArgument(count >= 0 && points.length >= count * dimensions
+                && indexes.length >= 2 * count, "arrays must hold at least count points");
+        long[] x = new long[dimensions];
+        for (int i = 0, offset = 0; i < count; i++, offset += dimensions) {
+            System.arraycopy(points, offset, x, 0, dimensions);
+            HilbertCurve.transposedIndexInPlace(bits, x);
+            indexes[2 * i] = HilbertCurve.word(x, bits, 1);
+            indexes[2 * i + 1] = HilbertCurve.word(x, bits, 0);
+        }
+    }
+
+    /**
+     * Converts an index (distance along the Hilbert Curve from 0) to a point.
+     *
+     * @param index index along the Hilbert Curve from 0
+     * @return array of longs being the point
+     */
+    public long[] point(Index128 index) {
+        long[] x = new long[dimensions];
+        point(index, x);
+        return x;
+    }
+
+    public void point(Index128 index, long[] x) {
+        Preconditions.checkNotNull(index);
+        point(index.mostSignificantBits(), index.leastSignificantBits(), x);
+    }
+
+    /**
+     * Converts the index with the given high and low 64 bits to a point written
+     * into {@code x}.
+     *
+     * @param msb high 64 bits of the index
+     * @param lsb low 64 bits of the index
+     * @param x   destination for the point
+     */
+    public void point(long msb, long lsb, long[] x) {
+        Util.zero(x);
+        HilbertCurve.transpose(bits, msb, lsb, x);
+        HilbertCurve.transposedIndexToPoint(bits, x);
+    }
+
+    public long maxOrdinate() {
+        return (1L << bits) - 1;
+    }
+
+    public Index128 maxIndex() {
+        return Index128.of(length <= 64 ? 0 : -1L >>> (128 - length),
+                length >= 64 ? -1L : (1L << length) - 1);
+    }
+
+    /////////////////////////////////////////////////
+    // Query support
+    ////////////////////////////////////////////////
+
+    /**
+     * Returns index ranges exactly covering the region bounded by {@code a} and
+     * {@code b}, in increasing order and without overlap. The ranges are found by
+     * descending the curve's tree of sub-cubes as in
+     * {@link SmallHilbertCurve#queryRecursive(long[], long[])}.
+     *
+     * @param a one vertex of the region
+     * @param b the opposing vertex to a
+     * @return ranges
+     */
+    public Ranges128 query(long[] a, long[] b) {
+        return query(a, b, 0, 0);
+    }
+
+    /**
+     * Returns index ranges covering the region bounded by {@code a} and {@code b}.
+     * The index ranges may cover a larger region than the search box because the
+     * set of exact covering ranges will have been reduced by joining ranges with
+     * minimal gaps. The buffer size used by this method is 1024.
+     *
+     * @param a         one vertex of the region
+     * @param b         the opposing vertex to a
+     * @param maxRanges the maximum number of ranges to be returned. If 0 then all
+     *                  ranges are returned.
+     * @return ranges
+     */
+    public Ranges128 query(long[] a, long[] b, int maxRanges) {
+        if (maxRanges == 0) {
+            return query(a, b, 0, 0);
+        } else {
+            return query(a, b, maxRanges, Math.max(DEFAULT_BUFFER_SIZE, maxRanges));
+        }
+    }
+
+    /**
+     * As {@link SmallHilbertCurve#query(long[], long[], int, int)} for 128-bit
+     * indexes.
+     *
+     * @param a          one vertex of the region
+     * @param b          the opposing vertex to a
+     * @param maxRanges  the maximum number of ranges to be returned. If 0 then all
+     *                   ranges are returned.
+     * @param bufferSize the buffer size of ranges to use. If 0 is passed to
+     *                   bufferSize then all ranges will be buffered before
+     *                   shrinking to maxRanges.
+     * @return ranges
+     */
+    public Ranges128 query(long[] a, long[] b, int maxRanges, int bufferSize) {
+        Preconditions.checkArgument(a.length == dimensions && b.length == dimensions);
+        Preconditions.checkArgument(maxRanges >= 0);
+        Preconditions.checkArgument(bufferSize >= maxRanges,
+                "bufferSize must be greater than or equal to maxRanges");
+        if (maxRanges == 0) {
+            // unlimited
+            bufferSize = 0;
+        }
+        long[] mins = new long[dimensions];
+        long[] maxes = new long[dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            mins[i] = Math.min(a[i], b[i]);
+            maxes[i] = Math.max(a[i], b[i]);
+        }
+        RangeCollector collector = new RangeCollector(new Ranges128(bufferSize));
+        descend(mins, maxes, 0, 0, 0, new long[dimensions], collector);
+        collector.flush();
+        Ranges128 ranges = collector.ranges;
+        if (ranges.size() <= maxRanges) {
+            return ranges;
+        } else {
+            Ranges128 r = new Ranges128(maxRanges);
+            for (int i = 0; i < ranges.size(); i++) {
+                r.add(ranges.lowMsb(i), ranges.lowLsb(i), ranges.highMsb(i), ranges.highLsb(i));
+            }
+            return r;
+        }
+    }
+
+    private void descend(long[] mins, long[] maxes, long msb, long lsb, int level, long[] x,
+            RangeCollector collector) {
+        long side = 1L << (bits - level);
+        point(msb, lsb, x);
+        boolean contained = true;
+        for (int i = 0; i < dimensions; i++) {
+            long nodeMin = x[i] & -side;
+            long nodeMax = nodeMin + side - 1;
+            if (nodeMax < mins[i] || nodeMin > maxes[i]) {
+                return;
+            }
+            contained &= nodeMin >= mins[i] && nodeMax <= maxes[i];
+        }
+        // the sub-cube covers the indexes sharing the top level * dimensions bits;
+        // its low index has the remaining bits clear so children are found by or-ing
+        int shift = dimensions * (bits - level);
+        if (contained) {
+            collector.add(msb, lsb, msb | spanMsb(shift), lsb | spanLsb(shift));
+            return;
+        }
+        int childShift = shift - dimensions;
+        int children = 1 << dimensions;
+        for (long c = 0; c < children; c++) {
+            long childMsb = msb | (childShift >= 64 ? c << (childShift - 64)
+                    : childShift == 0 ? 0 : c >>> (64 - childShift));
+            long childLsb = lsb | (childShift >= 64 ? 0 : c << childShift);
+            descend(mins, maxes, childMsb, childLsb, level + 1, x, collector);
+        }
+    }
+
+    // high and low words of 2^shift - 1
+    private static long spanMsb(int shift) {
+        return shift <= 64 ? 0 : -1L >>> (128 - shift);
+    }
+
+    private static long spanLsb(int shift) {
+        return shift >= 64 ? -1L : (1L << shift) - 1;
+    }
+
+    // joins adjacent ranges (emitted in increasing order) before adding them
+    private static final class RangeCollector {
+        final Ranges128 ranges;
+        private boolean pending;
+        private long lowMsb;
+        private long lowLsb;
+        private long highMsb;
+        private long highLsb;
+
+        RangeCollector(Ranges128 ranges) {
+            this.ranges = ranges;
+        }
+
+        void add(long loMsb, long loLsb, long hiMsb, long hiLsb) {
+            // successor of the pending high bound
+            long nextLsb = highLsb + 1;
+            long nextMsb = nextLsb == 0 ? highMsb + 1 : highMsb;
+            if (pending && loMsb == nextMsb && loLsb == nextLsb) {
+                highMsb = hiMsb;
+                highLsb = hiLsb;
+            } else {
+                flush();
+                pending = true;
+                lowMsb = loMsb;
+                lowLsb = loLsb;
+                highMsb = hiMsb;
+                highLsb = hiLsb;
+            }
+        }
+
+        void flush() {
+            if (pending) {
+                ranges.add(lowMsb, lowLsb, highMsb, highLsb);
+                pending = false;
+            }
+        }
+    }
+
+    public static final class Builder {
+        private int bits;
+
+        Builder() {
+            // private instantiation
+        }
+
+        public Builder bits(int bits) {
+            Preconditions.checkArgument(bits > 0, "bits must be greater than zero");
+            Preconditions.checkArgument(bits < 64, "bits must be 63 or less");
+            this.bits = bits;
+            return this;
+        }
+
+        public MediumHilbertCurve dimensions(int dimensions) {
+            Preconditions.checkArgument(dimensions > 1, "dimensions must be at least 2");
+            Preconditions.checkArgument(bits * dimensions <= 128,
+                    "bits * dimensions must be less than or equal to 128");
+            return new MediumHilbertCurve(bits, dimensions);
+        }
+
+    }
+
+}
@@ -0,0 +1,118 @@
+package com.github.davidmoten.hilbert.hilbert;
+
+/**
+ * The ranges chosen by a cost-based query together with the estimates that
+ * justified them. Over-coverage is the part of the ranges lying outside the
+ * queried region, i.e. the gaps that were joined instead of seeked over.
+ */
+public final class QueryPlan {
+
+    private final Ranges ranges;
+    private final int exactRanges;
+    private final long exactCoverage;
+    private final double expectedKeys;
+    private final double expectedFalsePositives;
+    private final double estimatedCost;
+
+    QueryPlan(Ranges ranges, int exactRanges, long exactCoverage, double expectedKeys,
+            double expectedFalsePositives, double estimatedCost) {
+        this.ranges = ranges;
+        this.exactRanges = exactRanges;
+        this.exactCoverage = exactCoverage;
+        this.expectedKeys = expectedKeys;
+        this.expectedFalsePositives = expectedFalsePositives;
+        this.estimatedCost = estimatedCost;
+    }
+
+    /**
+     * Returns a plan with no ranges, for a region known to contain no indexes.
+     *
+     * @return empty plan
+     */
+    public static QueryPlan empty() {
+        return new QueryPlan(new Ranges(0), 0, 0, 0, 0, 0);
+    }
+
+    /**
+     * Returns the ranges to scan.
+     *
+     * @return ranges in increasing order
+     */
+    public Ranges ranges() {
+        return ranges;
+    }
+
+    /**
+     * Returns the number of ranges exactly covering the region before joining.
+     *
+     * @return exact range count
+     */
+    public int exactRanges() {
+        return exactRanges;
+    }
+
+    /**
+     * Returns the number of indexes inside the queried region.
+     *
+     * @return exact coverage
+     */
+    public long exactCoverage() {
+        return exactCoverage;
+    }
+
+    /**
+     * Returns the number of indexes covered by the chosen ranges.
+     *
+     * @return coverage
+     */
+    public long coverage() {
+        return ranges.coverage();
+    }
+
+    /**
+     * Returns the number of indexes covered by the chosen ranges that lie outside
+     * the queried region.
+     *
+     * @return over-coverage in indexes
+     */
+    public long overCoverage() {
+        return coverage() - exactCoverage;
+    }
+
+    /**
+     * Returns the expected number of keys the chosen ranges will scan.
+     *
+     * @return expected keys scanned
+     */
+    public double expectedKeys() {
+        return expectedKeys;
+    }
+
+    /**
+     * Returns the expected number of scanned keys lying outside the queried
+     * region.
+     *
+     * @return expected false positives
+     */
+    public double expectedFalsePositives() {
+        return expectedFalsePositives;
+    }
+
+    /**
+     * Returns the estimated cost of scanning the chosen ranges.
+     *
+     * @return estimated cost
+     */
+    public double estimatedCost() {
+        return estimatedCost;
+    }
+
+    @Override
+    public String toString() {
+        return "QueryPlan [ranges=" + ranges.size() + ", exactRanges=" + exactRanges
+                + ", coverage=" + coverage() + ", overCoverage=" + overCoverage()
+                + ", expectedKeys=" + expectedKeys + ", expectedFalsePositives="
+                + expectedFalsePositives + ", estimatedCost=" + estimatedCost + "]";
+    }
+
+}
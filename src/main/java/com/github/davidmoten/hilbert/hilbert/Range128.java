@@ -0,0 +1,56 @@
+package com.github.davidmoten.hilbert.hilbert;
+
+import com.github.davidmoten.guavamini.Preconditions;
+
+/**
+ * An inclusive range of {@link Index128} values.
+ */
+public final class Range128 {
+
+    private final Index128 low;
+    private final Index128 high;
+
+    private Range128(Index128 low, Index128 high) {
+        this.low = low;
+        this.high = high;
+    }
+
+    public static Range128 create(Index128 low, Index128 high) {
+        Preconditions.checkNotNull(low);
+        Preconditions.checkNotNull(high);
+        return low.compareTo(high) <= 0 ? new Range128(low, high) : new Range128(high, low);
+    }
+
+    public Index128 low() {
+        return low;
+    }
+
+    public Index128 high() {
+        return high;
+    }
+
+    public boolean contains(Index128 value) {
+        return low.compareTo(value) <= 0 && value.compareTo(high) <= 0;
+    }
+
+    @Override
+    public String toString() {
+        return "Range128 [low=" + low + ", high=" + high + "]";
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * low.hashCode() + high.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (!(obj instanceof Range128))
+            return false;
+        Range128 other = (Range128) obj;
+        return low.equals(other.low) && high.equals(other.high);
+    }
+
+}
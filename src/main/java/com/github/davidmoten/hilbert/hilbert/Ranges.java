@@ -3,124 +3,255 @@ package com.github.davidmoten.hilbert.hilbert;
 import com.github.davidmoten.guavamini.Lists;
 import com.github.davidmoten.guavamini.Preconditions;
 
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
-import java.util.TreeSet;
+import java.util.NoSuchElementException;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
 /**
  * Adds ranges to a collection and combines ranges optimally when the internal
  * buffer is exceeded.
- * 
+ *
+ * <p>
+ * Ranges are held in primitive arrays of lows and highs. When a buffer size is
+ * set the ranges form a linked list over array slots and the gaps between
+ * neighbouring ranges are kept in an indexed min-heap so that the pair with the
+ * smallest gap (the lowest such pair on ties) is joined in O(log n) time.
+ * {@link Range} objects are only created when iterating.
  */
 // NotThreadSafe
 public class Ranges implements Iterable<Range> {
 
+    private static final int NONE = -1;
+
     private final int bufferSize;
 
-    // set is ordered by increasing distance to next node (Node is a linked list)
-    private final TreeSet<Node> set;
+    // slot storage; when bufferSize == 0 slots are always in increasing order
+    private long[] lows;
+    private long[] highs;
+
+    // only used when bufferSize > 0: linked list over slots in increasing order
+    private int[] next;
+    private int head = NONE;
+    private int tail = NONE;
+    private int free = NONE; // the slot released by the last join
+
+    // indexed min-heap of slots keyed by the gap to the next range
+    private long[] gaps;
+    private int[] heap;
+    private int[] heapPosition;
+    private int heapSize;
+
+    // true when slot order no longer matches range order (after a join)
+    private boolean fragmented;
 
-    // mutable
-    private Node ranges; // in descending order of ranges e.g. Range(5,7) -> Range(1,3)
-    private Node last;
     private int count; // count of items in ranges
 
     public Ranges(int bufferSize) {
         Preconditions.checkArgument(bufferSize >= 0);
         this.bufferSize = bufferSize;
-        this.ranges = null;
-        if (bufferSize == 0) {
-            // save on allocations
-            this.set = null;
-        } else {
-            this.set = new TreeSet<>();
+        // the buffer temporarily holds one extra range before joining
+        int capacity = bufferSize == 0 ? 16 : bufferSize + 1;
+        this.lows = new long[capacity];
+        this.highs = new long[capacity];
+        if (bufferSize > 0) {
+            this.next = new int[capacity];
+            this.gaps = new long[capacity];
+            this.heap = new int[capacity];
+            this.heapPosition = new int[capacity];
         }
     }
 
     public Ranges add(long low, long high) {
         Preconditions.checkArgument(low <= high);
-        return add(Range.create(low, high));
+        Preconditions.checkArgument(count == 0 || highs[tail()] < low,
+                "ranges must be added in increasing order and without overlap");
+        if (bufferSize == 0) {
+            if (count == lows.length) {
+                lows = Arrays.copyOf(lows, count * 2);
+                highs = Arrays.copyOf(highs, count * 2);
+            }
+            lows[count] = low;
+            highs[count] = high;
+            count++;
+            return this;
+        }
+        // a free slot always exists: count <= bufferSize before adding
+        int slot = fragmented ? free : count;
+        lows[slot] = low;
+        highs[slot] = high;
+        next[slot] = NONE;
+        heapPosition[slot] = NONE;
+        if (tail == NONE) {
+            head = slot;
+        } else {
+            next[tail] = slot;
+            // the gap of the old tail is now known
+            gaps[tail] = low - highs[tail];
+            heapInsert(tail);
+        }
+        tail = slot;
+        count++;
+        if (count > bufferSize) {
+            joinSmallestGap();
+        }
+        return this;
     }
 
     public Ranges add(Range r) {
-        Preconditions.checkArgument(ranges == null || ranges.value.high() < r.low(),
-                "ranges must be added in increasing order and without overlap");
-        Node node = new Node(r);
-        count++;
-        if (ranges == null) {
-            ranges = node;
-            last = node;
-        } else if (bufferSize == 0) {
-            node.setNext(ranges);
-            ranges = node;
-        } else {
-            // and set new head and recalculate distance for ranges
-            node.setNext(ranges);
-
-            // add old head to set (now that the distanceToPrevious has been calculated)
-            set.add(ranges);
-
-            ranges = node;
-
-            if (count > bufferSize) {
-                // remove node from set with least distance to next node
-                Node first = set.pollFirst();
-
-                // replace that node in linked list (ranges) with a new Node
-                // that has the concatenation of that node with previous node's range
-                // also remove its predecessor. We dont' need to remove the predecessor from the
-                // set because it's distanceToPrevious will remain the same
-
-                // first.previous will not be null because distance was present to be in set
-                Range joined = first.value.join(first.previous().value);
-                set.remove(first.previous());
-
-                Node n = new Node(joined);
-                // link and recalculate distance (won't change because the lower bound of the
-                // new ranges is the same as the lower bound of the range of first)
-                if (first.next() != null) {
-                    n.setNext(first.next());
-                } else {
-                    // first is last in linked list so update last
-                    last = n;
-                }
-                // link and calculate the distance for n
-                Node firstPrevious = first.previous();
-                if (firstPrevious == ranges) {
-                    ranges = n;
-                } else {
-                    first.previous().previous().setNext(n);
-                }
-                set.add(n);
+        return add(r.low(), r.high());
+    }
+
+    /**
+     * Returns the low bound of the i-th range in increasing order.
+     *
+     * @param i index of the range, 0 &lt;= i &lt; size()
+     * @return low bound
+     */
+    public long low(int i) {
+        checkIndex(i);
+        compact();
+        return lows[i];
+    }
+
+    /**
+     * Returns the high bound (inclusive) of the i-th range in increasing order.
+     *
+     * @param i index of the range, 0 &lt;= i &lt; size()
+     * @return high bound
+     */
+    public long high(int i) {
+        checkIndex(i);
+        compact();
+        return highs[i];
+    }
+
+    /**
+     * Returns true if and only if one of the ranges contains the given value.
+     *
+     * @param value value to test
+     * @return true if value is covered by a range
+     */
+    public boolean contains(long value) {
+        compact();
+        int i = Arrays.binarySearch(highs, 0, count, value);
+        if (i >= 0) {
+            return true;
+        }
+        // first range with high > value
+        i = -i - 1;
+        return i < count && lows[i] <= value;
+    }
 
-                // clear pointers from first to help gc out
-                // there new gen to old gen promotion can cause problems
-                first.clearForGc();
+    /**
+     * Returns the number of values covered by the ranges.
+     *
+     * @return total length of the ranges
+     */
+    public long coverage() {
+        compact();
+        long total = 0;
+        for (int i = 0; i < count; i++) {
+            total += highs[i] - lows[i] + 1;
+        }
+        return total;
+    }
 
-                // we have reduced number of nodes in list so reduce count
-                count--;
+    /**
+     * Returns the ranges covering every value covered by this or by
+     * {@code other}. Overlapping and adjacent ranges are joined. The result has
+     * an unlimited buffer.
+     *
+     * @param other ranges to combine with
+     * @return union of the two range sets
+     */
+    public Ranges union(Ranges other) {
+        compact();
+        other.compact();
+        Ranges result = new Ranges(0);
+        int i = 0;
+        int j = 0;
+        long low = 0;
+        long high = 0;
+        boolean pending = false;
+        while (i < count || j < other.count) {
+            long lo;
+            long hi;
+            if (j == other.count || (i < count && lows[i] <= other.lows[j])) {
+                lo = lows[i];
+                hi = highs[i];
+                i++;
+            } else {
+                lo = other.lows[j];
+                hi = other.highs[j];
+                j++;
+            }
+            if (pending && (high == Long.MAX_VALUE || lo <= high + 1)) {
+                high = Math.max(high, hi);
+            } else {
+                if (pending) {
+                    result.add(low, high);
+                }
+                low = lo;
+                high = hi;
+                pending = true;
             }
         }
-        return this;
+        if (pending) {
+            result.add(low, high);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the ranges covering every value covered by both this and
+     * {@code other}. The result has an unlimited buffer.
+     *
+     * @param other ranges to intersect with
+     * @return intersection of the two range sets
+     */
+    public Ranges intersection(Ranges other) {
+        compact();
+        other.compact();
+        Ranges result = new Ranges(0);
+        int i = 0;
+        int j = 0;
+        while (i < count && j < other.count) {
+            long lo = Math.max(lows[i], other.lows[j]);
+            long hi = Math.min(highs[i], other.highs[j]);
+            if (lo <= hi) {
+                result.add(lo, hi);
+            }
+            if (highs[i] < other.highs[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return result;
     }
 
     @Override
     public Iterator<Range> iterator() {
+        compact();
         return new Iterator<Range>() {
 
-            Node r = last;
+            int i = 0;
 
             @Override
             public boolean hasNext() {
-                return r != null;
+                return i < count;
             }
 
             @Override
             public Range next() {
-                Range v = r.value;
-                r = r.previous();
+                if (i >= count) {
+                    throw new NoSuchElementException();
+                }
+                Range v = Range.create(lows[i], highs[i]);
+                i++;
                 return v;
             }
 
@@ -142,10 +273,139 @@ public class Ranges implements Iterable<Range> {
     public List<Range> toList() {
         return Lists.newArrayList(this);
     }
-    
+
     @Override
     public String toString() {
     	return toList().toString();
     }
 
+    private int tail() {
+        return bufferSize == 0 ? count - 1 : tail;
+    }
+
+    private void checkIndex(int i) {
+        if (i < 0 || i >= count) {
+            throw new IndexOutOfBoundsException("index " + i + ", size " + count);
+        }
+    }
+
+    private void joinSmallestGap() {
+        // join the slot with the smallest gap to its successor
+        int a = heap[0];
+        int b = next[a];
+        highs[a] = highs[b];
+        int n = next[b];
+        next[a] = n;
+        if (n == NONE) {
+            heapRemove(a);
+            tail = a;
+        } else {
+            // a takes over the gap of b to its successor
+            heapRemove(b);
+            gaps[a] = gaps[b];
+            siftDown(heapPosition[a]);
+        }
+        free = b;
+        fragmented = true;
+        count--;
+    }
+
+    // rewrites slots in increasing order so that slot i holds the i-th range
+    private void compact() {
+        if (!fragmented) {
+            return;
+        }
+        long[] l = new long[lows.length];
+        long[] h = new long[highs.length];
+        int i = 0;
+        for (int s = head; s != NONE; s = next[s]) {
+            l[i] = lows[s];
+            h[i] = highs[s];
+            i++;
+        }
+        lows = l;
+        highs = h;
+        heapSize = 0;
+        for (int s = 0; s < count; s++) {
+            next[s] = s + 1 < count ? s + 1 : NONE;
+            heapPosition[s] = NONE;
+        }
+        head = count == 0 ? NONE : 0;
+        tail = count - 1;
+        for (int s = 0; s < count - 1; s++) {
+            gaps[s] = lows[s + 1] - highs[s];
+            heapInsert(s);
+        }
+        free = NONE;
+        fragmented = false;
+    }
+
+    /////////////////////////////////////////////////
+    // Indexed min-heap of slots ordered by gap to the next range,
+    // ties broken by the lower range first
+    ////////////////////////////////////////////////
+
+    private boolean less(int slotA, int slotB) {
+        long gapA = gaps[slotA];
+        long gapB = gaps[slotB];
+        return gapA < gapB || (gapA == gapB && lows[slotA] < lows[slotB]);
+    }
+
+    private void heapInsert(int slot) {
+        int i = heapSize++;
+        heap[i] = slot;
+        heapPosition[slot] = i;
+        siftUp(i);
+    }
+
+    private void heapRemove(int slot) {
+        int i = heapPosition[slot];
+        heapPosition[slot] = NONE;
+        heapSize--;
+        if (i == heapSize) {
+            return;
+        }
+        int moved = heap[heapSize];
+        heap[i] = moved;
+        heapPosition[moved] = i;
+        siftDown(i);
+        siftUp(heapPosition[moved]);
+    }
+
+    private void siftUp(int i) {
+        int slot = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!less(slot, heap[parent])) {
+                break;
+            }
+            heap[i] = heap[parent];
+            heapPosition[heap[i]] = i;
+            i = parent;
+        }
+        heap[i] = slot;
+        heapPosition[slot] = i;
+    }
+
+    private void siftDown(int i) {
+        int slot = heap[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && less(heap[child + 1], heap[child])) {
+                child++;
+            }
+            if (!less(heap[child], slot)) {
+                break;
+            }
+            heap[i] = heap[child];
+            heapPosition[heap[i]] = i;
+            i = child;
+        }
+        heap[i] = slot;
+        heapPosition[slot] = i;
+    }
+
 }
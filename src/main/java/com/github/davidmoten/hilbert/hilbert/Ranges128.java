@@ -0,0 +1,392 @@
+package com.github.davidmoten.hilbert.hilbert;
+
+import com.github.davidmoten.guavamini.Lists;
+import com.github.davidmoten.guavamini.Preconditions;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * The 128-bit counterpart of {@link Ranges}: adds ranges of {@link Index128} to
+ * a collection and combines ranges optimally when the internal buffer is
+ * exceeded.
+ *
+ * <p>
+ * Each bound is held as two primitive {@code long} words. When a buffer size is
+ * set the ranges form a linked list over array slots and the 128-bit gaps
+ * between neighbouring ranges are kept in an indexed min-heap so that the pair
+ * with the smallest gap (the lowest such pair on ties) is joined in O(log n)
+ * time. {@link Index128} and {@link Range128} objects are only created by the
+ * object accessors and when iterating.
+ */
+// NotThreadSafe
+public class Ranges128 implements Iterable<Range128> {
+
+    private static final int NONE = -1;
+
+    private final int bufferSize;
+
+    // slot storage; when bufferSize == 0 slots are always in increasing order
+    private long[] lowMsbs;
+    private long[] lowLsbs;
+    private long[] highMsbs;
+    private long[] highLsbs;
+
+    // only used when bufferSize > 0: linked list over slots in increasing order
+    private int[] next;
+    private int head = NONE;
+    private int tail = NONE;
+    private int free = NONE; // the slot released by the last join
+
+    // indexed min-heap of slots keyed by the gap to the next range
+    private long[] gapMsbs;
+    private long[] gapLsbs;
+    private int[] heap;
+    private int[] heapPosition;
+    private int heapSize;
+
+    // true when slot order no longer matches range order (after a join)
+    private boolean fragmented;
+
+    private int count; // count of items in ranges
+
+    public Ranges128(int bufferSize) {
+        Preconditions.checkArgument(bufferSize >= 0);
+        this.bufferSize = bufferSize;
+        // the buffer temporarily holds one extra range before joining
+        int capacity = bufferSize == 0 ? 16 : bufferSize + 1;
+        this.lowMsbs = new long[capacity];
+        this.lowLsbs = new long[capacity];
+        this.highMsbs = new long[capacity];
+        this.highLsbs = new long[capacity];
+        if (bufferSize > 0) {
+            this.next = new int[capacity];
+            this.gapMsbs = new long[capacity];
+            this.gapLsbs = new long[capacity];
+            this.heap = new int[capacity];
+            this.heapPosition = new int[capacity];
+        }
+    }
+
+    /**
+     * Adds the range with the given bounds, each given as its high and low 64
+     * bits.
+     */
+    public Ranges128 add(long lowMsb, long lowLsb, long highMsb, long highLsb) {
+        Preconditions.checkArgument(Index128.compare(lowMsb, lowLsb, highMsb, highLsb) <= 0);
+        Preconditions.checkArgument(count == 0 || Index128.compare(highMsbs[tail()],
+                highLsbs[tail()], lowMsb, lowLsb) < 0,
+                "ranges must be added in increasing order and without overlap");
+        if (bufferSize == 0) {
+            if (count == lowMsbs.length) {
+                lowMsbs = Arrays.copyOf(lowMsbs, count * 2);
+                lowLsbs = Arrays.copyOf(lowLsbs, count * 2);
+                highMsbs = Arrays.copyOf(highMsbs, count * 2);
+                highLsbs = Arrays.copyOf(highLsbs, count * 2);
+            }
+            set(count, lowMsb, lowLsb, highMsb, highLsb);
+            count++;
+            return this;
+        }
+        // a free slot always exists: count <= bufferSize before adding
+        int slot = fragmented ? free : count;
+        set(slot, lowMsb, lowLsb, highMsb, highLsb);
+        next[slot] = NONE;
+        heapPosition[slot] = NONE;
+        if (tail == NONE) {
+            head = slot;
+        } else {
+            next[tail] = slot;
+            // the gap of the old tail is now known
+            setGap(tail, slot);
+            heapInsert(tail);
+        }
+        tail = slot;
+        count++;
+        if (count > bufferSize) {
+            joinSmallestGap();
+        }
+        return this;
+    }
+
+    public Ranges128 add(Index128 low, Index128 high) {
+        return add(low.mostSignificantBits(), low.leastSignificantBits(), high.mostSignificantBits(),
+                high.leastSignificantBits());
+    }
+
+    public Ranges128 add(Range128 r) {
+        return add(r.low(), r.high());
+    }
+
+    /**
+     * Returns the high 64 bits of the low bound of the i-th range in increasing
+     * order.
+     */
+    public long lowMsb(int i) {
+        checkIndex(i);
+        compact();
+        return lowMsbs[i];
+    }
+
+    /**
+     * Returns the low 64 bits of the low bound of the i-th range in increasing
+     * order.
+     */
+    public long lowLsb(int i) {
+        checkIndex(i);
+        compact();
+        return lowLsbs[i];
+    }
+
+    /**
+     * Returns the high 64 bits of the high bound (inclusive) of the i-th range in
+     * increasing order.
+     */
+    public long highMsb(int i) {
+        checkIndex(i);
+        compact();
+        return highMsbs[i];
+    }
+
+    /**
+     * Returns the low 64 bits of the high bound (inclusive) of the i-th range in
+     * increasing order.
+     */
+    public long highLsb(int i) {
+        checkIndex(i);
+        compact();
+        return highLsbs[i];
+    }
+
+    public Index128 low(int i) {
+        return Index128.of(lowMsb(i), lowLsb(i));
+    }
+
+    public Index128 high(int i) {
+        return Index128.of(highMsb(i), highLsb(i));
+    }
+
+    /**
+     * Returns true if and only if one of the ranges contains the given value.
+     *
+     * @param value value to test
+     * @return true if value is covered by a range
+     */
+    public boolean contains(Index128 value) {
+        compact();
+        long msb = value.mostSignificantBits();
+        long lsb = value.leastSignificantBits();
+        // first range with high >= value
+        int lo = 0;
+        int hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (Index128.compare(highMsbs[mid], highLsbs[mid], msb, lsb) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo < count && Index128.compare(lowMsbs[lo], lowLsbs[lo], msb, lsb) <= 0;
+    }
+
+    @Override
+    public Iterator<Range128> iterator() {
+        compact();
+        return new Iterator<Range128>() {
+
+            int i = 0;
+
+            @Override
+            public boolean hasNext() {
+                return i < count;
+            }
+
+            @Override
+            public Range128 next() {
+                if (i >= count) {
+                    throw new NoSuchElementException();
+                }
+                Range128 v = Range128.create(Index128.of(lowMsbs[i], lowLsbs[i]),
+                        Index128.of(highMsbs[i], highLsbs[i]));
+                i++;
+                return v;
+            }
+
+        };
+    }
+
+    public Stream<Range128> stream() {
+        return StreamSupport.stream(this.spliterator(), false);
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public List<Range128> toList() {
+        return Lists.newArrayList(this);
+    }
+
+    @Override
+    public String toString() {
+        return toList().toString();
+    }
+
+    private void set(int slot, long lowMsb, long lowLsb, long highMsb, long highLsb) {
+        lowMsbs[slot] = lowMsb;
+        lowLsbs[slot] = lowLsb;
+        highMsbs[slot] = highMsb;
+        highLsbs[slot] = highLsb;
+    }
+
+    // gap of slot a to slot b: low(b) - high(a)
+    private void setGap(int a, int b) {
+        long lsb = lowLsbs[b] - highLsbs[a];
+        long borrow = Long.compareUnsigned(lowLsbs[b], highLsbs[a]) < 0 ? 1 : 0;
+        gapMsbs[a] = lowMsbs[b] - highMsbs[a] - borrow;
+        gapLsbs[a] = lsb;
+    }
+
+    private int tail() {
+        return bufferSize == 0 ? count - 1 : tail;
+    }
+
+    private void checkIndex(int i) {
+        if (i < 0 || i >= count) {
+            throw new IndexOutOfBoundsException("index " + i + ", size " + count);
+        }
+    }
+
+    private void joinSmallestGap() {
+        // join the slot with the smallest gap to its successor
+        int a = heap[0];
+        int b = next[a];
+        highMsbs[a] = highMsbs[b];
+        highLsbs[a] = highLsbs[b];
+        int n = next[b];
+        next[a] = n;
+        if (n == NONE) {
+            heapRemove(a);
+            tail = a;
+        } else {
+            // a takes over the gap of b to its successor
+            heapRemove(b);
+            gapMsbs[a] = gapMsbs[b];
+            gapLsbs[a] = gapLsbs[b];
+            siftDown(heapPosition[a]);
+        }
+        free = b;
+        fragmented = true;
+        count--;
+    }
+
+    // rewrites slots in increasing order so that slot i holds the i-th range
+    private void compact() {
+        if (!fragmented) {
+            return;
+        }
+        long[] lm = new long[lowMsbs.length];
+        long[] ll = new long[lowLsbs.length];
+        long[] hm = new long[highMsbs.length];
+        long[] hl = new long[highLsbs.length];
+        int i = 0;
+        for (int s = head; s != NONE; s = next[s]) {
+            lm[i] = lowMsbs[s];
+            ll[i] = lowLsbs[s];
+            hm[i] = highMsbs[s];
+            hl[i] = highLsbs[s];
+            i++;
+        }
+        lowMsbs = lm;
+        lowLsbs = ll;
+        highMsbs = hm;
+        highLsbs = hl;
+        heapSize = 0;
+        for (int s = 0; s < count; s++) {
+            next[s] = s + 1 < count ? s + 1 : NONE;
+            heapPosition[s] = NONE;
+        }
+        head = count == 0 ? NONE : 0;
+        tail = count - 1;
+        for (int s = 0; s < count - 1; s++) {
+            setGap(s, s + 1);
+            heapInsert(s);
+        }
+        free = NONE;
+        fragmented = false;
+    }
+
+    /////////////////////////////////////////////////
+    // Indexed min-heap of slots ordered by gap to the next range,
+    // ties broken by the lower range first
+    ////////////////////////////////////////////////
+
+    private boolean less(int slotA, int slotB) {
+        int c = Index128.compare(gapMsbs[slotA], gapLsbs[slotA], gapMsbs[slotB], gapLsbs[slotB]);
+        return c < 0 || (c == 0 && Index128.compare(lowMsbs[slotA], lowLsbs[slotA], lowMsbs[slotB],
+                lowLsbs[slotB]) < 0);
+    }
+
+    private void heapInsert(int slot) {
+        int i = heapSize++;
+        heap[i] = slot;
+        heapPosition[slot] = i;
+        siftUp(i);
+    }
+
+    private void heapRemove(int slot) {
+        int i = heapPosition[slot];
+        heapPosition[slot] = NONE;
+        heapSize--;
+        if (i == heapSize) {
+            return;
+        }
+        int moved = heap[heapSize];
+        heap[i] = moved;
+        heapPosition[moved] = i;
+        siftDown(i);
+        siftUp(heapPosition[moved]);
+    }
+
+    private void siftUp(int i) {
+        int slot = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!less(slot, heap[parent])) {
+                break;
+            }
+            heap[i] = heap[parent];
+            heapPosition[heap[i]] = i;
+            i = parent;
+        }
+        heap[i] = slot;
+        heapPosition[slot] = i;
+    }
+
+    private void siftDown(int i) {
+        int slot = heap[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && less(heap[child + 1], heap[child])) {
+                child++;
+            }
+            if (!less(heap[child], slot)) {
+                break;
+            }
+            heap[i] = heap[child];
+            heapPosition[heap[i]] = i;
+            i = child;
+        }
+        heap[i] = slot;
+        heapPosition[slot] = i;
+    }
+
+}
@@ -3,9 +3,7 @@ package com.github.davidmoten.hilbert.hilbert;
 import com.github.davidmoten.guavamini.Preconditions;
 
 import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.util.Arrays;
 
 /**
  * Converts between Hilbert index ({@code BigInteger}) and N-dimensional points.
@@ -73,6 +71,94 @@ public final class SmallHilbertCurve implements Serializable {
         HilbertCurve.transposedIndexToPoint(bits, x);
     }
 
+    /**
+     * Converts a batch of 2-dimensional points to their Hilbert curve indexes
+     * without allocating per point.
+     * 
+     * @param xs      first ordinates
+     * @param ys      second ordinates
+     * @param indexes destination for the indexes, {@code indexes[i]} is the index
+     *                of {@code (xs[i], ys[i])}
+     * @param count   number of points to convert
+     * @throws IllegalArgumentException if this curve is not 2-dimensional or an
+     *                                  array is shorter than count
+     */
+    public void index(long[] xs, long[] ys, long[] indexes, int count) {
+        Preconditions.checkArgument(dimensions == 2, "curve must have 2 dimensions");
+        Preconditions.checkArgument(count >= 0 && xs.length >= count && ys.length >= count
+                && indexes.length >= count, "arrays must hold at least count values");
+        long[] x = new long[2];
+        for (int i = 0; i < count; i++) {
+            x[0] = xs[i];
+            x[1] = ys[i];
+            HilbertCurve.transposedIndexInPlace(bits, x);
+            indexes[i] = toIndex(x);
+        }
+    }
+
+    /**
+     * Converts a batch of points stored interleaved ({@code x0, y0, ..., x1, y1,
+     * ...}) to their Hilbert curve indexes without allocating per point.
+     * 
+     * @param points  interleaved ordinates, {@code dimensions} values per point
+     * @param indexes destination for the indexes
+     * @param count   number of points to convert
+     * @throws IllegalArgumentException if an array is too short for count points
+     */
+    public void index(long[] points, long[] indexes, int count) {
+        Preconditions.checkArgument(count >= 0 && points.length >= count * dimensions
+                && indexes.length >= count, "arrays must hold at least count points");
+        long[] x = new long[dimensions];
+        for (int i = 0, offset = 0; i < count; i++, offset += dimensions) {
+            System.arraycopy(points, offset, x, 0, dimensions);
+            HilbertCurve.transposedIndexInPlace(bits, x);
+            indexes[i] = toIndex(x);
+        }
+    }
+
+    /**
+     * Converts a batch of indexes to 2-dimensional points without allocating per
+     * index.
+     * 
+     * @param indexes indexes along the Hilbert curve
+     * @param xs      destination for the first ordinates
+     * @param ys      destination for the second ordinates
+     * @param count   number of indexes to convert
+     * @throws IllegalArgumentException if this curve is not 2-dimensional or an
+     *                                  array is shorter than count
+     */
+    public void point(long[] indexes, long[] xs, long[] ys, int count) {
+        Preconditions.checkArgument(dimensions == 2, "curve must have 2 dimensions");
+        Preconditions.checkArgument(count >= 0 && xs.length >= count && ys.length >= count
+                && indexes.length >= count, "arrays must hold at least count values");
+        long[] x = new long[2];
+        for (int i = 0; i < count; i++) {
+            point(indexes[i], x);
+            xs[i] = x[0];
+            ys[i] = x[1];
+        }
+    }
+
+    /**
+     * Converts a batch of indexes to points written interleaved ({@code x0, y0,
+     * ..., x1, y1, ...}) without allocating per index.
+     * 
+     * @param indexes indexes along the Hilbert curve
+     * @param points  destination for the interleaved ordinates, {@code dimensions}
+     *                values per index
+     * @param count   number of indexes to convert
+     * @throws IllegalArgumentException if an array is too short for count points
+     */
+    public void point(long[] indexes, long[] points, int count) {
+        Preconditions.checkArgument(count >= 0 && points.length >= count * dimensions
+                && indexes.length >= count, "arrays must hold at least count points");
+        long[] x = new long[dimensions];
+        for (int i = 0, offset = 0; i < count; i++, offset += dimensions) {
+            point(indexes[i], x);
+            System.arraycopy(x, 0, points, offset, dimensions);
+        }
+    }
+
     // untranspose
     private long toIndex(long... transposedIndex) {
         long b = 0;
@@ -92,7 +178,7 @@ public final class SmallHilbertCurve implements Serializable {
     }
 
     private void transposeLong(long index, long[] x) {
-        for (int idx = 0; idx < 64; idx++) {
+        for (int idx = 0; idx < length; idx++) {
             if ((index & (1L << idx)) != 0) {
                 int dim = (length - idx - 1) % dimensions;
                 int shift = (idx / dimensions) % bits;
@@ -183,54 +269,416 @@ public final class SmallHilbertCurve implements Serializable {
             bufferSize = 0;
         }
         // this is the implementation of the Perimeter Algorithm mentioned in README.md
+        Box box = new Box(a, b);
+        return shrink(perimeterRanges(box, perimeterIndexes(box, false), bufferSize), maxRanges);
+    }
+
+    /**
+     * As {@link #query(long[], long[])} but visiting the perimeter of the region
+     * and sorting its indexes in parallel. Runs in the common fork/join pool or,
+     * when called from a task of another {@link java.util.concurrent.ForkJoinPool},
+     * in that pool.
+     * 
+     * @param a one vertex of the region
+     * @param b the opposing vertex to a
+     * @return ranges
+     */
+    public Ranges queryParallel(long[] a, long[] b) {
+        return queryParallel(a, b, 0, 0);
+    }
+
+    /**
+     * As {@link #query(long[], long[], int)} but visiting the perimeter of the
+     * region and sorting its indexes in parallel.
+     * 
+     * @param a         one vertex of the region
+     * @param b         the opposing vertex to a
+     * @param maxRanges the maximum number of ranges to be returned. If 0 then all
+     *                  ranges are returned.
+     * @return ranges
+     */
+    public Ranges queryParallel(long[] a, long[] b, int maxRanges) {
+        if (maxRanges == 0) {
+            return queryParallel(a, b, 0, 0);
+        } else {
+            return queryParallel(a, b, maxRanges, Math.max(DEFAULT_BUFFER_SIZE, maxRanges));
+        }
+    }
 
+    /**
+     * As {@link #query(long[], long[], int, int)} but visiting the perimeter of
+     * the region and sorting its indexes in parallel.
+     * 
+     * @param a          one vertex of the region
+     * @param b          the opposing vertex to a
+     * @param maxRanges  the maximum number of ranges to be returned. If 0 then all
+     *                   ranges are returned.
+     * @param bufferSize the buffer size of ranges to use. If 0 is passed to
+     *                   bufferSize then all ranges will be buffered before
+     *                   shrinking to maxRanges.
+     * @return ranges
+     */
+    public Ranges queryParallel(long[] a, long[] b, int maxRanges, int bufferSize) {
+        Preconditions.checkArgument(maxRanges >= 0);
+        Preconditions.checkArgument(bufferSize >= maxRanges,
+                "bufferSize must be greater than or equal to maxRanges");
+        if (maxRanges == 0) {
+            // unlimited
+            bufferSize = 0;
+        }
         Box box = new Box(a, b);
-        List<Long> list = new ArrayList<>();
-        box.visitPerimeter(cell -> {
-            long n = index(cell);
-            list.add(n);
-        });
-        Collections.sort(list);
+        return shrink(perimeterRanges(box, perimeterIndexes(box, true), bufferSize), maxRanges);
+    }
+
+    // sorted indexes of the perimeter cells of the box
+    private long[] perimeterIndexes(Box box, boolean parallel) {
+        long[] indexes = box.perimeter(parallel).mapToLong(cell -> index(cell)).toArray();
+        if (parallel) {
+            Arrays.parallelSort(indexes);
+        } else {
+            Arrays.sort(indexes);
+        }
+        return indexes;
+    }
+
+    private Ranges perimeterRanges(Box box, long[] list, int bufferSize) {
         int i = 0;
         Ranges ranges = new Ranges(bufferSize);
         long rangeStart = -1;
+        long[] point = new long[dimensions];
         while (true) {
-            if (i == list.size()) {
+            if (i == list.length) {
                 break;
             }
             if (rangeStart == -1) {
-                rangeStart = list.get(i);
+                rangeStart = list[i];
             }
-            while (i < list.size() - 1 && list.get(i + 1) == list.get(i) + 1) {
+            while (i < list.length - 1 && list[i + 1] == list[i] + 1) {
                 i++;
             }
-            if (i == list.size() - 1) {
-                ranges.add(Range.create(rangeStart, list.get(i)));
+            if (i == list.length - 1) {
+                ranges.add(rangeStart, list[i]);
                 break;
             }
-            long[] point = point(list.get(i) + 1);
+            point(list[i] + 1, point);
             if (box.contains(point)) {
                 // is not on the perimeter (would have been caught in previous while loop)
                 // so is internal to the box which means the next value in the sorted hilbert
                 // curve indexes for the perimiter must be where it exits
                 i += 1;
             } else {
-                ranges.add(Range.create(rangeStart, list.get(i)));
+                ranges.add(rangeStart, list[i]);
                 rangeStart = -1;
                 i++;
             }
         }
+        return ranges;
+    }
+
+    /**
+     * Returns index ranges exactly covering the region bounded by {@code a} and
+     * {@code b}, computed by descending the Hilbert curve's tree of sub-cubes
+     * rather than visiting the perimeter of the region. Sub-cubes lying entirely
+     * within the region are emitted as a single range without further descent so
+     * the cost scales with the number of ranges rather than with the size of the
+     * region's perimeter. Returns the same ranges as {@link #query(long[], long[])}.
+     * 
+     * @param a one vertex of the region
+     * @param b the opposing vertex to a
+     * @return ranges
+     */
+    public Ranges queryRecursive(long[] a, long[] b) {
+        return queryRecursive(a, b, 0, 0);
+    }
+
+    /**
+     * As {@link #query(long[], long[], int)} but using the recursive descent
+     * algorithm of {@link #queryRecursive(long[], long[])}.
+     * 
+     * @param a         one vertex of the region
+     * @param b         the opposing vertex to a
+     * @param maxRanges the maximum number of ranges to be returned. If 0 then all
+     *                  ranges are returned.
+     * @return ranges
+     */
+    public Ranges queryRecursive(long[] a, long[] b, int maxRanges) {
+        if (maxRanges == 0) {
+            return queryRecursive(a, b, 0, 0);
+        } else {
+            return queryRecursive(a, b, maxRanges, Math.max(DEFAULT_BUFFER_SIZE, maxRanges));
+        }
+    }
+
+    /**
+     * As {@link #query(long[], long[], int, int)} but using the recursive descent
+     * algorithm of {@link #queryRecursive(long[], long[])}.
+     * 
+     * @param a          one vertex of the region
+     * @param b          the opposing vertex to a
+     * @param maxRanges  the maximum number of ranges to be returned. If 0 then all
+     *                   ranges are returned.
+     * @param bufferSize the buffer size of ranges to use. If 0 is passed to
+     *                   bufferSize then all ranges will be buffered before
+     *                   shrinking to maxRanges.
+     * @return ranges
+     */
+    public Ranges queryRecursive(long[] a, long[] b, int maxRanges, int bufferSize) {
+        Preconditions.checkArgument(a.length == dimensions && b.length == dimensions);
+        Preconditions.checkArgument(maxRanges >= 0);
+        Preconditions.checkArgument(bufferSize >= maxRanges,
+                "bufferSize must be greater than or equal to maxRanges");
+        if (maxRanges == 0) {
+            // unlimited
+            bufferSize = 0;
+        }
+        long[] mins = new long[dimensions];
+        long[] maxes = new long[dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            mins[i] = Math.min(a[i], b[i]);
+            maxes[i] = Math.max(a[i], b[i]);
+        }
+        RangeCollector collector = new RangeCollector(new Ranges(bufferSize));
+        descend(mins, maxes, 0, 0, new long[dimensions], collector);
+        collector.flush();
+        return shrink(collector.ranges, maxRanges);
+    }
+
+    /**
+     * Returns index ranges covering the region bounded by {@code a} and {@code b}
+     * using the recursive descent of {@link #queryRecursive(long[], long[])}, with
+     * the descent steered by {@code filter}. Every sub-cube that intersects the
+     * region is first passed to the filter: {@link SubCubeFilter.Action#SKIP}
+     * drops it, {@link SubCubeFilter.Action#EMIT} emits its whole index range
+     * without further descent (even if it is only partly inside the region) and
+     * {@link SubCubeFilter.Action#DESCEND} proceeds as the unfiltered query does.
+     * When the indexes are only ever looked up in a coarser structure (for example
+     * blocks of a quadtree laid out along the curve) this stops the descent at the
+     * resolution of that structure, so the cost scales with the number of its
+     * blocks on the region boundary rather than with the region's perimeter cells.
+     * 
+     * @param a      one vertex of the region
+     * @param b      the opposing vertex to a
+     * @param filter decides what to do with each intersecting sub-cube
+     * @return ranges in increasing order, adjacent ranges joined
+     */
+    public Ranges queryRecursive(long[] a, long[] b, SubCubeFilter filter) {
+        Preconditions.checkArgument(a.length == dimensions && b.length == dimensions);
+        Preconditions.checkNotNull(filter);
+        long[] mins = new long[dimensions];
+        long[] maxes = new long[dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            mins[i] = Math.min(a[i], b[i]);
+            maxes[i] = Math.max(a[i], b[i]);
+        }
+        RangeCollector collector = new RangeCollector(new Ranges(0));
+        descend(mins, maxes, 0, 0, new long[dimensions], filter, collector);
+        collector.flush();
+        return collector.ranges;
+    }
+
+    /**
+     * Steers {@link SmallHilbertCurve#queryRecursive(long[], long[], SubCubeFilter)}.
+     */
+    public interface SubCubeFilter {
+
+        enum Action {
+            SKIP, EMIT, DESCEND
+        }
+
+        /**
+         * Classifies a sub-cube intersecting the query region.
+         * 
+         * @param low  the first index of the sub-cube
+         * @param high the last index of the sub-cube
+         * @return what to do with the sub-cube
+         */
+        Action classify(long low, long high);
+    }
+
+    /**
+     * Returns index ranges covering the region bounded by {@code a} and {@code b}
+     * chosen to minimise the estimated scan cost. A gap between two exact ranges
+     * is joined when scanning the keys expected in it costs less than a seek.
+     * Since each joined gap saves one seek and adds only its own keys the result
+     * is optimal for the given cost model.
+     *
+     * @param a         one vertex of the region
+     * @param b         the opposing vertex to a
+     * @param costModel seek and scan costs and the expected key density
+     * @return the chosen ranges with their expected over-coverage and cost
+     */
+    public QueryPlan query(long[] a, long[] b, CostModel costModel) {
+        return query(a, b, costModel, 0);
+    }
+
+    /**
+     * As {@link #query(long[], long[], CostModel)} but returning at most
+     * {@code maxRanges} ranges. When the cheapest plan has more ranges than that
+     * the remaining gaps with the fewest expected keys are joined as well.
+     *
+     * @param a         one vertex of the region
+     * @param b         the opposing vertex to a
+     * @param costModel seek and scan costs and the expected key density
+     * @param maxRanges the maximum number of ranges to be returned. If 0 then the
+     *                  number of ranges is limited by cost only.
+     * @return the chosen ranges with their expected over-coverage and cost
+     */
+    public QueryPlan query(long[] a, long[] b, CostModel costModel, int maxRanges) {
+        Preconditions.checkNotNull(costModel);
+        Preconditions.checkArgument(maxRanges >= 0);
+        Ranges exact = queryRecursive(a, b);
+        int n = exact.size();
+        double seekCost = costModel.seekCost();
+        double scanCost = costModel.scanCost();
+
+        double keys = 0;
+        long exactCoverage = 0;
+        for (int i = 0; i < n; i++) {
+            keys += costModel.expectedKeys(exact.low(i), exact.high(i));
+            exactCoverage += exact.high(i) - exact.low(i) + 1;
+        }
+
+        // gap i lies between range i and range i + 1
+        double[] gapKeys = new double[Math.max(0, n - 1)];
+        boolean[] join = new boolean[gapKeys.length];
+        int joined = 0;
+        for (int i = 0; i < gapKeys.length; i++) {
+            gapKeys[i] = costModel.expectedKeys(exact.high(i) + 1, exact.low(i + 1) - 1);
+            if (scanCost * gapKeys[i] < seekCost) {
+                join[i] = true;
+                joined++;
+            }
+        }
+        if (maxRanges > 0 && n - joined > maxRanges) {
+            joinCheapest(gapKeys, join, n - joined - maxRanges);
+        }
+
+        Ranges ranges = new Ranges(0);
+        double falsePositives = 0;
+        long low = n == 0 ? 0 : exact.low(0);
+        for (int i = 0; i < n; i++) {
+            if (i < gapKeys.length && join[i]) {
+                falsePositives += gapKeys[i];
+            } else {
+                ranges.add(low, exact.high(i));
+                if (i + 1 < n) {
+                    low = exact.low(i + 1);
+                }
+            }
+        }
+        double cost = seekCost * ranges.size() + scanCost * (keys + falsePositives);
+        return new QueryPlan(ranges, n, exactCoverage, keys + falsePositives, falsePositives, cost);
+    }
+
+    // joins the given number of not yet joined gaps, fewest expected keys first
+    private static void joinCheapest(double[] gapKeys, boolean[] join, int extra) {
+        double[] candidates = new double[gapKeys.length];
+        int m = 0;
+        for (int i = 0; i < gapKeys.length; i++) {
+            if (!join[i]) {
+                candidates[m++] = gapKeys[i];
+            }
+        }
+        Arrays.sort(candidates, 0, m);
+        double threshold = candidates[extra - 1];
+        for (int i = 0; i < gapKeys.length && extra > 0; i++) {
+            if (!join[i] && gapKeys[i] < threshold) {
+                join[i] = true;
+                extra--;
+            }
+        }
+        // ties at the threshold are joined lowest first
+        for (int i = 0; i < gapKeys.length && extra > 0; i++) {
+            if (!join[i] && gapKeys[i] == threshold) {
+                join[i] = true;
+                extra--;
+            }
+        }
+    }
+
+    private void descend(long[] mins, long[] maxes, long low, int level, long[] x,
+            RangeCollector collector) {
+        descend(mins, maxes, low, level, x, null, collector);
+    }
+
+    private void descend(long[] mins, long[] maxes, long low, int level, long[] x,
+            SubCubeFilter filter, RangeCollector collector) {
+        long side = 1L << (bits - level);
+        point(low, x);
+        boolean contained = true;
+        for (int i = 0; i < dimensions; i++) {
+            long nodeMin = x[i] & -side;
+            long nodeMax = nodeMin + side - 1;
+            if (nodeMax < mins[i] || nodeMin > maxes[i]) {
+                return;
+            }
+            contained &= nodeMin >= mins[i] && nodeMax <= maxes[i];
+        }
+        long high = low + span(level);
+        if (filter != null) {
+            SubCubeFilter.Action action = filter.classify(low, high);
+            if (action == SubCubeFilter.Action.SKIP) {
+                return;
+            }
+            contained |= action == SubCubeFilter.Action.EMIT;
+        }
+        if (contained) {
+            collector.add(low, high);
+            return;
+        }
+        long childStep = span(level + 1) + 1;
+        int children = 1 << dimensions;
+        for (int c = 0; c < children; c++) {
+            descend(mins, maxes, low + c * childStep, level + 1, x, filter, collector);
+        }
+    }
+
+    // number of indexes covered by a sub-cube at the given level, minus one
+    private long span(int level) {
+        int exponent = dimensions * (bits - level);
+        return exponent == 0 ? 0 : -1L >>> (64 - exponent);
+    }
+
+    private static Ranges shrink(Ranges ranges, int maxRanges) {
         if (ranges.size() <= maxRanges) {
             return ranges;
         } else {
             Ranges r = new Ranges(maxRanges);
-            for (Range range : ranges) {
-                r.add(range);
+            for (int i = 0; i < ranges.size(); i++) {
+                r.add(ranges.low(i), ranges.high(i));
             }
             return r;
         }
     }
 
+    // joins adjacent ranges (emitted in increasing order) before adding them
+    private static final class RangeCollector {
+        final Ranges ranges;
+        private long low = -1;
+        private long high = -1;
+
+        RangeCollector(Ranges ranges) {
+            this.ranges = ranges;
+        }
+
+        void add(long lo, long hi) {
+            if (low != -1 && lo == high + 1) {
+                high = hi;
+            } else {
+                flush();
+                low = lo;
+                high = hi;
+            }
+        }
+
+        void flush() {
+            if (low != -1) {
+                ranges.add(low, high);
+                low = -1;
+            }
+        }
+    }
+
     public static final class Builder {
         private int bits;
 
@@ -0,0 +1,93 @@
+package com.bwywb.index;
+
+import com.bwywb.model.POIData;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class CompositeKeyBuilderTest {
+
+    private static final MBR GLOBAL = new MBR(0, 0, 1000, 1000);
+    private static final MultiScaleTrIndex TR = new MultiScaleTrIndex();
+
+    @Test
+    public void buildsKeysAtMaximumAllowedDepth() {
+        int depth = CompositeKeyBuilder.maxDepth(TR);
+        assertEquals(20, depth);
+        NuhIndex index = new NuhIndex(1, depth, GLOBAL);
+        long maxCode = (1L << (2 * depth)) - 1;
+        long[] timestamps = {0, 1_700_000_000_000L, CompositeKeyBuilder.MAX_TIMESTAMP_MS};
+        for (CompositeKeyBuilder.Order order : CompositeKeyBuilder.Order.values()) {
+            CompositeKeyBuilder keys = new CompositeKeyBuilder(order, index, TR);
+            assertTrue(keys.getMaxTpIndex() >= TR.tpIndex(CompositeKeyBuilder.MAX_TIMESTAMP_MS));
+            for (long code : new long[] {0, 12_345_678, maxCode}) {
+                for (long timestamp : timestamps) {
+                    long tp = TR.tpIndex(timestamp);
+                    long key = keys.key(code, tp);
+                    assertTrue(key >= 0);
+                    assertEquals(code, keys.hilbertCode(key));
+                    assertEquals(tp, keys.tpIndex(key));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void keysOfSubspacesAtMaximumDepthRoundTrip() {
+        int depth = CompositeKeyBuilder.maxDepth(TR);
+        NuhIndex index = new NuhIndex(1, depth, GLOBAL);
+        List<POIData> data = new ArrayList<>();
+        Random random = new Random(5);
+        for (int i = 0; i < 200; i++) {
+            // 极近的点迫使划分到最大深度
+            double x = 123.456 + random.nextDouble() * 1e-4;
+            double y = 654.321 + random.nextDouble() * 1e-4;
+            data.add(new POIData("b", "u", "r" + i, x, y, 1_700_000_000_000L + i, Collections.emptyMap()));
+        }
+        CompositeKeyBuilder keys = new CompositeKeyBuilder(CompositeKeyBuilder.Order.TIME_FIRST, index, TR);
+        boolean reachedMaxDepth = false;
+        for (Subspace subspace : index.generateNuhIndex(data)) {
+            reachedMaxDepth |= subspace.getDepth() == depth;
+            for (POIData p : subspace.getDataSet()) {
+                long key = keys.key(subspace, p);
+                assertEquals(subspace.getHilbertCode(), keys.hilbertCode(key));
+                assertEquals(TR.tpIndex(p.getTimestamp()), keys.tpIndex(key));
+            }
+        }
+        assertTrue(reachedMaxDepth);
+    }
+
+    @Test
+    public void rejectsDepthsThatLeaveTooFewTimeBits() {
+        NuhIndex tooDeep = new NuhIndex(1, CompositeKeyBuilder.maxDepth(TR) + 1, GLOBAL);
+        assertThrows(IllegalArgumentException.class,
+                () -> new CompositeKeyBuilder(CompositeKeyBuilder.Order.TIME_FIRST, tooDeep, TR));
+        assertThrows(IllegalArgumentException.class,
+                () -> new CompositeKeyBuilder(CompositeKeyBuilder.Order.SPACE_FIRST,
+                        CompositeKeyBuilder.maxSpaceBits(TR) + 1, TR));
+    }
+
+    @Test
+    public void tunerRespectsDepthLimit() {
+        List<POIData> data = new ArrayList<>();
+        Random random = new Random(9);
+        for (int i = 0; i < 20_000; i++) {
+            // 一个极小的簇使未加限制的调优深度超过组合 Key 的上限
+            double x = i % 2 == 0 ? 500 + random.nextDouble() * 1e-5 : random.nextDouble() * 1000;
+            double y = i % 2 == 0 ? 500 + random.nextDouble() * 1e-5 : random.nextDouble() * 1000;
+            data.add(new POIData("b", "u", "r" + i, x, y, i, Collections.emptyMap()));
+        }
+        int limit = CompositeKeyBuilder.maxDepth(TR);
+        assertTrue(new NuhIndexTuner(4, 1 << 20).tune(data, GLOBAL).getMaxDepth() > limit);
+        NuhIndex capped = new NuhIndexTuner(4, 1 << 20, NuhIndexTuner.DEFAULT_SAMPLE_SIZE, limit).tune(data, GLOBAL);
+        assertTrue(capped.getMaxDepth() <= limit);
+        new CompositeKeyBuilder(CompositeKeyBuilder.Order.TIME_FIRST, capped, TR);
+    }
+}
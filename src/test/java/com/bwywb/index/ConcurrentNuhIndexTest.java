@@ -0,0 +1,255 @@
+package com.bwywb.index;
+
+import com.bwywb.model.POIData;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrentNuhIndexTest {
+
+    private static final MBR GLOBAL = new MBR(0, 0, 1000, 1000);
+
+    private static POIData point(Random random, String id, long timestamp) {
+        // 紧密簇加均匀背景, 使更新频繁触发划分与合并
+        boolean clustered = random.nextBoolean();
+        double x = clustered ? 300 + random.nextGaussian() * 10 : random.nextDouble() * 1000;
+        double y = clustered ? 600 + random.nextGaussian() * 10 : random.nextDouble() * 1000;
+        x = Math.max(0, Math.min(1000, x));
+        y = Math.max(0, Math.min(1000, y));
+        return new POIData("b", "u", id, x, y, timestamp, Collections.emptyMap());
+    }
+
+    private static MBR randomWindow(Random random) {
+        double x = random.nextDouble() * 1000;
+        double y = random.nextDouble() * 1000;
+        double size = random.nextDouble() * 300;
+        return new MBR(x, y, x + size, y + size);
+    }
+
+    private static Set<String> ids(List<POIData> points) {
+        Set<String> ids = new HashSet<>();
+        for (POIData p : points) {
+            ids.add(p.getReview_id());
+        }
+        return ids;
+    }
+
+    @Test
+    public void snapshotsMatchRebuildAfterRandomUpdates() {
+        Random random = new Random(17);
+        NuhIndex index = new NuhIndex(10, GLOBAL);
+        List<POIData> initial = new ArrayList<>();
+        Map<String, POIData> live = new LinkedHashMap<>();
+        for (int i = 0; i < 5_000; i++) {
+            POIData p = point(random, "init" + i, i);
+            initial.add(p);
+            live.put(p.getReview_id(), p);
+        }
+        ConcurrentNuhIndex concurrent = new ConcurrentNuhIndex(index, initial);
+        List<String> ids = new ArrayList<>(live.keySet());
+        for (int step = 1; step <= 8_000; step++) {
+            double insertRate = step <= 4_000 ? 0.7 : 0.2;
+            if (ids.isEmpty() || random.nextDouble() < insertRate) {
+                POIData p = point(random, "p" + step, step);
+                concurrent.insert(p);
+                live.put(p.getReview_id(), p);
+                ids.add(p.getReview_id());
+            } else {
+                int k = random.nextInt(ids.size());
+                String id = ids.get(k);
+                ids.set(k, ids.get(ids.size() - 1));
+                ids.remove(ids.size() - 1);
+                assertEquals(live.remove(id), concurrent.delete(id));
+            }
+            if (step % 400 != 0) {
+                continue;
+            }
+            ConcurrentNuhIndex.Snapshot snapshot = concurrent.snapshot();
+            List<Subspace> expected = index.generateNuhIndex(new ArrayList<>(live.values()));
+            List<Subspace> actual = snapshot.subspaces();
+            assertEquals(expected.size(), actual.size());
+            assertEquals(expected.size(), snapshot.subspaceCount());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).getHilbertCode(), actual.get(i).getHilbertCode());
+                assertEquals(expected.get(i).getDensity(), actual.get(i).getDensity());
+            }
+            // 除最后一个分段外, 每个分段至少有 SEGMENT_SIZE / 2 个子空间
+            assertTrue(snapshot.segmentCount() <= snapshot.subspaceCount() / (ConcurrentNuhIndex.SEGMENT_SIZE / 2) + 1);
+            for (int q = 0; q < 20; q++) {
+                MBR window = randomWindow(random);
+                long t0 = random.nextInt(8_000);
+                long t1 = t0 + random.nextInt(4_000);
+                Set<String> brute = new HashSet<>();
+                int inWindow = 0;
+                for (POIData p : live.values()) {
+                    if (window.contains(p.getX(), p.getY())) {
+                        inWindow++;
+                        if (p.getTimestamp() >= t0 && p.getTimestamp() <= t1) {
+                            brute.add(p.getReview_id());
+                        }
+                    }
+                }
+                assertEquals(brute, ids(snapshot.query(window, t0, t1)));
+                assertEquals(inWindow, snapshot.count(window));
+            }
+        }
+    }
+
+    @Test
+    public void publishedSubspacesAreReadOnly() {
+        ConcurrentNuhIndex concurrent = new ConcurrentNuhIndex(new NuhIndex(10, GLOBAL));
+        concurrent.insert(new POIData("b", "u", "r", 10, 10, 0, Collections.emptyMap()));
+        List<Subspace> subspaces = concurrent.snapshot().subspaces();
+        assertThrows(UnsupportedOperationException.class, () -> subspaces.get(0).getDataSet().clear());
+        assertThrows(UnsupportedOperationException.class, () -> subspaces.clear());
+        assertNull(concurrent.delete("missing"));
+    }
+
+    /**
+     * 每个写线程依次执行 insert(i)、delete(i - K)，因此任一快照中该线程的点都是连续编号 [lo, hi]，
+     * 且个数为 K (完整的一轮) 或 K + 1 (insert 已发布、delete 未发布)。读线程在查询前读取各写线程
+     * 已完成的轮数、查询后读取已开始的轮数: 线性一致要求快照反映的位置落在这两者之间。
+     * 同一快照上的窗口查询须与全窗口查询结果在窗口内的部分一致。
+     */
+    @Test(timeout = 120_000)
+    public void queriesAreLinearizableUnderConcurrentIngest() throws Exception {
+        int writers = 4;
+        int readers = 3;
+        int rounds = 3_000;
+        int keep = 50;
+        NuhIndex index = new NuhIndex(8, GLOBAL);
+        ConcurrentNuhIndex concurrent = new ConcurrentNuhIndex(index);
+        AtomicIntegerArray started = new AtomicIntegerArray(writers);
+        AtomicIntegerArray completed = new AtomicIntegerArray(writers);
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+
+        for (int w = 0; w < writers; w++) {
+            int writer = w;
+            threads.add(new Thread(() -> {
+                Random random = new Random(writer);
+                try {
+                    start.await();
+                    for (int i = 0; i < rounds; i++) {
+                        started.set(writer, i + 1);
+                        concurrent.insert(point(random, writer + ":" + i, i));
+                        if (i >= keep) {
+                            if (concurrent.delete(writer + ":" + (i - keep)) == null) {
+                                throw new AssertionError("lost " + writer + ":" + (i - keep));
+                            }
+                        }
+                        completed.set(writer, i + 1);
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+            }));
+        }
+        for (int r = 0; r < readers; r++) {
+            int reader = r;
+            threads.add(new Thread(() -> {
+                Random random = new Random(100 + reader);
+                try {
+                    start.await();
+                    while (!done.get() && failure.get() == null) {
+                        int[] before = new int[writers];
+                        for (int w = 0; w < writers; w++) {
+                            before[w] = completed.get(w);
+                        }
+                        ConcurrentNuhIndex.Snapshot snapshot = concurrent.snapshot();
+                        List<POIData> all = snapshot.query(GLOBAL);
+                        int[] after = new int[writers];
+                        for (int w = 0; w < writers; w++) {
+                            after[w] = started.get(w);
+                        }
+                        checkPrefixes(all, before, after, keep);
+                        assertEquals(all.size(), snapshot.size());
+
+                        MBR window = randomWindow(random);
+                        Set<String> expected = new HashSet<>();
+                        for (POIData p : all) {
+                            if (window.contains(p.getX(), p.getY())) {
+                                expected.add(p.getReview_id());
+                            }
+                        }
+                        assertEquals(expected, ids(snapshot.query(window)));
+                        assertEquals(expected.size(), snapshot.count(window));
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+            }));
+        }
+
+        for (Thread t : threads) {
+            t.start();
+        }
+        start.countDown();
+        for (int w = 0; w < writers; w++) {
+            threads.get(w).join();
+        }
+        done.set(true);
+        for (Thread t : threads) {
+            t.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        assertEquals(writers * keep, concurrent.snapshot().size());
+        assertEquals(writers * keep, concurrent.snapshot().query(GLOBAL).size());
+    }
+
+    private static void checkPrefixes(List<POIData> all, int[] completedBefore, int[] startedAfter, int keep) {
+        int writers = completedBefore.length;
+        int[] lo = new int[writers];
+        int[] hi = new int[writers];
+        int[] count = new int[writers];
+        for (int w = 0; w < writers; w++) {
+            lo[w] = Integer.MAX_VALUE;
+            hi[w] = -1;
+        }
+        for (POIData p : all) {
+            String id = p.getReview_id();
+            int colon = id.indexOf(':');
+            int w = Integer.parseInt(id.substring(0, colon));
+            int i = Integer.parseInt(id.substring(colon + 1));
+            lo[w] = Math.min(lo[w], i);
+            hi[w] = Math.max(hi[w], i);
+            count[w]++;
+        }
+        for (int w = 0; w < writers; w++) {
+            if (count[w] == 0) {
+                assertEquals("writer " + w + " completed rounds missing", 0, completedBefore[w]);
+                continue;
+            }
+            assertEquals("writer " + w + " has gaps", hi[w] - lo[w] + 1, count[w]);
+            int full = Math.min(hi[w] + 1, keep);
+            assertTrue("writer " + w + " shows " + count[w] + " points ending at " + hi[w],
+                    count[w] == full || (hi[w] >= keep && count[w] == keep + 1));
+            // 快照至少反映查询开始前已完成的轮次, 且不超过查询结束时已开始的轮次
+            int reflected = count[w] == keep + 1 ? hi[w] : hi[w] + 1;
+            assertTrue("writer " + w + " stale: " + reflected + " < " + completedBefore[w],
+                    reflected >= completedBefore[w]);
+            assertTrue("writer " + w + " from the future: " + (hi[w] + 1) + " > " + startedAfter[w],
+                    hi[w] + 1 <= startedAfter[w]);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.bwywb.index;
+
+import com.bwywb.model.POIData;
+import com.bwywb.utils.HilbertCodec2D;
+import com.github.davidmoten.hilbert.hilbert.Range;
+import com.github.davidmoten.hilbert.hilbert.Ranges;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ConnectionLineTest {
+
+    private static final MBR GLOBAL = new MBR(0, 0, 1000, 1000);
+
+    private static ConnectionLine line(NuhIndex index, int n, long seed) {
+        Random random = new Random(seed);
+        List<POIData> data = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            // 中心簇加均匀背景, 子空间大小差异明显
+            boolean clustered = random.nextDouble() < 0.7;
+            double x = clustered ? 500 + random.nextGaussian() * 30 : random.nextDouble() * 1000;
+            double y = clustered ? 500 + random.nextGaussian() * 30 : random.nextDouble() * 1000;
+            x = Math.max(0, Math.min(999.999, x));
+            y = Math.max(0, Math.min(999.999, y));
+            data.add(new POIData("b" + i, "u" + i, "r" + i, x, y, i, Collections.emptyMap()));
+        }
+        return index.connect(index.generateNuhIndex(data));
+    }
+
+    @Test
+    public void lookupsRoundTrip() {
+        NuhIndex index = new NuhIndex(50, GLOBAL);
+        ConnectionLine line = line(index, 30_000, 3);
+        int maxDepth = index.getMaxDepth();
+        for (int k = 0; k < line.size(); k++) {
+            Subspace subspace = line.subspace(k);
+            assertEquals(k, line.sequenceCode(subspace));
+            assertEquals(subspace.getHilbertCode(), line.hilbertCode(k));
+            // 子空间中心格网所在的子空间就是它自己
+            long cell = HilbertCodec2D.encode(subspace.getCol(), subspace.getRow(), maxDepth);
+            assertEquals(k, line.sequenceCodeOfCell(cell));
+            if (k > 0) {
+                assertTrue(line.hilbertCode(k) > line.hilbertCode(k - 1));
+            }
+        }
+        assertSame(line.subspace(0), line.subspaces().get(0));
+    }
+
+    /**
+     * 窗口对应的序号区间与细网格编码区间覆盖同样的子空间, 区间数不多于后者且平均少得多
+     */
+    @Test
+    public void windowRangesAreFewerThanFineGridRanges() {
+        NuhIndex index = new NuhIndex(50, GLOBAL);
+        ConnectionLine line = line(index, 50_000, 5);
+        SubspaceDirectory directory = line.directory();
+        Random random = new Random(19);
+        long lineRanges = 0;
+        long fineRanges = 0;
+        for (int q = 0; q < 100; q++) {
+            double x = random.nextDouble() * 1000;
+            double y = random.nextDouble() * 1000;
+            double size = random.nextDouble() * 300;
+            MBR window = new MBR(x, y, x + size, y + size);
+            long[][] corners = directory.gridCorners(window);
+            Ranges cells = directory.curve().query(corners[0], corners[1]);
+            Ranges sequences = line.ranges(window);
+
+            boolean[] hit = new boolean[line.size()];
+            for (Range c : cells) {
+                for (int k = directory.firstBlockEndingAtOrAfter(c.low(), 0);
+                     k < line.size() && directory.blockStarts[k] <= c.high(); k++) {
+                    hit[k] = true;
+                }
+            }
+            for (int k = 0; k < line.size(); k++) {
+                assertEquals(hit[k], sequences.contains(k));
+            }
+            assertTrue(sequences.size() <= cells.size());
+            lineRanges += sequences.size();
+            fineRanges += cells.size();
+        }
+        assertTrue(lineRanges + " vs " + fineRanges, lineRanges * 20 < fineRanges);
+    }
+}
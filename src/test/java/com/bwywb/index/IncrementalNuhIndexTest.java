@@ -0,0 +1,161 @@
+package com.bwywb.index;
+
+import com.bwywb.model.POIData;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+
+public class IncrementalNuhIndexTest {
+
+    private static final MBR GLOBAL = new MBR(0, 0, 1000, 1000);
+
+    private static POIData randomPoint(Random random, int id) {
+        // 两个紧密簇加均匀背景, 使插入触发多层划分、删除触发逐层合并
+        double x;
+        double y;
+        double r = random.nextDouble();
+        if (r < 0.4) {
+            x = 250 + random.nextGaussian() * 5;
+            y = 250 + random.nextGaussian() * 5;
+        } else if (r < 0.7) {
+            x = 800 + random.nextGaussian() * 40;
+            y = 600 + random.nextGaussian() * 40;
+        } else {
+            x = random.nextDouble() * 1000;
+            y = random.nextDouble() * 1000;
+        }
+        x = Math.max(0, Math.min(1000, x));
+        y = Math.max(0, Math.min(1000, y));
+        return new POIData("b" + id, "u" + id, "r" + id, x, y, id, Collections.emptyMap());
+    }
+
+    /**
+     * 维护后的子空间与对当前全部点整体重建的结果逐一相同 (子空间内点的顺序除外)
+     */
+    private static void assertSameAsRebuild(NuhIndex index, IncrementalNuhIndex incremental,
+                                            Map<String, POIData> live) {
+        List<Subspace> expected = index.generateNuhIndex(new ArrayList<>(live.values()));
+        List<Subspace> actual = incremental.subspaces();
+        assertEquals(expected.size(), actual.size());
+        assertEquals(live.size(), incremental.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Subspace e = expected.get(i);
+            Subspace a = actual.get(i);
+            assertEquals(e.getHilbertCode(), a.getHilbertCode());
+            assertEquals(e.getDepth(), a.getDepth());
+            assertEquals(e.getRow(), a.getRow());
+            assertEquals(e.getCol(), a.getCol());
+            assertEquals(e.getDensity(), a.getDensity());
+            assertEquals(e.getRange().getMinX(), a.getRange().getMinX(), 0);
+            assertEquals(e.getRange().getMinY(), a.getRange().getMinY(), 0);
+            assertEquals(e.getRange().getMaxX(), a.getRange().getMaxX(), 0);
+            assertEquals(e.getRange().getMaxY(), a.getRange().getMaxY(), 0);
+            assertEquals(reviewIds(e), reviewIds(a));
+        }
+    }
+
+    private static Set<String> reviewIds(Subspace subspace) {
+        Set<String> ids = new HashSet<>();
+        for (POIData p : subspace.getDataSet()) {
+            ids.add(p.getReview_id());
+        }
+        return ids;
+    }
+
+    @Test
+    public void randomInsertsAndDeletesMatchRebuild() {
+        for (double densityThreshold : new double[] {1, 8, 50}) {
+            Random random = new Random(42);
+            NuhIndex index = new NuhIndex(densityThreshold, GLOBAL);
+            IncrementalNuhIndex incremental = new IncrementalNuhIndex(index);
+            Map<String, POIData> live = new LinkedHashMap<>();
+            List<String> ids = new ArrayList<>();
+            int nextId = 0;
+            for (int step = 1; step <= 6_000; step++) {
+                // 前半段以插入为主, 后半段以删除为主, 覆盖增长与收缩两个方向
+                double insertRate = step <= 3_000 ? 0.75 : 0.3;
+                if (ids.isEmpty() || random.nextDouble() < insertRate) {
+                    POIData p = randomPoint(random, nextId++);
+                    incremental.insert(p);
+                    live.put(p.getReview_id(), p);
+                    ids.add(p.getReview_id());
+                } else {
+                    int k = random.nextInt(ids.size());
+                    String id = ids.get(k);
+                    ids.set(k, ids.get(ids.size() - 1));
+                    ids.remove(ids.size() - 1);
+                    assertSame(live.remove(id), incremental.delete(id));
+                }
+                if (step % 500 == 0) {
+                    assertSameAsRebuild(index, incremental, live);
+                }
+            }
+            for (String id : ids) {
+                incremental.delete(id);
+                live.remove(id);
+            }
+            assertSameAsRebuild(index, incremental, live);
+        }
+    }
+
+    @Test
+    public void bulkConstructionMatchesRebuild() {
+        Random random = new Random(7);
+        List<POIData> data = new ArrayList<>();
+        Map<String, POIData> live = new LinkedHashMap<>();
+        for (int i = 0; i < 20_000; i++) {
+            POIData p = randomPoint(random, i);
+            data.add(p);
+            live.put(p.getReview_id(), p);
+        }
+        NuhIndex index = new NuhIndex(30, GLOBAL);
+        assertSameAsRebuild(index, new IncrementalNuhIndex(index, data), live);
+    }
+
+    @Test
+    public void publishedSubspacesAreNotModifiedByLaterUpdates() {
+        Random random = new Random(3);
+        NuhIndex index = new NuhIndex(10, GLOBAL);
+        IncrementalNuhIndex incremental = new IncrementalNuhIndex(index);
+        for (int i = 0; i < 1_000; i++) {
+            incremental.insert(randomPoint(random, i));
+        }
+        List<Subspace> before = incremental.subspaces();
+        List<Set<String>> idsBefore = new ArrayList<>();
+        for (Subspace s : before) {
+            idsBefore.add(reviewIds(s));
+        }
+        for (int i = 1_000; i < 2_000; i++) {
+            incremental.insert(randomPoint(random, i));
+        }
+        for (int i = 0; i < 500; i++) {
+            incremental.delete("r" + i);
+        }
+        for (int i = 0; i < before.size(); i++) {
+            assertEquals(idsBefore.get(i), reviewIds(before.get(i)));
+        }
+    }
+
+    @Test
+    public void rejectsDuplicatesAndIgnoresUnknownDeletes() {
+        NuhIndex index = new NuhIndex(10, GLOBAL);
+        IncrementalNuhIndex incremental = new IncrementalNuhIndex(index);
+        POIData p = new POIData("b", "u", "r", 10, 10, 0, Collections.emptyMap());
+        incremental.insert(p);
+        assertThrows(IllegalArgumentException.class, () -> incremental.insert(p));
+        assertNull(incremental.delete("missing"));
+        assertEquals(1, incremental.size());
+    }
+}
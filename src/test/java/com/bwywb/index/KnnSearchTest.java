@@ -0,0 +1,52 @@
+package com.bwywb.index;
+
+import com.bwywb.model.POIData;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class KnnSearchTest {
+
+    private static final MBR GLOBAL = new MBR(0, 0, 1000, 1000);
+
+    /**
+     * 与暴力求解比较前 k 个距离; 包括最大支持深度 (细网格编码接近 2^60)
+     */
+    @Test
+    public void matchesBruteForceUpToMaximumDepth() {
+        for (int maxDepth : new int[] {8, NuhIndex.MAX_SUPPORTED_DEPTH}) {
+            Random random = new Random(maxDepth);
+            List<POIData> data = new ArrayList<>();
+            for (int i = 0; i < 5_000; i++) {
+                // 极近的点对使划分深入到最大深度
+                boolean tight = i % 2 == 1;
+                double x = tight ? data.get(i - 1).getX() + random.nextDouble() * 1e-6 : random.nextDouble() * 1000;
+                double y = tight ? data.get(i - 1).getY() + random.nextDouble() * 1e-6 : random.nextDouble() * 1000;
+                data.add(new POIData("b", "u", "r" + i, x, y, i, Collections.emptyMap()));
+            }
+            NuhIndex index = new NuhIndex(1, maxDepth, GLOBAL);
+            KnnSearch knn = new KnnSearch(PointStore.build(index, data));
+            int k = 10;
+            for (int q = 0; q < 50; q++) {
+                double x = random.nextDouble() * 1000;
+                double y = random.nextDouble() * 1000;
+                double[] expected = new double[data.size()];
+                for (int i = 0; i < data.size(); i++) {
+                    expected[i] = DistanceMetric.PLANAR.distance(x, y, data.get(i).getX(), data.get(i).getY());
+                }
+                Arrays.sort(expected);
+                int[] rows = new int[k];
+                double[] distances = new double[k];
+                assertEquals(k, knn.nearest(x, y, k, DistanceMetric.PLANAR, rows, distances));
+                assertArrayEquals(Arrays.copyOf(expected, k), distances, 0);
+            }
+        }
+    }
+}
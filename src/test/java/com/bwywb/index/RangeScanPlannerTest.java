@@ -0,0 +1,151 @@
+package com.bwywb.index;
+
+import com.bwywb.model.POIData;
+import com.github.davidmoten.hilbert.hilbert.Range;
+import com.github.davidmoten.hilbert.hilbert.Ranges;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RangeScanPlannerTest {
+
+    private static final MBR GLOBAL = new MBR(0, 0, 1000, 1000);
+    private static final long START = 1_600_000_000_000L;
+    private static final long YEAR_MS = 365L * 24 * 60 * 60 * 1000;
+
+    private static List<POIData> randomPoints(int n, long seed) {
+        Random random = new Random(seed);
+        List<POIData> data = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            // 两个簇加均匀背景, 使窗口内出现多个 run
+            double x;
+            double y;
+            if (i % 3 == 0) {
+                x = 200 + random.nextGaussian() * 30;
+                y = 300 + random.nextGaussian() * 30;
+            } else if (i % 3 == 1) {
+                x = 700 + random.nextGaussian() * 50;
+                y = 600 + random.nextGaussian() * 50;
+            } else {
+                x = random.nextDouble() * 1000;
+                y = random.nextDouble() * 1000;
+            }
+            x = Math.max(0, Math.min(999.999, x));
+            y = Math.max(0, Math.min(999.999, y));
+            data.add(new POIData("b" + i, "u" + i, "r" + i, x, y, START + random.nextInt(1000), Collections.emptyMap()));
+        }
+        return data;
+    }
+
+    private static RangeScanPlanner planner(CompositeKeyBuilder.Order order) {
+        NuhIndex index = new NuhIndex(50, GLOBAL);
+        List<Subspace> subspaces = index.generateNuhIndex(randomPoints(20_000, 7));
+        return new RangeScanPlanner(index, subspaces, new CompositeKeyBuilder(order, index, new MultiScaleTrIndex()));
+    }
+
+    @Test
+    public void timeFirstPlanRespectsMaxRangesOverLongIntervals() {
+        RangeScanPlanner planner = planner(CompositeKeyBuilder.Order.TIME_FIRST);
+        MBR[] windows = {new MBR(150, 250, 260, 360), new MBR(100, 100, 800, 700), new MBR(0, 0, 1000, 1000)};
+        for (MBR window : windows) {
+            Ranges exact = planner.plan(window, START, START + YEAR_MS, 0);
+            // 全局窗口覆盖所有子空间, 跨时间段的区间彼此相邻而合并为一个
+            assertTrue(exact.size() > 17_000 || exact.size() == 1);
+            for (int maxRanges : new int[] {1, 2, 7, 100, 5_000, 100_000}) {
+                Ranges planned = planner.plan(window, START, START + YEAR_MS, maxRanges);
+                assertTrue(planned.size() <= maxRanges);
+
+                // 与逐个合并最小间隙得到的覆盖范围相同
+                Ranges coalesced = new Ranges(maxRanges);
+                for (Range r : exact) {
+                    coalesced.add(r.low(), r.high());
+                }
+                assertEquals("maxRanges=" + maxRanges, coalesced.coverage(), planned.coverage());
+                for (Range r : exact) {
+                    assertTrue(planned.contains(r.low()) && planned.contains(r.high()));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void timeFirstPlanWithoutLimitIsExact() {
+        RangeScanPlanner planner = planner(CompositeKeyBuilder.Order.TIME_FIRST);
+        MBR window = new MBR(150, 250, 260, 360);
+        Ranges spatial = planner.planSpatial(window);
+        long periods = 5;
+        Ranges exact = planner.plan(window, START, START + (periods - 1) * 30 * 60 * 1000L, 0);
+        assertEquals(periods * spatial.size(), exact.size());
+        // 每个时间段覆盖的子空间编码与纯空间规划一致
+        Ranges perPeriod = new Ranges(0);
+        long spaceMask = (1L << 30) - 1;
+        long firstPeriod = exact.low(0) >>> 30;
+        for (Range r : exact) {
+            if (r.low() >>> 30 == firstPeriod) {
+                perPeriod.add(r.low() & spaceMask, Math.min(r.high(), (firstPeriod << 30) | spaceMask) & spaceMask);
+            }
+        }
+        assertEquals(spatial.size(), perPeriod.size());
+        for (int i = 0; i < spatial.size(); i++) {
+            assertEquals(spatial.low(i), perPeriod.low(i));
+        }
+    }
+
+    /**
+     * 子空间编码落在区间内的点数之和, 即按这些区间扫描 KV 存储读取的点数
+     */
+    private static long scannedPoints(List<Subspace> subspaces, Ranges ranges) {
+        long points = 0;
+        for (Subspace subspace : subspaces) {
+            if (ranges.contains(subspace.getHilbertCode())) {
+                points += subspace.getDensity();
+            }
+        }
+        return points;
+    }
+
+    /**
+     * 有区间数上限时, 按间隙内的点数合并与按编码间隙合并 (Ranges 逐个合并最小间隙) 相比:
+     * 覆盖同样的子空间, 多扫描的点数逐窗口不多于后者, 总体更少
+     */
+    @Test
+    public void spatialPlanMergesGapsByPointsScanned() {
+        NuhIndex index = new NuhIndex(50, GLOBAL);
+        List<Subspace> subspaces = index.generateNuhIndex(randomPoints(20_000, 7));
+        RangeScanPlanner planner = new RangeScanPlanner(index, subspaces,
+                new CompositeKeyBuilder(CompositeKeyBuilder.Order.SPACE_FIRST, index, new MultiScaleTrIndex()));
+        Random random = new Random(13);
+        for (int maxRanges : new int[] {1, 2, 4, 8}) {
+            long byPoints = 0;
+            long byCodes = 0;
+            for (int q = 0; q < 200; q++) {
+                double x = random.nextDouble() * 1000;
+                double y = random.nextDouble() * 1000;
+                double size = random.nextDouble() * 300;
+                MBR window = new MBR(x, y, x + size, y + size);
+                Ranges exact = planner.planSpatial(window);
+                Ranges planned = planner.planSpatial(window, maxRanges);
+                Ranges coalesced = new Ranges(maxRanges);
+                for (Range r : exact) {
+                    coalesced.add(r.low(), r.high());
+                }
+                assertTrue(planned.size() <= maxRanges);
+                for (Range r : exact) {
+                    assertTrue(planned.contains(r.low()) && planned.contains(r.high()));
+                }
+                long points = scannedPoints(subspaces, planned);
+                long codePoints = scannedPoints(subspaces, coalesced);
+                assertTrue("maxRanges=" + maxRanges + " window=" + q, points <= codePoints);
+                byPoints += points;
+                byCodes += codePoints;
+            }
+            assertTrue(maxRanges == 1 || byPoints < byCodes);
+        }
+    }
+}
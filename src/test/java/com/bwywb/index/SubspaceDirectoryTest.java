@@ -0,0 +1,137 @@
+package com.bwywb.index;
+
+import com.bwywb.model.POIData;
+import com.github.davidmoten.hilbert.hilbert.Ranges;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class SubspaceDirectoryTest {
+
+    private static final MBR GLOBAL = new MBR(0, 0, 1000, 1000);
+
+    private static SubspaceDirectory directory(double densityThreshold, int n, long seed) {
+        Random random = new Random(seed);
+        List<POIData> data = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            // 中心簇加均匀背景, 子空间大小差异明显
+            boolean clustered = random.nextDouble() < 0.7;
+            double x = clustered ? 500 + random.nextGaussian() * 30 : random.nextDouble() * 1000;
+            double y = clustered ? 500 + random.nextGaussian() * 30 : random.nextDouble() * 1000;
+            x = Math.max(0, Math.min(1000, x));
+            y = Math.max(0, Math.min(1000, y));
+            data.add(new POIData("b" + i, "u" + i, "r" + i, x, y, i, Collections.emptyMap()));
+        }
+        NuhIndex index = new NuhIndex(densityThreshold, GLOBAL);
+        return new SubspaceDirectory(index, index.generateNuhIndex(data));
+    }
+
+    /**
+     * 由细网格上的精确编码区间 (周长算法) 求 run, 作为剪枝下降的参照
+     */
+    private static int[] exactRuns(SubspaceDirectory directory, MBR window) {
+        long[][] corners = directory.gridCorners(window);
+        if (directory.size() == 0 || corners == null) {
+            return new int[0];
+        }
+        Ranges cells = directory.curve().query(corners[0], corners[1]);
+        int[] runs = new int[0];
+        for (int c = 0; c < cells.size(); c++) {
+            int i = directory.firstBlockEndingAtOrAfter(cells.low(c), 0);
+            int j = i;
+            while (j < directory.size() && directory.blockStarts[j] <= cells.high(c)) {
+                j++;
+            }
+            if (j == i) {
+                continue;
+            }
+            if (runs.length > 0 && runs[runs.length - 1] >= i - 1) {
+                runs[runs.length - 1] = Math.max(runs[runs.length - 1], j - 1);
+            } else {
+                runs = Arrays.copyOf(runs, runs.length + 2);
+                runs[runs.length - 2] = i;
+                runs[runs.length - 1] = j - 1;
+            }
+        }
+        return runs;
+    }
+
+    @Test
+    public void prunedDescentFindsSameRunsAsExactCellRanges() {
+        Random random = new Random(11);
+        for (double densityThreshold : new double[] {1e9, 200, 20}) {
+            SubspaceDirectory directory = directory(densityThreshold, 50_000, 5);
+            for (int q = 0; q < 60; q++) {
+                double x = random.nextDouble() * 1100 - 50;
+                double y = random.nextDouble() * 1100 - 50;
+                double size = random.nextDouble() * 400;
+                MBR window = new MBR(x, y, x + size, y + size);
+                assertArrayEquals(exactRuns(directory, window), directory.runs(window));
+            }
+        }
+    }
+
+    @Test
+    public void windowOutsideGlobalMBRHasNoRuns() {
+        SubspaceDirectory directory = directory(100, 5_000, 1);
+        assertEquals(0, directory.runs(new MBR(2000, 2000, 3000, 3000)).length);
+    }
+
+    /**
+     * 第 level 层的某条分割线坐标 (与 quadSplit 逐层取中点相同的浮点运算)
+     */
+    private static double splitLine(Random random, double min, double max, int level) {
+        for (int l = 0; l < level; l++) {
+            double mid = (min + max) / 2.0;
+            if (random.nextBoolean()) {
+                min = mid;
+            } else {
+                max = mid;
+            }
+        }
+        return (min + max) / 2.0;
+    }
+
+    /**
+     * 全局 MBR 不是二进制对齐时, 落在分割线上的点也能被包围它的小窗口查到
+     */
+    @Test
+    public void pointsOnSplitLinesOfNonDyadicGlobalMBRAreFound() {
+        MBR global = new MBR(116.15, 39.75, 116.75, 40.15);
+        Random random = new Random(23);
+        List<POIData> data = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            double x = 116.15 + random.nextDouble() * 0.6;
+            double y = 39.75 + random.nextDouble() * 0.4;
+            if (i % 2 == 0) {
+                x = splitLine(random, 116.15, 116.75, random.nextInt(12));
+            }
+            if (i % 3 == 0) {
+                y = splitLine(random, 39.75, 40.15, random.nextInt(12));
+            }
+            data.add(new POIData("b" + i, "u" + i, "r" + i, x, y, i, Collections.emptyMap()));
+        }
+        NuhIndex index = new NuhIndex(5, global);
+        PointStore store = PointStore.build(index, data);
+        for (int k = 0; k < data.size(); k += 10) {
+            POIData p = data.get(k);
+            double x = p.getX();
+            double y = p.getY();
+            MBR window = new MBR(x, y, Math.nextUp(x), Math.nextUp(y));
+            int expected = 0;
+            for (POIData q : data) {
+                if (window.contains(q.getX(), q.getY())) {
+                    expected++;
+                }
+            }
+            assertEquals(p.getReview_id(), expected, store.count(window));
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.bwywb.index;
+
+import com.bwywb.model.Trajectory;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TrajectorySimplifierTest {
+
+    private static final double METRES = 1 / DistanceMetric.METRES_PER_DEGREE; // 1 米对应的纬度差
+
+    private static Trajectory trajectory(double[] xs, double[] ys) {
+        long[] ts = new long[xs.length];
+        for (int i = 0; i < ts.length; i++) {
+            ts[i] = 1_700_000_000_000L + i * 1_000L;
+        }
+        return new Trajectory("t", xs, ys, ts, xs.length);
+    }
+
+    /**
+     * 停车: 1000 个点在 1 米范围内抖动, 容差 10 米时只保留首尾两点
+     */
+    @Test
+    public void stationaryTraceKeepsEndpoints() {
+        Random random = new Random(1);
+        int n = 1_000;
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = 116.4 + (random.nextDouble() - 0.5) * METRES / Math.cos(Math.toRadians(39.9));
+            ys[i] = 39.9 + (random.nextDouble() - 0.5) * METRES;
+        }
+        TrajectorySimplifier simplifier = new TrajectorySimplifier(10);
+        Trajectory t = trajectory(xs, ys);
+        assertEquals(2, simplifier.simplify(t).size());
+        assertEquals(2, simplifier.douglasPeucker(t).size());
+    }
+
+    /**
+     * 直线行驶: 沿经线每秒 10 米、横向抖动 1 米, 容差 10 米时只保留首尾两点
+     */
+    @Test
+    public void straightLineKeepsEndpoints() {
+        Random random = new Random(2);
+        int n = 1_000;
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = 116.4 + (random.nextDouble() - 0.5) * METRES / Math.cos(Math.toRadians(39.9));
+            ys[i] = 39.9 + i * 10 * METRES;
+        }
+        TrajectorySimplifier simplifier = new TrajectorySimplifier(10);
+        assertEquals(2, simplifier.simplify(trajectory(xs, ys)).size());
+    }
+
+    /**
+     * 随机游走 (含停顿): 每个被删除的点到其所在简化线段的距离不超过容差
+     */
+    @Test
+    public void removedPointsStayWithinTolerance() {
+        Random random = new Random(3);
+        int n = 20_000;
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        for (int i = 1; i < n; i++) {
+            double step = random.nextInt(4) == 0 ? 0.2 : 5;
+            xs[i] = xs[i - 1] + random.nextGaussian() * step;
+            ys[i] = ys[i - 1] + random.nextGaussian() * step;
+        }
+        Trajectory t = trajectory(xs, ys);
+        double tolerance = 3;
+        TrajectorySimplifier simplifier = new TrajectorySimplifier(tolerance, DistanceMetric.PLANAR);
+        for (Trajectory simplified : new Trajectory[] {simplifier.simplify(t), simplifier.douglasPeucker(t)}) {
+            assertTrue(simplified.size() < n);
+            // 简化结果保留原始点, 按时间戳对应回原下标
+            int a = 0;
+            for (int k = 1; k < simplified.size(); k++) {
+                int b = (int) ((simplified.getTimestamp(k) - t.getTimestamp(0)) / 1_000L);
+                for (int i = a + 1; i < b; i++) {
+                    double d2 = TrajectorySimplifier.segmentDistanceSq(xs[i], ys[i], xs[a], ys[a], xs[b], ys[b]);
+                    assertTrue(i + ": " + Math.sqrt(d2), d2 <= tolerance * tolerance * (1 + 1e-9));
+                }
+                a = b;
+            }
+            assertEquals(n - 1, a);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.bwywb.index;
+
+import com.bwywb.model.Trajectory;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+public class TrajectoryStoreTest {
+
+    private static final MBR GLOBAL = new MBR(116.15, 39.75, 116.75, 40.15);
+    private static final long START = 1_680_000_000_000L; // 2023 年
+
+    private static Set<String> ids(List<Trajectory> trajectories) {
+        Set<String> ids = new HashSet<>();
+        for (Trajectory t : trajectories) {
+            ids.add(t.getTrajectoryId());
+        }
+        return ids;
+    }
+
+    @Test
+    public void untimedWindowQueryFindsTrajectoryInsideWindow() {
+        Trajectory t = new Trajectory("t", new double[] {116.40, 116.41}, new double[] {39.90, 39.91},
+                new long[] {START, START + 5_000}, 2);
+        TrajectoryNuhIndex index = new TrajectoryNuhIndex(10, Trajectory.DensityMetric.POINT_COUNT, GLOBAL);
+        List<Trajectory> data = new ArrayList<>();
+        data.add(t);
+        TrajectoryStore store = TrajectoryStore.build(index, data);
+        MBR window = new MBR(116.3, 39.8, 116.5, 40.0);
+        assertEquals(1, store.query(window).size());
+        assertEquals(1, store.query(window, Long.MIN_VALUE, START).size());
+        assertEquals(0, store.query(window, START + 5_001, Long.MAX_VALUE).size());
+    }
+
+    /**
+     * 不限时间的窗口查询与 [Long.MIN_VALUE, Long.MAX_VALUE]、覆盖全部时间戳的有限区间结果相同
+     */
+    @Test
+    public void untimedQueryMatchesQueryOverFullTimeRange() {
+        Random random = new Random(31);
+        List<Trajectory> data = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            int n = 2 + random.nextInt(20);
+            double[] xs = new double[n];
+            double[] ys = new double[n];
+            long[] ts = new long[n];
+            xs[0] = 116.15 + random.nextDouble() * 0.6;
+            ys[0] = 39.75 + random.nextDouble() * 0.4;
+            ts[0] = START + random.nextInt(1_000_000);
+            for (int j = 1; j < n; j++) {
+                xs[j] = Math.max(116.15, Math.min(116.75, xs[j - 1] + random.nextGaussian() * 0.01));
+                ys[j] = Math.max(39.75, Math.min(40.15, ys[j - 1] + random.nextGaussian() * 0.01));
+                ts[j] = ts[j - 1] + 1 + random.nextInt(60_000);
+            }
+            data.add(new Trajectory("t" + i, xs, ys, ts, n));
+        }
+        TrajectoryStore store = TrajectoryStore.build(
+                new TrajectoryNuhIndex(20, Trajectory.DensityMetric.POINT_COUNT, GLOBAL), data);
+        for (int q = 0; q < 100; q++) {
+            double x = 116.15 + random.nextDouble() * 0.6;
+            double y = 39.75 + random.nextDouble() * 0.4;
+            double size = random.nextDouble() * 0.1;
+            MBR window = new MBR(x, y, x + size, y + size);
+            Set<String> expected = new HashSet<>();
+            for (Trajectory t : data) {
+                if (TrajectoryStore.intersects(t, window, START, START + 1_000L * 60_000 * 20)) {
+                    expected.add(t.getTrajectoryId());
+                }
+            }
+            assertEquals(expected, ids(store.query(window)));
+        }
+    }
+}
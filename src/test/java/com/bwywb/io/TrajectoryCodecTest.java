@@ -0,0 +1,24 @@
+package com.bwywb.io;
+
+import com.bwywb.model.Trajectory;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class TrajectoryCodecTest {
+
+    @Test
+    public void negativeZeroRoundTripsBitExactly() {
+        double[] xs = {-0.0, 116.318417, 0.0, -0.0};
+        double[] ys = {39.984702, -0.0, -0.0, 0.0};
+        long[] ts = {0, 1_000, 2_000, 3_000};
+        Trajectory t = new Trajectory("t", xs, ys, ts, xs.length);
+        Trajectory decoded = TrajectoryCodec.decode(new TrajectoryCodec().encode(t));
+        assertEquals(xs.length, decoded.size());
+        for (int i = 0; i < xs.length; i++) {
+            assertEquals(Double.doubleToRawLongBits(xs[i]), Double.doubleToRawLongBits(decoded.getX(i)));
+            assertEquals(Double.doubleToRawLongBits(ys[i]), Double.doubleToRawLongBits(decoded.getY(i)));
+            assertEquals(ts[i], decoded.getTimestamp(i));
+        }
+    }
+}
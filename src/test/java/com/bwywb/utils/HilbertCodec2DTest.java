@@ -0,0 +1,80 @@
+package com.bwywb.utils;
+
+import com.github.davidmoten.hilbert.hilbert.HilbertCurve;
+import com.github.davidmoten.hilbert.hilbert.SmallHilbertCurve;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class HilbertCodec2DTest {
+
+    private static final int EXHAUSTIVE_MAX_BITS = 8;
+
+    @Test
+    public void encodeMatchesSmallHilbertCurveExhaustivelyForSmallOrders() {
+        long[] point = new long[2];
+        for (int bits = 1; bits <= EXHAUSTIVE_MAX_BITS; bits++) {
+            SmallHilbertCurve curve = HilbertCurve.small().bits(bits).dimensions(2);
+            long side = 1L << bits;
+            for (long x = 0; x < side; x++) {
+                for (long y = 0; y < side; y++) {
+                    long code = HilbertCodec2D.encode(x, y, bits);
+                    assertEquals("bits=" + bits + " x=" + x + " y=" + y, curve.index(x, y), code);
+                    HilbertCodec2D.decode(code, bits, point);
+                    assertEquals(x, point[0]);
+                    assertEquals(y, point[1]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void encodeMatchesSmallHilbertCurveForRandomPointsUpToMaxOrder() {
+        Random random = new Random(20240521L);
+        long[] point = new long[2];
+        for (int bits = 1; bits <= HilbertCodec2D.MAX_BITS; bits++) {
+            SmallHilbertCurve curve = HilbertCurve.small().bits(bits).dimensions(2);
+            long mask = (1L << bits) - 1;
+            for (int i = 0; i < 5000; i++) {
+                long x = random.nextLong() & mask;
+                long y = random.nextLong() & mask;
+                long code = HilbertCodec2D.encode(x, y, bits);
+                assertEquals("bits=" + bits + " x=" + x + " y=" + y, curve.index(x, y), code);
+                HilbertCodec2D.decode(code, bits, point);
+                assertEquals(x, point[0]);
+                assertEquals(y, point[1]);
+            }
+            // 边角点
+            assertEquals(curve.index(mask, mask), HilbertCodec2D.encode(mask, mask, bits));
+            assertEquals(curve.index(0, mask), HilbertCodec2D.encode(0, mask, bits));
+            assertEquals(curve.index(mask, 0), HilbertCodec2D.encode(mask, 0, bits));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOrderAboveMax() {
+        HilbertCodec2D.encode(0, 0, HilbertCodec2D.MAX_BITS + 1);
+    }
+
+    @Test
+    public void nuhUtilsDelegatesForPowerOfTwoGrids() {
+        SmallHilbertCurve curve = HilbertCurve.small().bits(6).dimensions(2);
+        for (int x = 0; x < 64; x++) {
+            for (int y = 0; y < 64; y++) {
+                assertEquals(curve.index(x, y), NuhUtils.computeHilbertCodeIterative(x, y, 64));
+            }
+        }
+    }
+
+    @Test
+    public void nuhUtilsKeepsFloorLog2ContractForOtherGridSizes() {
+        // m = 100 按 6 阶 (64) 计算, 只取坐标低 6 位
+        SmallHilbertCurve curve = HilbertCurve.small().bits(6).dimensions(2);
+        assertEquals(curve.index(10, 20), NuhUtils.computeHilbertCodeIterative(10, 20, 100));
+        assertEquals(curve.index(70 & 63, 99 & 63), NuhUtils.computeHilbertCodeIterative(70, 99, 100));
+        assertEquals(0, NuhUtils.computeHilbertCodeIterative(0, 0, 1));
+        assertEquals(0, NuhUtils.computeHilbertCodeIterative(5, 5, 0));
+    }
+}